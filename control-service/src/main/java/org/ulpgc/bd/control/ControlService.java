@@ -1,72 +1,100 @@
 package org.ulpgc.bd.control;
 
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import io.javalin.Javalin;
-import com.google.gson.Gson;
-import java.net.http.*;
-import java.net.URI;
-import java.util.Map;
+import io.javalin.http.Context;
+import io.javalin.json.JavalinGson;
+
+import java.time.Duration;
+import java.util.*;
 
 public class ControlService {
-    private static final HttpClient client = HttpClient.newHttpClient();
-    private static final Gson gson = new Gson();
 
     public static void main(String[] args) {
-        Javalin app = Javalin.create().start(7000);
+        int parallelism = Integer.getInteger("control.parallelism", 16);
+        String ingestUrl = System.getProperty("control.ingest.url", "http://localhost:7001");
+        String indexUrl = System.getProperty("control.index.url", "http://localhost:7002");
+        // sharded index: -Dcontrol.index.nodes=shard-a=http://localhost:7002,shard-b=http://localhost:7012
+        Map<String, String> indexNodes = nodes(System.getProperty("control.index.nodes"));
+        if (indexNodes.isEmpty()) indexNodes.put("index", indexUrl);
+        Duration ingestTimeout = Duration.ofSeconds(Long.getLong("control.ingest.timeout.s", 300));
+        Duration indexTimeout = Duration.ofSeconds(Long.getLong("control.index.timeout.s", 120));
+
+        PipelineRunner runner = new PipelineRunner(ingestUrl, indexNodes, parallelism, ingestTimeout, indexTimeout);
+
+        Javalin app = Javalin.create(cfg -> cfg.jsonMapper(new JavalinGson())).start(7000);
 
         app.get("/status", ctx -> ctx.json(Map.of("service", "control", "status", "running")));
 
+        app.post("/control/run", ctx -> handleRun(ctx, runner));
+
+        // one book, answered when its pipeline ends; the request holds no thread meanwhile.
+        // Search picks up index commits by itself, so there is nothing to notify.
         app.post("/control/run/{book_id}", ctx -> {
             int bookId = Integer.parseInt(ctx.pathParam("book_id"));
-            try {
-                // Step 1: Ingest
-                post("http://localhost:7001/ingest/" + bookId);
-
-                // Step 2: Wait for ingestion confirmation
-                String ingestionStatus;
-                do {
-                    ingestionStatus = getStatus("http://localhost:7001/ingest/status/" + bookId);
-                    Thread.sleep(2000);
-                } while (!"available".equalsIgnoreCase(ingestionStatus));
+            ctx.future(() -> runner.runOne(bookId).thenAccept(r -> {
+                if ("failed".equals(r.get("status"))) ctx.status(502);
+                ctx.json(r);
+            }));
+        });
 
-                // Step 3: Index
-                post("http://localhost:7002/index/update/" + bookId);
+        app.get("/control/jobs", ctx -> ctx.json(runner.listJobs()));
+        app.get("/control/jobs/{job_id}", ctx -> {
+            Map<String, Object> job = runner.status(ctx.pathParam("job_id"));
+            if (job == null) ctx.status(404).json(error("unknown job " + ctx.pathParam("job_id")));
+            else ctx.json(job);
+        });
 
-                // Step 4: Optional - notify search
-                get("http://localhost:7000/status");
+        System.out.println("Control listening on :7000 ingest=" + ingestUrl + " index=" + indexNodes + " parallelism=" + parallelism);
+    }
 
-                ctx.json(Map.of(
-                        "book_id", bookId,
-                        "status", "complete"
-                ));
-            } catch (Exception e) {
-                ctx.status(500).json(Map.of("error", e.getMessage()));
-            }
-        });
+    /** {@code name=url} pairs separated by commas; empty when not set. */
+    private static Map<String, String> nodes(String spec) {
+        Map<String, String> out = new LinkedHashMap<>();
+        if (spec == null) return out;
+        for (String pair : spec.split(",")) {
+            if (pair.isBlank()) continue;
+            int i = pair.indexOf('=');
+            if (i <= 0) throw new IllegalArgumentException("bad index node '" + pair + "', expected name=url");
+            out.put(pair.substring(0, i).trim(), pair.substring(i + 1).trim());
+        }
+        return out;
     }
 
-    private static void post(String url) throws Exception {
-        HttpRequest req = HttpRequest.newBuilder()
-                .uri(URI.create(url))
-                .POST(HttpRequest.BodyPublishers.noBody())
-                .build();
-        client.send(req, HttpResponse.BodyHandlers.ofString());
+    /** Body: {"ids": [11, 84], "ranges": ["1000-1999"]}; either key may be left out. */
+    private static void handleRun(Context ctx, PipelineRunner runner) {
+        List<Integer> ids = new ArrayList<>();
+        try {
+            JsonObject body = JsonParser.parseString(ctx.body()).getAsJsonObject();
+            if (body.has("ids")) for (JsonElement e : body.getAsJsonArray("ids")) ids.add(e.getAsInt());
+            if (body.has("ranges")) addRanges(body.getAsJsonArray("ranges"), ids);
+            ctx.status(202).json(runner.submit(ids));
+        } catch (RuntimeException e) {
+            ctx.status(400).json(error(e.getMessage()));
+        }
     }
 
-    private static String getStatus(String url) throws Exception {
-        HttpRequest req = HttpRequest.newBuilder()
-                .uri(URI.create(url))
-                .GET()
-                .build();
-        HttpResponse<String> res = client.send(req, HttpResponse.BodyHandlers.ofString());
-        Map<String, Object> body = gson.fromJson(res.body(), Map.class);
-        return (String) body.get("status");
+    private static void addRanges(JsonArray ranges, List<Integer> ids) {
+        for (JsonElement e : ranges) {
+            String[] parts = e.getAsString().trim().split("\\s*-\\s*");
+            if (parts.length != 2) throw new IllegalArgumentException("bad range '" + e.getAsString() + "', expected from-to");
+            int from = Integer.parseInt(parts[0]);
+            int to = Integer.parseInt(parts[1]);
+            if (from > to) throw new IllegalArgumentException("bad range '" + e.getAsString() + "'");
+            if ((long) to - from + ids.size() >= PipelineRunner.MAX_BATCH) {
+                throw new IllegalArgumentException("batch exceeds " + PipelineRunner.MAX_BATCH + " ids");
+            }
+            for (int id = from; id <= to; id++) ids.add(id);
+        }
     }
 
-    private static void get(String url) throws Exception {
-        HttpRequest req = HttpRequest.newBuilder()
-                .uri(URI.create(url))
-                .GET()
-                .build();
-        client.send(req, HttpResponse.BodyHandlers.ofString());
+    private static Map<String, Object> error(String message) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("status", "error");
+        m.put("message", message);
+        return m;
     }
 }
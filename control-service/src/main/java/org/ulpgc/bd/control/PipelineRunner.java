@@ -0,0 +1,345 @@
+package org.ulpgc.bd.control;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Runs ingest then index for batches of book IDs. A submit returns a job ID at once; the books
+ * of all jobs share one queue, and at most {@code parallelism} pipelines are in flight. Every step
+ * is an async HTTP call and the next one starts from its response (ingestion answers once the
+ * book is stored), so no thread sleeps or blocks while a pipeline waits. With several index nodes,
+ * each book is indexed on the node its {@link ShardRing} assigns it.
+ *
+ * When ingestion answers 503 because its queue to the indexer is full, the book goes back on the
+ * queue and no pipeline starts until the {@code Retry-After} it sent has passed.
+ */
+public class PipelineRunner {
+    public static final int MAX_BATCH = 100_000;
+    private static final int MAX_FINISHED_JOBS = 100;
+    private static final long DEFAULT_RETRY_AFTER_MS = 1000L;
+    private static final Gson GSON = new Gson();
+
+    private final HttpClient client;
+    private final String ingestUrl;
+    private final Map<String, String> indexUrls;
+    private final ShardRing ring;
+    private final Duration ingestTimeout;
+    private final Duration indexTimeout;
+    private final int parallelism;
+    private final Queue<Task> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong nextJob = new AtomicLong(1);
+    /** {@link System#nanoTime} before which no pipeline starts, after a 503 from ingestion. */
+    private final AtomicLong resumeAt = new AtomicLong(System.nanoTime());
+    private final Map<String, Job> jobs = new LinkedHashMap<>();
+
+    public PipelineRunner(String ingestUrl, String indexUrl, int parallelism, Duration ingestTimeout, Duration indexTimeout) {
+        this(ingestUrl, Map.of("index", indexUrl), parallelism, ingestTimeout, indexTimeout);
+    }
+
+    /** {@code indexNodes} maps each index node's name, as the indexers know it, to its base URL. */
+    public PipelineRunner(String ingestUrl, Map<String, String> indexNodes, int parallelism, Duration ingestTimeout, Duration indexTimeout) {
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        this.ingestUrl = ingestUrl;
+        this.indexUrls = new LinkedHashMap<>(indexNodes);
+        this.ring = new ShardRing(indexNodes.keySet());
+        this.parallelism = Math.max(1, parallelism);
+        this.ingestTimeout = ingestTimeout;
+        this.indexTimeout = indexTimeout;
+    }
+
+    private static final class Job {
+        final String id;
+        final int[] bookIds;
+        /** Index calls wait until the book is committed, instead of until it is buffered. */
+        final boolean waitForCommit;
+        final AtomicReferenceArray<Map<String, Object>> results;
+        final String createdAt = LocalDateTime.now().toString();
+        final AtomicInteger started = new AtomicInteger();
+        final AtomicInteger done = new AtomicInteger();
+        final AtomicInteger indexed = new AtomicInteger();
+        final AtomicInteger unchanged = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        final AtomicInteger retried = new AtomicInteger();
+        final CompletableFuture<Void> finished = new CompletableFuture<>();
+        final long startNanos = System.nanoTime();
+        volatile long finishNanos;
+        volatile String finishedAt;
+
+        Job(String id, int[] bookIds, boolean waitForCommit) {
+            this.id = id;
+            this.bookIds = bookIds;
+            this.waitForCommit = waitForCommit;
+            this.results = new AtomicReferenceArray<>(bookIds.length);
+        }
+    }
+
+    private static final class Task {
+        final Job job;
+        final int slot;
+
+        Task(Job job, int slot) {
+            this.job = job;
+            this.slot = slot;
+        }
+    }
+
+    /** Queues {@code bookIds} (duplicates dropped) and returns the new job's summary. */
+    public Map<String, Object> submit(Collection<Integer> bookIds) {
+        return summary(start(bookIds, false));
+    }
+
+    /** Runs a single book; the future completes with its result once it is searchable or has failed. */
+    public CompletableFuture<Map<String, Object>> runOne(int bookId) {
+        Job job = start(List.of(bookId), true);
+        return job.finished.thenApply(v -> {
+            Map<String, Object> out = new LinkedHashMap<>();
+            out.put("job_id", job.id);
+            out.putAll(job.results.get(0));
+            return out;
+        });
+    }
+
+    private Job start(Collection<Integer> bookIds, boolean waitForCommit) {
+        int[] ids = new LinkedHashSet<>(bookIds).stream().mapToInt(Integer::intValue).toArray();
+        if (ids.length == 0) throw new IllegalArgumentException("no book ids given");
+        if (ids.length > MAX_BATCH) throw new IllegalArgumentException("batch of " + ids.length + " ids exceeds " + MAX_BATCH);
+        Job job = new Job("run-" + nextJob.getAndIncrement(), ids, waitForCommit);
+        synchronized (jobs) {
+            jobs.put(job.id, job);
+            prune();
+        }
+        for (int i = 0; i < ids.length; i++) pending.add(new Task(job, i));
+        pump();
+        return job;
+    }
+
+    /** Starts queued pipelines while fewer than {@code parallelism} are in flight. */
+    private void pump() {
+        while (!pending.isEmpty()) {
+            if (System.nanoTime() - resumeAt.get() < 0) return;
+            int n = inFlight.get();
+            if (n >= parallelism) return;
+            if (!inFlight.compareAndSet(n, n + 1)) continue;
+            Task t = pending.poll();
+            if (t == null) {
+                inFlight.decrementAndGet();
+                continue;
+            }
+            run(t);
+        }
+    }
+
+    private void run(Task t) {
+        int bookId = t.job.bookIds[t.slot];
+        Map<String, Object> r = new LinkedHashMap<>();
+        r.put("book_id", bookId);
+        t.job.started.incrementAndGet();
+        long t0 = System.nanoTime();
+        post(ingestUrl + "/ingest/" + bookId, ingestTimeout)
+                .thenCompose(ingest -> {
+                    r.put("ingest", ingest.get("status"));
+                    r.put("ingest_ms", (System.nanoTime() - t0) / 1_000_000L);
+                    if ("error".equals(ingest.get("status"))) throw new StepException("ingest", ingest.get("message"));
+                    long t1 = System.nanoTime();
+                    String node = ring.owner(bookId);
+                    if (indexUrls.size() > 1) r.put("index_node", node);
+                    return post(indexUrls.get(node) + "/index/update/" + bookId + (t.job.waitForCommit ? "?wait=true" : ""), indexTimeout).thenApply(index -> {
+                        r.put("index_ms", (System.nanoTime() - t1) / 1_000_000L);
+                        if ("error".equals(index.get("status"))) throw new StepException("index", index.get("message"));
+                        // the indexers were started with a different node list than this service
+                        if ("not_owned".equals(index.get("index"))) {
+                            throw new StepException("index", "node " + node + " does not own book " + bookId + ", " + index.get("owner") + " does");
+                        }
+                        r.put("index", index.get("index"));
+                        return index;
+                    });
+                })
+                .whenComplete((index, err) -> {
+                    try {
+                        Throwable cause = err instanceof CompletionException && err.getCause() != null ? err.getCause() : err;
+                        if (cause instanceof RetryLater && !r.containsKey("ingest")) retry(t, ((RetryLater) cause).millis);
+                        else finish(t, r, err);
+                    } finally {
+                        inFlight.decrementAndGet();
+                        pump();
+                    }
+                });
+    }
+
+    /** Puts {@code t} back on the queue and holds off every pipeline for {@code millis}. */
+    private void retry(Task t, long millis) {
+        t.job.retried.incrementAndGet();
+        long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        resumeAt.accumulateAndGet(until, (a, b) -> b - a > 0 ? b : a);
+        pending.add(t);
+        CompletableFuture.delayedExecutor(millis, TimeUnit.MILLISECONDS).execute(this::pump);
+    }
+
+    private void finish(Task t, Map<String, Object> r, Throwable err) {
+        Job job = t.job;
+        if (err != null) {
+            Throwable cause = err instanceof CompletionException && err.getCause() != null ? err.getCause() : err;
+            r.put("status", "failed");
+            if (cause instanceof StepException) {
+                r.put("stage", ((StepException) cause).stage);
+                r.put("message", cause.getMessage());
+            } else {
+                r.put("stage", r.containsKey("ingest") ? "index" : "ingest");
+                r.put("message", cause.getClass().getSimpleName() + ": " + cause.getMessage());
+            }
+            job.failed.incrementAndGet();
+        } else if ("unchanged".equals(r.get("index"))) {
+            r.put("status", "unchanged");
+            job.unchanged.incrementAndGet();
+        } else {
+            r.put("status", "indexed");
+            job.indexed.incrementAndGet();
+        }
+        job.results.set(t.slot, r);
+        if (job.done.incrementAndGet() == job.bookIds.length) {
+            job.finishNanos = System.nanoTime();
+            job.finishedAt = LocalDateTime.now().toString();
+            job.finished.complete(null);
+        }
+    }
+
+    /** POSTs with no body and parses the JSON answer; a non-2xx status fails the future, a 503 with {@link RetryLater}. */
+    private CompletableFuture<Map<String, Object>> post(String url, Duration timeout) {
+        HttpRequest req = HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .timeout(timeout)
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
+        return client.sendAsync(req, HttpResponse.BodyHandlers.ofString()).thenApply(res -> {
+            if (res.statusCode() == 503) {
+                throw new CompletionException(new RetryLater(url, retryAfterMillis(res)));
+            }
+            if (res.statusCode() / 100 != 2) {
+                throw new CompletionException(new IOException("HTTP " + res.statusCode() + " from " + url));
+            }
+            try {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> body = GSON.fromJson(res.body(), Map.class);
+                return body == null ? Map.of() : body;
+            } catch (JsonParseException e) {
+                throw new CompletionException(new IOException("bad JSON from " + url, e));
+            }
+        });
+    }
+
+    /** Seconds from a {@code Retry-After} header; the HTTP-date form is not sent by our services. */
+    private static long retryAfterMillis(HttpResponse<?> res) {
+        Optional<String> h = res.headers().firstValue("Retry-After");
+        try {
+            if (h.isPresent()) return Math.max(0L, Long.parseLong(h.get().trim())) * 1000L;
+        } catch (NumberFormatException ignored) {
+        }
+        return DEFAULT_RETRY_AFTER_MS;
+    }
+
+    /** A service answered 503: it is overloaded and the call should be made again later. */
+    private static final class RetryLater extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        final long millis;
+
+        RetryLater(String url, long millis) {
+            super("HTTP 503 from " + url + ", retry in " + millis + " ms");
+            this.millis = millis;
+        }
+    }
+
+    /** A service answered, but with {@code "status": "error"}. */
+    private static final class StepException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final String stage;
+
+        StepException(String stage, Object message) {
+            super(message == null ? stage + " failed" : message.toString());
+            this.stage = stage;
+        }
+    }
+
+    /** Drops the oldest finished jobs once too many are kept; running jobs always stay. */
+    private void prune() {
+        int finished = 0;
+        for (Job j : jobs.values()) if (j.finishedAt != null) finished++;
+        Iterator<Job> it = jobs.values().iterator();
+        while (finished > MAX_FINISHED_JOBS && it.hasNext()) {
+            if (it.next().finishedAt != null) {
+                it.remove();
+                finished--;
+            }
+        }
+    }
+
+    /** Progress of {@code jobId} plus the result of every finished ID, or null if the job is unknown. */
+    public Map<String, Object> status(String jobId) {
+        Job job;
+        synchronized (jobs) {
+            job = jobs.get(jobId);
+        }
+        if (job == null) return null;
+        Map<String, Object> out = summary(job);
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (int i = 0; i < job.results.length(); i++) {
+            Map<String, Object> r = job.results.get(i);
+            if (r != null) results.add(r);
+        }
+        out.put("results", results);
+        return out;
+    }
+
+    public Map<String, Object> listJobs() {
+        List<Map<String, Object>> out = new ArrayList<>();
+        synchronized (jobs) {
+            for (Job j : jobs.values()) out.add(summary(j));
+        }
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("count", out.size());
+        response.put("in_flight", inFlight.get());
+        response.put("parallelism", parallelism);
+        response.put("index_nodes", indexUrls);
+        response.put("jobs", out);
+        return response;
+    }
+
+    private static Map<String, Object> summary(Job job) {
+        int done = job.done.get();
+        long end = job.finishNanos != 0 ? job.finishNanos : System.nanoTime();
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("job_id", job.id);
+        m.put("status", job.finishedAt != null ? "done" : job.started.get() == 0 ? "queued" : "running");
+        m.put("total", job.bookIds.length);
+        m.put("completed", done);
+        m.put("indexed", job.indexed.get());
+        m.put("unchanged", job.unchanged.get());
+        m.put("failed", job.failed.get());
+        m.put("retried", job.retried.get());
+        m.put("elapsed_ms", (end - job.startNanos) / 1_000_000L);
+        m.put("created_at", job.createdAt);
+        if (job.finishedAt != null) m.put("finished_at", job.finishedAt);
+        return m;
+    }
+}
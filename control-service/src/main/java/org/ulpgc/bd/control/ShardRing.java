@@ -0,0 +1,59 @@
+package org.ulpgc.bd.control;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Consistent-hash ring that assigns each book to one index node. Every node name is hashed to
+ * {@link #POINTS_PER_NODE} points on a 64-bit ring and a book belongs to the first point at or
+ * after the hash of its ID, so adding a node only moves the books that land on its new points,
+ * about 1/N of them. The ring depends only on the set of names: every service given the same
+ * list routes a book to the same node. Keep this copy in step with the indexing service's.
+ */
+public final class ShardRing {
+    public static final int POINTS_PER_NODE = 512;
+
+    private final List<String> nodes;
+    private final long[] points;
+    private final String[] owners;
+
+    public ShardRing(Collection<String> nodes) {
+        this.nodes = List.copyOf(new LinkedHashSet<>(nodes));
+        if (this.nodes.isEmpty()) throw new IllegalArgumentException("a shard ring needs at least one node");
+        TreeMap<Long, String> ring = new TreeMap<>();
+        for (String node : this.nodes) {
+            for (int i = 0; i < POINTS_PER_NODE; i++) ring.merge(hash(node + "#" + i), node, (a, b) -> a.compareTo(b) <= 0 ? a : b);
+        }
+        this.points = new long[ring.size()];
+        this.owners = new String[ring.size()];
+        int i = 0;
+        for (Map.Entry<Long, String> e : ring.entrySet()) {
+            points[i] = e.getKey();
+            owners[i++] = e.getValue();
+        }
+    }
+
+    public String owner(int bookId) {
+        int i = Arrays.binarySearch(points, hash(Integer.toString(bookId)));
+        if (i < 0) i = -i - 1;
+        return owners[i == points.length ? 0 : i];
+    }
+
+    public List<String> nodes() {
+        return nodes;
+    }
+
+    /** First 8 bytes of the MD5 digest; stable across JVMs, unlike most {@code hashCode}s mixed into a ring. */
+    private static long hash(String key) {
+        try {
+            byte[] d = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+            long h = 0;
+            for (int i = 0; i < 8; i++) h = (h << 8) | (d[i] & 0xff);
+            return h;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -4,6 +4,8 @@ import io.javalin.Javalin;
 import io.javalin.json.JavalinGson;
 import org.ulpgc.bd.indexing.api.IndexingHttpApi;
 import org.ulpgc.bd.indexing.service.IndexingService;
+import org.ulpgc.bd.indexing.service.QueueConsumer;
+import org.ulpgc.bd.indexing.util.ShardRing;
 
 import java.net.URI;
 import java.nio.file.Files;
@@ -12,18 +14,47 @@ import java.nio.file.Paths;
 
 public class IndexingServiceApp {
     public static void main(String[] args) {
-        int port = 7002;
+        int port = Integer.getInteger("indexing.port", 7002);
         Path moduleRoot = detectModuleRoot(IndexingServiceApp.class);
         Path repoRoot = moduleRoot.getParent() != null ? moduleRoot.getParent() : moduleRoot;
         Path datalake = repoRoot.resolve("ingestion-service").resolve("datalake").toAbsolutePath().normalize();
-        Path datamarts = moduleRoot.resolve("datamarts").toAbsolutePath().normalize();
+        String configured = System.getProperty("indexing.datamarts");
+        Path datamarts = (configured != null ? Paths.get(configured) : moduleRoot.resolve("datamarts")).toAbsolutePath().normalize();
         String indexerVersion = "indexer-1.0";
+        int rebuildThreads = Integer.getInteger("indexing.rebuild.threads", Runtime.getRuntime().availableProcessors());
+        long rebuildMemoryBytes = Long.getLong("indexing.rebuild.memoryMB", 256L) << 20;
+        boolean positions = Boolean.getBoolean("indexing.positions");
+        boolean consume = Boolean.parseBoolean(System.getProperty("indexing.queue.consume", "true"));
+        int batchSize = Integer.getInteger("indexing.queue.batch", 500);
+        int commitBooks = Integer.getInteger("indexing.commit.books", 500);
+        long commitMillis = Long.getLong("indexing.commit.millis", 2000);
+        long commitMemoryBytes = Long.getLong("indexing.commit.memoryMB", 32L) << 20;
+        // sharded: -Dindexing.nodes=shard-a,shard-b -Dindexing.node=shard-a, each node with its own port and datamarts
+        ShardRing ring = ShardRing.parse(System.getProperty("indexing.nodes"));
+        String node = System.getProperty("indexing.node");
 
-        IndexingService service = new IndexingService(datalake, datamarts, indexerVersion);
+        IndexingService service = new IndexingService(datalake, datamarts, indexerVersion, rebuildThreads, rebuildMemoryBytes, positions,
+                commitBooks, commitMillis, commitMemoryBytes, node, ring);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                service.commit();
+            } catch (Exception e) {
+                System.err.println("Indexing: final commit failed - " + e.getMessage());
+            }
+        }));
+
+        QueueConsumer consumer = null;
+        if (consume) {
+            String consumerName = ring == null ? QueueConsumer.NAME : QueueConsumer.NAME + "-" + node;
+            consumer = new QueueConsumer(datalake, consumerName, service, batchSize, 500);
+            consumer.start();
+        }
 
         Javalin app = Javalin.create(cfg -> cfg.jsonMapper(new JavalinGson())).start(port);
-        IndexingHttpApi.register(app, service);
-        System.out.println("Indexing listening on :" + port + " datalake=" + datalake + " datamarts=" + datamarts);
+        IndexingHttpApi.register(app, service, consumer);
+        System.out.println("Indexing listening on :" + port + " datalake=" + datalake + " datamarts=" + datamarts + " positions=" + positions
+                + " queue_batch=" + (consume ? batchSize : "off") + " commit_books=" + commitBooks + " commit_ms=" + commitMillis
+                + (ring == null ? "" : " node=" + node + " nodes=" + ring.nodes()));
     }
 
     private static Path detectModuleRoot(Class<?> anchor) {
@@ -2,14 +2,30 @@ package org.ulpgc.bd.indexing.api;
 
 import io.javalin.Javalin;
 import org.ulpgc.bd.indexing.service.IndexingService;
+import org.ulpgc.bd.indexing.service.QueueConsumer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class IndexingHttpApi {
-    public static void register(Javalin app, IndexingService service) {
+    /**
+     * {@code /index/update/{book_id}} only buffers the book unless called with {@code ?wait=true}.
+     * {@code consumer} is null when the ingest queue is not consumed. */
+    public static void register(Javalin app, IndexingService service, QueueConsumer consumer) {
         app.post("/index/update/{book_id}", ctx -> {
             int id = Integer.parseInt(ctx.pathParam("book_id"));
-            ctx.json(service.updateOne(id));
+            ctx.json(service.updateOne(id, "true".equals(ctx.queryParam("wait"))));
         });
         app.post("/index/rebuild", ctx -> ctx.json(service.rebuildAll()));
         app.get("/index/status", ctx -> ctx.json(service.status()));
+        app.get("/index/queue", ctx -> {
+            if (consumer != null) {
+                ctx.json(consumer.stats());
+                return;
+            }
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("consumer", "off");
+            ctx.json(m);
+        });
     }
 }
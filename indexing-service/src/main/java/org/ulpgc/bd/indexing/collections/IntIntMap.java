@@ -0,0 +1,99 @@
+package org.ulpgc.bd.indexing.collections;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing int to int map with linear probing. Keys may be any int value.
+ */
+public final class IntIntMap {
+    private static final int EMPTY = Integer.MIN_VALUE;
+
+    private int[] keys;
+    private int[] values;
+    private int size;
+    private boolean hasEmptyKey;
+    private int emptyKeyValue;
+
+    public IntIntMap() {
+        this(16);
+    }
+
+    public IntIntMap(int expected) {
+        int cap = Integer.highestOneBit(Math.max(4, expected * 2 - 1)) << 1;
+        keys = new int[cap];
+        values = new int[cap];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    public int size() {
+        return size + (hasEmptyKey ? 1 : 0);
+    }
+
+    public boolean containsKey(int key) {
+        if (key == EMPTY) return hasEmptyKey;
+        return keys[slot(key)] != EMPTY;
+    }
+
+    public int get(int key, int defaultValue) {
+        if (key == EMPTY) return hasEmptyKey ? emptyKeyValue : defaultValue;
+        int i = slot(key);
+        return keys[i] == EMPTY ? defaultValue : values[i];
+    }
+
+    public void put(int key, int value) {
+        if (key == EMPTY) {
+            hasEmptyKey = true;
+            emptyKeyValue = value;
+            return;
+        }
+        int i = slot(key);
+        if (keys[i] == EMPTY) {
+            keys[i] = key;
+            size++;
+            values[i] = value;
+            if (size * 2 > keys.length) grow();
+        } else {
+            values[i] = value;
+        }
+    }
+
+    public int addTo(int key, int delta) {
+        int v = get(key, 0) + delta;
+        put(key, v);
+        return v;
+    }
+
+    public int[] keys() {
+        int[] out = new int[size()];
+        int n = 0;
+        for (int k : keys) if (k != EMPTY) out[n++] = k;
+        if (hasEmptyKey) out[n] = EMPTY;
+        return out;
+    }
+
+    private int slot(int key) {
+        int mask = keys.length - 1;
+        int i = mix(key) & mask;
+        while (keys[i] != EMPTY && keys[i] != key) i = (i + 1) & mask;
+        return i;
+    }
+
+    private void grow() {
+        int[] ok = keys;
+        int[] ov = values;
+        keys = new int[ok.length * 2];
+        values = new int[ok.length * 2];
+        Arrays.fill(keys, EMPTY);
+        for (int j = 0; j < ok.length; j++) {
+            if (ok[j] == EMPTY) continue;
+            int i = slot(ok[j]);
+            keys[i] = ok[j];
+            values[i] = ov[j];
+        }
+    }
+
+    private static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,60 @@
+package org.ulpgc.bd.indexing.collections;
+
+import java.util.Arrays;
+
+/**
+ * Growable int array, used for postings and per-term counters.
+ */
+public final class IntList {
+    private int[] values;
+    private int size;
+
+    public IntList() {
+        this(16);
+    }
+
+    public IntList(int capacity) {
+        values = new int[Math.max(1, capacity)];
+    }
+
+    public void add(int v) {
+        if (size == values.length) values = Arrays.copyOf(values, size * 2);
+        values[size++] = v;
+    }
+
+    public int get(int i) {
+        if (i >= size) throw new IndexOutOfBoundsException(i + " >= " + size);
+        return values[i];
+    }
+
+    public void set(int i, int v) {
+        if (i >= size) throw new IndexOutOfBoundsException(i + " >= " + size);
+        values[i] = v;
+    }
+
+    public void increment(int i) {
+        if (i >= size) throw new IndexOutOfBoundsException(i + " >= " + size);
+        values[i]++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /** Backing array, valid up to {@link #size()}; only stable until the next {@link #add}. */
+    public int[] buffer() {
+        return values;
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+}
@@ -0,0 +1,127 @@
+package org.ulpgc.bd.indexing.collections;
+
+import java.util.Arrays;
+
+/**
+ * Assigns dense int ids to terms. Lookups accept a char range so callers can probe with a reused
+ * buffer; a term's String is created only when the term is first added.
+ */
+public final class TermDictionary {
+    private String[] terms;
+    private int[] hashes;
+    private int[] table;
+    private int size;
+
+    public TermDictionary() {
+        this(1024);
+    }
+
+    public TermDictionary(int expected) {
+        int cap = Integer.highestOneBit(Math.max(4, expected * 2 - 1)) << 1;
+        table = new int[cap];
+        Arrays.fill(table, -1);
+        terms = new String[Math.max(4, expected)];
+        hashes = new int[terms.length];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String term(int id) {
+        if (id >= size) throw new IndexOutOfBoundsException(id + " >= " + size);
+        return terms[id];
+    }
+
+    public int get(String term) {
+        int h = term.hashCode();
+        int mask = table.length - 1;
+        for (int i = mix(h) & mask; table[i] >= 0; i = (i + 1) & mask) {
+            int id = table[i];
+            if (hashes[id] == h && terms[id].equals(term)) return id;
+        }
+        return -1;
+    }
+
+    public int add(String term) {
+        int h = term.hashCode();
+        int mask = table.length - 1;
+        int i = mix(h) & mask;
+        for (; table[i] >= 0; i = (i + 1) & mask) {
+            int id = table[i];
+            if (hashes[id] == h && terms[id].equals(term)) return id;
+        }
+        return insert(i, term, h);
+    }
+
+    public int add(char[] buf, int off, int len) {
+        int h = hash(buf, off, len);
+        int mask = table.length - 1;
+        int i = mix(h) & mask;
+        for (; table[i] >= 0; i = (i + 1) & mask) {
+            int id = table[i];
+            if (hashes[id] == h && equals(terms[id], buf, off, len)) return id;
+        }
+        return insert(i, new String(buf, off, len), h);
+    }
+
+    public int find(char[] buf, int off, int len) {
+        int h = hash(buf, off, len);
+        int mask = table.length - 1;
+        for (int i = mix(h) & mask; table[i] >= 0; i = (i + 1) & mask) {
+            int id = table[i];
+            if (hashes[id] == h && equals(terms[id], buf, off, len)) return id;
+        }
+        return -1;
+    }
+
+    /** Ids ordered by {@link String#compareTo} of their terms. */
+    public int[] sortedIds() {
+        String[] sorted = Arrays.copyOf(terms, size);
+        Arrays.sort(sorted);
+        int[] ids = new int[size];
+        for (int i = 0; i < size; i++) ids[i] = get(sorted[i]);
+        return ids;
+    }
+
+    private int insert(int slot, String term, int h) {
+        int id = size++;
+        if (id == terms.length) {
+            terms = Arrays.copyOf(terms, id * 2);
+            hashes = Arrays.copyOf(hashes, id * 2);
+        }
+        terms[id] = term;
+        hashes[id] = h;
+        table[slot] = id;
+        if (size * 2 > table.length) rehash();
+        return id;
+    }
+
+    private void rehash() {
+        table = new int[table.length * 2];
+        Arrays.fill(table, -1);
+        int mask = table.length - 1;
+        for (int id = 0; id < size; id++) {
+            int i = mix(hashes[id]) & mask;
+            while (table[i] >= 0) i = (i + 1) & mask;
+            table[i] = id;
+        }
+    }
+
+    private static int hash(char[] buf, int off, int len) {
+        int h = 0;
+        for (int i = off; i < off + len; i++) h = 31 * h + buf[i];
+        return h;
+    }
+
+    private static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean equals(String key, char[] buf, int off, int len) {
+        if (key.length() != len) return false;
+        for (int i = 0; i < len; i++) if (key.charAt(i) != buf[off + i]) return false;
+        return true;
+    }
+}
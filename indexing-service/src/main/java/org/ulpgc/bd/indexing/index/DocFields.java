@@ -0,0 +1,151 @@
+package org.ulpgc.bd.indexing.index;
+
+import org.ulpgc.bd.indexing.model.DocMeta;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Per-segment doc metadata in the {@code .fields} file, stored column by column so a reader can
+ * map it and filter without touching any per-book file:
+ * <pre>
+ *   header     magic, version
+ *   authors    sorted distinct values, each vint length + UTF-8
+ *   languages  sorted distinct values, each vint length + UTF-8
+ *   titles     UTF-8 bytes back to back
+ *   columns    int author ord[docCount], int language ord[docCount], int year[docCount],
+ *              long title start[docCount + 1] (relative to the titles section)
+ *   footer     docCount, authorCount, languageCount (ints),
+ *              authors, languages, titles, columns offsets (longs)
+ * </pre>
+ * Columns are in doc ord order, the same order as the {@code .docs} file.
+ */
+public final class DocFields {
+    static final int FOOTER_BYTES = 3 * 4 + 4 * 8;
+
+    private final IndexInput in;
+    private final int docCount;
+    private final String[] authors;
+    private final String[] languages;
+    private final long titlesOffset;
+    private final long columnsOffset;
+
+    private DocFields(IndexInput in, int docCount, String[] authors, String[] languages, long titlesOffset, long columnsOffset) {
+        this.in = in;
+        this.docCount = docCount;
+        this.authors = authors;
+        this.languages = languages;
+        this.titlesOffset = titlesOffset;
+        this.columnsOffset = columnsOffset;
+    }
+
+    /** Writes {@code docs} (one per doc ord; null entries get empty values). */
+    static void write(Path file, List<DocMeta> docs) throws IOException {
+        String[] authors = dictionary(docs, true);
+        String[] languages = dictionary(docs, false);
+        try (IndexOutput out = new IndexOutput(file)) {
+            out.writeInt(SegmentFormat.MAGIC_FIELDS);
+            out.writeInt(SegmentFormat.VERSION);
+            long authorsOffset = out.position();
+            for (String s : authors) writeString(out, s);
+            long languagesOffset = out.position();
+            for (String s : languages) writeString(out, s);
+
+            long titlesOffset = out.position();
+            long[] starts = new long[docs.size() + 1];
+            for (int i = 0; i < docs.size(); i++) {
+                byte[] b = value(docs.get(i) == null ? null : docs.get(i).title).getBytes(StandardCharsets.UTF_8);
+                out.writeBytes(b, 0, b.length);
+                starts[i + 1] = out.position() - titlesOffset;
+            }
+
+            long columnsOffset = out.position();
+            for (DocMeta m : docs) out.writeInt(Arrays.binarySearch(authors, value(m == null ? null : m.author)));
+            for (DocMeta m : docs) out.writeInt(Arrays.binarySearch(languages, value(m == null ? null : m.language)));
+            for (DocMeta m : docs) out.writeInt(m == null ? 0 : m.year);
+            for (long s : starts) out.writeLong(s);
+
+            out.writeInt(docs.size());
+            out.writeInt(authors.length);
+            out.writeInt(languages.length);
+            out.writeLong(authorsOffset);
+            out.writeLong(languagesOffset);
+            out.writeLong(titlesOffset);
+            out.writeLong(columnsOffset);
+        }
+    }
+
+    private static String[] dictionary(List<DocMeta> docs, boolean author) {
+        TreeSet<String> values = new TreeSet<>();
+        for (DocMeta m : docs) values.add(value(m == null ? null : author ? m.author : m.language));
+        return values.toArray(new String[0]);
+    }
+
+    private static String value(String s) {
+        return s == null ? "" : s;
+    }
+
+    private static void writeString(IndexOutput out, String s) throws IOException {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeVInt(b.length);
+        out.writeBytes(b, 0, b.length);
+    }
+
+    /** Maps the fields file, or returns null if the segment predates it. */
+    static DocFields open(Path file, int docCount) throws IOException {
+        if (!Files.exists(file)) return null;
+        IndexInput in;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            in = IndexInput.map(ch);
+        }
+        if (in.readInt() != SegmentFormat.MAGIC_FIELDS) throw new IOException("corrupt segment file " + file);
+        int version = in.readInt();
+        if (version != SegmentFormat.VERSION) throw new IOException("unsupported segment version " + version + " in " + file);
+        in.seek(in.length() - FOOTER_BYTES);
+        int docs = in.readInt();
+        int authorCount = in.readInt();
+        int languageCount = in.readInt();
+        long authorsOffset = in.readLong();
+        long languagesOffset = in.readLong();
+        long titlesOffset = in.readLong();
+        long columnsOffset = in.readLong();
+        if (docs != docCount) throw new IOException("fields file " + file + " has " + docs + " docs, expected " + docCount);
+        return new DocFields(in, docs, readStrings(in, authorsOffset, authorCount), readStrings(in, languagesOffset, languageCount),
+                titlesOffset, columnsOffset);
+    }
+
+    private static String[] readStrings(IndexInput in, long offset, int count) {
+        String[] out = new String[count];
+        in.seek(offset);
+        byte[] bytes = new byte[64];
+        for (int i = 0; i < count; i++) {
+            int len = in.readVInt();
+            if (bytes.length < len) bytes = new byte[Math.max(len, bytes.length * 2)];
+            in.readBytes(bytes, 0, len);
+            out[i] = new String(bytes, 0, len, StandardCharsets.UTF_8);
+        }
+        return out;
+    }
+
+    public DocMeta get(int ord, int docId) {
+        DocMeta m = new DocMeta();
+        m.book_id = docId;
+        m.author = authors[in.intAt(columnsOffset + 4L * ord)];
+        m.language = languages[in.intAt(columnsOffset + 4L * (docCount + ord))];
+        m.year = in.intAt(columnsOffset + 4L * (2 * docCount + ord));
+        long starts = columnsOffset + 12L * docCount;
+        long from = in.longAt(starts + 8L * ord);
+        long to = in.longAt(starts + 8L * (ord + 1));
+        byte[] b = new byte[(int) (to - from)];
+        IndexInput t = in.copy();
+        t.seek(titlesOffset + from);
+        t.readBytes(b, 0, b.length);
+        m.title = new String(b, StandardCharsets.UTF_8);
+        return m;
+    }
+}
@@ -0,0 +1,315 @@
+package org.ulpgc.bd.indexing.index;
+
+import org.ulpgc.bd.indexing.collections.IntList;
+import org.ulpgc.bd.indexing.collections.TermDictionary;
+import org.ulpgc.bd.indexing.model.DocMeta;
+import org.ulpgc.bd.indexing.model.SegmentInfo;
+import org.ulpgc.bd.indexing.util.TermCounter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builds one segment from (term, doc, tf) triples with a fixed memory budget. Every worker fills
+ * its own {@link RunBuffer}, with its own term ids; a full buffer is sorted by (term, doc), its
+ * terms are mapped to the builder's shared ids in one locked call, and it is spilled to a run
+ * file. {@link #write} k-way merges all runs into the segment. A buffered posting costs 12 bytes (packed
+ * term/doc long plus tf); only the vocabulary and the doc table grow with the corpus. In positional
+ * mode the int slot points into a per-buffer pool holding tf followed by the positions, and half of
+ * the budget is reserved for that pool.
+ */
+public class ExternalSortIndexBuilder implements Closeable {
+    private static final int BYTES_PER_ENTRY = 12;
+
+    private final Path tmpDir;
+    private final int bufferCapacity;
+    private final int poolCapacity;
+    private final boolean positions;
+    private final TermDictionary dict = new TermDictionary(1 << 16);
+    private final AtomicInteger runCounter = new AtomicInteger();
+    private final List<RunBuffer> buffers = new ArrayList<>();
+    private final List<Path> runFiles = Collections.synchronizedList(new ArrayList<>());
+    private final IntList docIds = new IntList(1024);
+    private final IntList docLengths = new IntList(1024);
+    private final List<DocMeta> docMetas = new ArrayList<>();
+
+    public ExternalSortIndexBuilder(Path tmpDir, long memoryBudgetBytes, int workers) throws IOException {
+        this(tmpDir, memoryBudgetBytes, workers, false);
+    }
+
+    public ExternalSortIndexBuilder(Path tmpDir, long memoryBudgetBytes, int workers, boolean positions) throws IOException {
+        this.tmpDir = tmpDir;
+        this.positions = positions;
+        long perWorker = memoryBudgetBytes / Math.max(1, workers) / (positions ? 2 : 1);
+        this.bufferCapacity = (int) Math.max(1024, Math.min(Integer.MAX_VALUE - 8, perWorker / BYTES_PER_ENTRY));
+        this.poolCapacity = (int) Math.max(1024, Math.min(Integer.MAX_VALUE - 8, perWorker / 4));
+        Files.createDirectories(tmpDir);
+    }
+
+    public synchronized RunBuffer newBuffer() {
+        RunBuffer b = new RunBuffer();
+        buffers.add(b);
+        return b;
+    }
+
+    public int spilledRuns() {
+        return runFiles.size();
+    }
+
+    /** Shared ids of {@code terms}, added if new. */
+    private synchronized int[] termIds(String[] terms) {
+        int[] ids = new int[terms.length];
+        for (int i = 0; i < terms.length; i++) ids[i] = dict.add(terms[i]);
+        return ids;
+    }
+
+    private synchronized void addDoc(int docId, int length, DocMeta meta) {
+        docIds.add(docId);
+        docLengths.add(length);
+        docMetas.add(meta);
+    }
+
+    public SegmentInfo write(SegmentWriter out) throws IOException {
+        synchronized (this) {
+            // doc id in the high half, arrival index in the low half
+            long[] sortedDocs = new long[docIds.size()];
+            for (int i = 0; i < sortedDocs.length; i++) sortedDocs[i] = ((long) docIds.get(i) << 32) | i;
+            Arrays.sort(sortedDocs);
+            for (long d : sortedDocs) out.addDoc((int) (d >>> 32), docLengths.get((int) d), docMetas.get((int) d));
+        }
+
+        PriorityQueue<RunCursor> pq = new PriorityQueue<>((a, b) -> {
+            if (a.termId != b.termId) return dict.term(a.termId).compareTo(dict.term(b.termId));
+            return Integer.compare(a.doc, b.doc);
+        });
+        for (Path run : runFiles) {
+            RunCursor c = new FileRunCursor(run, positions);
+            if (c.next()) pq.add(c);
+        }
+        for (RunBuffer b : buffers) {
+            if (b.size == 0) continue;
+            b.sort();
+            RunCursor c = new MemoryRunCursor(b);
+            if (c.next()) pq.add(c);
+        }
+
+        int currentTerm = -1;
+        while (!pq.isEmpty()) {
+            RunCursor c = pq.poll();
+            if (c.termId != currentTerm) {
+                currentTerm = c.termId;
+                out.startTerm(dict.term(currentTerm));
+            }
+            if (positions) out.addPosting(c.doc, c.tf, c.positions, c.positionsOff);
+            else out.addPosting(c.doc, c.tf);
+            if (c.next()) pq.add(c);
+        }
+        return out.finish();
+    }
+
+    @Override
+    public void close() {
+        for (Path run : runFiles) {
+            try { Files.deleteIfExists(run); } catch (IOException ignored) {}
+        }
+        try { Files.deleteIfExists(tmpDir); } catch (IOException ignored) {}
+    }
+
+    public class RunBuffer {
+        // grown on demand up to bufferCapacity, so a small batch does not pay for the whole budget
+        private long[] entries = new long[Math.min(bufferCapacity, 4096)];
+        private int[] tfs = new int[entries.length];
+        private final IntList pool = positions ? new IntList(1024) : null;
+        private TermDictionary local = new TermDictionary();
+        private int[] ranked;
+        private int size;
+
+        public void add(int docId, TermCounter tf) throws IOException {
+            add(docId, null, tf);
+        }
+
+        public void add(DocMeta meta, TermCounter tf) throws IOException {
+            add(meta.book_id, meta, tf);
+        }
+
+        private void add(int docId, DocMeta meta, TermCounter tf) throws IOException {
+            if (positions && !tf.hasPositions()) throw new IllegalArgumentException("positional rebuild needs term positions");
+            addDoc(docId, (int) tf.total(), meta);
+            for (int id = 0; id < tf.size(); id++) {
+                int count = tf.count(id);
+                if (size == bufferCapacity || (positions && size > 0 && pool.size() + count + 1 > poolCapacity)) spill();
+                else if (size == entries.length) grow();
+                entries[size] = ((long) local.add(tf.term(id)) << 32) | (docId & 0xFFFFFFFFL);
+                if (positions) {
+                    tfs[size] = pool.size();
+                    pool.add(count);
+                    IntList p = tf.positions(id);
+                    for (int i = 0; i < count; i++) pool.add(p.get(i));
+                } else {
+                    tfs[size] = count;
+                }
+                size++;
+            }
+        }
+
+        private void grow() {
+            int n = (int) Math.min(bufferCapacity, entries.length * 2L);
+            entries = Arrays.copyOf(entries, n);
+            tfs = Arrays.copyOf(tfs, n);
+        }
+
+        private void sort() {
+            int[] order = local.sortedIds();
+            int[] rankOf = new int[order.length];
+            String[] sorted = new String[order.length];
+            for (int r = 0; r < order.length; r++) {
+                rankOf[order[r]] = r;
+                sorted[r] = local.term(order[r]);
+            }
+            ranked = termIds(sorted);
+            for (int i = 0; i < size; i++) {
+                entries[i] = ((long) rankOf[(int) (entries[i] >>> 32)] << 32) | (entries[i] & 0xFFFFFFFFL);
+            }
+            sortParallel(entries, tfs, 0, size - 1);
+        }
+
+        private void spill() throws IOException {
+            sort();
+            Path run = tmpDir.resolve("run_" + runCounter.getAndIncrement() + ".bin");
+            try (IndexOutput out = new IndexOutput(run)) {
+                for (int i = 0; i < size; i++) {
+                    out.writeVInt(ranked[(int) (entries[i] >>> 32)]);
+                    out.writeVInt((int) entries[i]);
+                    if (positions) {
+                        int slot = tfs[i];
+                        int tf = pool.get(slot);
+                        out.writeVInt(tf);
+                        int last = 0;
+                        for (int j = 1; j <= tf; j++) {
+                            int p = pool.get(slot + j);
+                            out.writeVInt(p - last);
+                            last = p;
+                        }
+                    } else {
+                        out.writeVInt(tfs[i]);
+                    }
+                }
+            }
+            runFiles.add(run);
+            size = 0;
+            ranked = null;
+            local = new TermDictionary();
+            if (pool != null) pool.clear();
+        }
+    }
+
+    private abstract static class RunCursor {
+        int termId;
+        int doc;
+        int tf;
+        int[] positions;
+        int positionsOff;
+
+        abstract boolean next() throws IOException;
+    }
+
+    private static class MemoryRunCursor extends RunCursor {
+        private final RunBuffer b;
+        private int i = -1;
+
+        MemoryRunCursor(RunBuffer b) {
+            this.b = b;
+        }
+
+        @Override
+        boolean next() {
+            if (++i >= b.size) return false;
+            termId = b.ranked[(int) (b.entries[i] >>> 32)];
+            doc = (int) b.entries[i];
+            if (b.pool != null) {
+                positions = b.pool.buffer();
+                positionsOff = b.tfs[i] + 1;
+                tf = positions[b.tfs[i]];
+            } else {
+                tf = b.tfs[i];
+            }
+            return true;
+        }
+    }
+
+    private static class FileRunCursor extends RunCursor {
+        private final IndexInput in;
+        private final boolean withPositions;
+
+        FileRunCursor(Path run, boolean withPositions) throws IOException {
+            this.withPositions = withPositions;
+            if (withPositions) positions = new int[64];
+            try (FileChannel ch = FileChannel.open(run, StandardOpenOption.READ)) {
+                this.in = IndexInput.map(ch);
+            }
+        }
+
+        @Override
+        boolean next() {
+            if (in.position() >= in.length()) return false;
+            termId = in.readVInt();
+            doc = in.readVInt();
+            tf = in.readVInt();
+            if (withPositions) {
+                if (positions.length < tf) positions = new int[Math.max(tf, positions.length * 2)];
+                int p = 0;
+                for (int i = 0; i < tf; i++) {
+                    p += in.readVInt();
+                    positions[i] = p;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static void sortParallel(long[] keys, int[] vals, int lo, int hi) {
+        while (hi - lo > 16) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid] < keys[lo]) swap(keys, vals, mid, lo);
+            if (keys[hi] < keys[lo]) swap(keys, vals, hi, lo);
+            if (keys[hi] < keys[mid]) swap(keys, vals, hi, mid);
+            long pivot = keys[mid];
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (keys[i] < pivot) i++;
+                while (keys[j] > pivot) j--;
+                if (i <= j) swap(keys, vals, i++, j--);
+            }
+            if (j - lo < hi - i) {
+                sortParallel(keys, vals, lo, j);
+                lo = i;
+            } else {
+                sortParallel(keys, vals, i, hi);
+                hi = j;
+            }
+        }
+        for (int i = lo + 1; i <= hi; i++) {
+            long k = keys[i];
+            int v = vals[i];
+            int j = i - 1;
+            while (j >= lo && keys[j] > k) {
+                keys[j + 1] = keys[j];
+                vals[j + 1] = vals[j];
+                j--;
+            }
+            keys[j + 1] = k;
+            vals[j + 1] = v;
+        }
+    }
+
+    private static void swap(long[] keys, int[] vals, int a, int b) {
+        long k = keys[a]; keys[a] = keys[b]; keys[b] = k;
+        int v = vals[a]; vals[a] = vals[b]; vals[b] = v;
+    }
+}
@@ -0,0 +1,150 @@
+package org.ulpgc.bd.indexing.index;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Big-endian reader over a file mapped in chunks of 1 GiB, since one mapping cannot exceed 2 GiB.
+ * Positions are longs; a read that straddles two chunks is assembled byte by byte.
+ */
+public class IndexInput {
+    static final int CHUNK_BITS = 30;
+
+    private final ByteBuffer[] chunks;
+    private final int chunkBits;
+    private final long chunkMask;
+    private final long length;
+    private int chunk;
+    private ByteBuffer buf;
+
+    public IndexInput(ByteBuffer buf) {
+        this(new ByteBuffer[]{buf}, 31);
+    }
+
+    IndexInput(ByteBuffer[] chunks, int chunkBits) {
+        this.chunks = new ByteBuffer[chunks.length];
+        for (int i = 0; i < chunks.length; i++) this.chunks[i] = chunks[i].duplicate();
+        this.chunkBits = chunkBits;
+        this.chunkMask = (1L << chunkBits) - 1;
+        long n = 0;
+        for (ByteBuffer c : chunks) n += c.limit();
+        this.length = n;
+        this.buf = this.chunks[0];
+    }
+
+    /** Maps all of {@code ch} read-only; the mapping outlives the channel. */
+    public static IndexInput map(FileChannel ch) throws IOException {
+        return map(ch, CHUNK_BITS);
+    }
+
+    static IndexInput map(FileChannel ch, int chunkBits) throws IOException {
+        long size = ch.size();
+        long chunkSize = 1L << chunkBits;
+        int n = (int) Math.max(1, (size + chunkSize - 1) >>> chunkBits);
+        ByteBuffer[] chunks = new ByteBuffer[n];
+        for (int i = 0; i < n; i++) {
+            long start = (long) i << chunkBits;
+            chunks[i] = ch.map(FileChannel.MapMode.READ_ONLY, start, Math.min(chunkSize, size - start));
+        }
+        return new IndexInput(chunks, chunkBits);
+    }
+
+    public IndexInput copy() {
+        IndexInput c = new IndexInput(chunks, chunkBits);
+        c.seek(position());
+        return c;
+    }
+
+    public long position() {
+        return ((long) chunk << chunkBits) + buf.position();
+    }
+
+    public void seek(long pos) {
+        if (pos < 0 || pos > length) throw new IllegalArgumentException("seek to " + pos + " outside 0.." + length);
+        int c = (int) (pos >>> chunkBits);
+        if (c == chunks.length) c--;
+        chunk = c;
+        buf = chunks[c];
+        buf.position((int) (pos - ((long) c << chunkBits)));
+    }
+
+    public long length() {
+        return length;
+    }
+
+    /** Absolute read that leaves the position alone, for fixed-width columns. */
+    public int intAt(long pos) {
+        ByteBuffer c = chunks[(int) (pos >>> chunkBits)];
+        int off = (int) (pos & chunkMask);
+        if (off + 4 <= c.limit()) return c.getInt(off);
+        return (int) bytesAt(pos, 4);
+    }
+
+    public long longAt(long pos) {
+        ByteBuffer c = chunks[(int) (pos >>> chunkBits)];
+        int off = (int) (pos & chunkMask);
+        if (off + 8 <= c.limit()) return c.getLong(off);
+        return bytesAt(pos, 8);
+    }
+
+    public byte readByte() {
+        if (!buf.hasRemaining()) nextChunk();
+        return buf.get();
+    }
+
+    public void readBytes(byte[] dst, int off, int len) {
+        while (len > 0) {
+            if (!buf.hasRemaining()) nextChunk();
+            int n = Math.min(len, buf.remaining());
+            buf.get(dst, off, n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    public int readInt() {
+        if (buf.remaining() >= 4) return buf.getInt();
+        return (readByte() & 0xFF) << 24 | (readByte() & 0xFF) << 16 | (readByte() & 0xFF) << 8 | (readByte() & 0xFF);
+    }
+
+    public long readLong() {
+        if (buf.remaining() >= 8) return buf.getLong();
+        return (long) readInt() << 32 | (readInt() & 0xFFFFFFFFL);
+    }
+
+    public int readVInt() {
+        byte b = readByte();
+        if (b >= 0) return b;
+        int v = b & 0x7F;
+        for (int shift = 7; ; shift += 7) {
+            b = readByte();
+            v |= (b & 0x7F) << shift;
+            if (b >= 0) return v;
+        }
+    }
+
+    public long readVLong() {
+        byte b = readByte();
+        if (b >= 0) return b;
+        long v = b & 0x7FL;
+        for (int shift = 7; ; shift += 7) {
+            b = readByte();
+            v |= (b & 0x7FL) << shift;
+            if (b >= 0) return v;
+        }
+    }
+
+    private void nextChunk() {
+        if (chunk + 1 == chunks.length) throw new BufferUnderflowException();
+        buf = chunks[++chunk];
+        buf.position(0);
+    }
+
+    private long bytesAt(long pos, int n) {
+        long v = 0;
+        for (int i = 0; i < n; i++, pos++) v = v << 8 | (chunks[(int) (pos >>> chunkBits)].get((int) (pos & chunkMask)) & 0xFF);
+        return v;
+    }
+}
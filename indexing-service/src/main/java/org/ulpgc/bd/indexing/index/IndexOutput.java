@@ -0,0 +1,66 @@
+package org.ulpgc.bd.indexing.index;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class IndexOutput implements Closeable {
+    private final OutputStream out;
+    private long position;
+
+    public IndexOutput(Path file) throws IOException {
+        this.out = new BufferedOutputStream(Files.newOutputStream(file,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE), 1 << 16);
+    }
+
+    public long position() {
+        return position;
+    }
+
+    public void writeByte(int b) throws IOException {
+        out.write(b);
+        position++;
+    }
+
+    public void writeBytes(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        position += len;
+    }
+
+    public void writeInt(int v) throws IOException {
+        writeByte(v >>> 24);
+        writeByte(v >>> 16);
+        writeByte(v >>> 8);
+        writeByte(v);
+    }
+
+    public void writeLong(long v) throws IOException {
+        writeInt((int) (v >>> 32));
+        writeInt((int) v);
+    }
+
+    public void writeVInt(int v) throws IOException {
+        while ((v & ~0x7F) != 0) {
+            writeByte((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        writeByte(v);
+    }
+
+    public void writeVLong(long v) throws IOException {
+        while ((v & ~0x7FL) != 0) {
+            writeByte((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        writeByte((int) v);
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
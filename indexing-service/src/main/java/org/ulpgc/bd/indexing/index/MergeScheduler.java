@@ -0,0 +1,87 @@
+package org.ulpgc.bd.indexing.index;
+
+import org.ulpgc.bd.indexing.collections.IntIntMap;
+import org.ulpgc.bd.indexing.model.SegmentInfo;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs merges picked by the {@link TieredMergePolicy} on a single background thread so that the
+ * update path only ever appends small segments.
+ */
+public class MergeScheduler {
+    private final SegmentIndex index;
+    private final TieredMergePolicy policy;
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "segment-merger");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public MergeScheduler(SegmentIndex index, TieredMergePolicy policy) {
+        this.index = index;
+        this.policy = policy;
+    }
+
+    public void maybeMerge() {
+        if (scheduled.compareAndSet(false, true)) executor.execute(this::run);
+    }
+
+    private void run() {
+        boolean ok = true;
+        try {
+            List<SegmentInfo> snapshot = index.segments();
+            List<SegmentInfo> pick = policy.findMerge(snapshot);
+            while (pick != null) {
+                merge(snapshot, pick);
+                snapshot = index.segments();
+                pick = policy.findMerge(snapshot);
+            }
+        } catch (Exception e) {
+            ok = false;
+            System.err.println("MergeScheduler: merge failed - " + e.getMessage());
+        } finally {
+            scheduled.set(false);
+        }
+        if (ok && policy.findMerge(index.segments()) != null) maybeMerge();
+    }
+
+    private void merge(List<SegmentInfo> snapshot, List<SegmentInfo> pick) throws IOException {
+        Set<String> picked = new HashSet<>();
+        for (SegmentInfo s : pick) picked.add(s.name);
+        int oldest = snapshot.size();
+        for (int i = 0; i < snapshot.size(); i++) {
+            if (picked.contains(snapshot.get(i).name)) { oldest = i; break; }
+        }
+
+        List<SegmentReader> inputs = new ArrayList<>();
+        List<boolean[]> live = new ArrayList<>();
+        IntIntMap newer = new IntIntMap(1024);
+        for (int i = snapshot.size() - 1; i >= oldest; i--) {
+            SegmentReader r = SegmentReader.open(index.dir(), snapshot.get(i).name);
+            if (picked.contains(r.name())) {
+                boolean[] l = new boolean[r.docCount()];
+                for (int ord = 0; ord < l.length; ord++) l[ord] = !newer.containsKey(r.docId(ord));
+                inputs.add(0, r);
+                live.add(0, l);
+            }
+            for (int ord = 0; ord < r.docCount(); ord++) newer.put(r.docId(ord), 1);
+        }
+
+        boolean positional = index.positions();
+        for (SegmentReader r : inputs) positional &= r.hasPositions();
+        SegmentWriter w = index.newWriter(positional);
+        try {
+            SegmentInfo merged = SegmentMerger.merge(inputs, live.toArray(new boolean[0][]), w);
+            index.commitMerge(pick, merged);
+        } catch (IOException | RuntimeException e) {
+            index.discard(w);
+            throw e;
+        }
+    }
+}
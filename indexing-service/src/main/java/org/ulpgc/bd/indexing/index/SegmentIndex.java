@@ -0,0 +1,170 @@
+package org.ulpgc.bd.indexing.index;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.ulpgc.bd.indexing.model.IndexManifest;
+import org.ulpgc.bd.indexing.model.SegmentInfo;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Owns the segment directory and its manifest. Segments are immutable once committed; a doc that
+ * appears in several segments is resolved to the newest one, so re-indexing a book is an append.
+ */
+public class SegmentIndex {
+    public static final String MANIFEST = "segments.json";
+    private static final Gson G = new GsonBuilder().disableHtmlEscaping().setPrettyPrinting().create();
+
+    private final Path dir;
+    private final boolean positions;
+    private final Set<String> pending = new HashSet<>();
+    private IndexManifest manifest;
+
+    public SegmentIndex(Path dir) throws IOException {
+        this(dir, false);
+    }
+
+    public SegmentIndex(Path dir, boolean positions) throws IOException {
+        this.dir = dir;
+        this.positions = positions;
+        Files.createDirectories(dir);
+        this.manifest = load(dir);
+        deleteUnreferenced();
+    }
+
+    public Path dir() {
+        return dir;
+    }
+
+    public boolean positions() {
+        return positions;
+    }
+
+    public SegmentWriter newWriter() throws IOException {
+        return newWriter(positions);
+    }
+
+    public synchronized SegmentWriter newWriter(boolean positions) throws IOException {
+        String name = String.format("seg_%06d", manifest.next_segment++);
+        pending.add(name);
+        return new SegmentWriter(dir, name, positions);
+    }
+
+    public synchronized void discard(SegmentWriter writer) {
+        writer.abort();
+        pending.remove(writer.name());
+    }
+
+    public synchronized List<SegmentInfo> segments() {
+        return List.copyOf(manifest.segments);
+    }
+
+    public synchronized long generation() {
+        return manifest.generation;
+    }
+
+    public synchronized void commit(SegmentInfo added) throws IOException {
+        pending.remove(added.name);
+        manifest.segments.add(added);
+        manifest.generation++;
+        save();
+    }
+
+    public synchronized boolean commitMerge(List<SegmentInfo> inputs, SegmentInfo merged) throws IOException {
+        pending.remove(merged.name);
+        Set<String> names = new HashSet<>();
+        for (SegmentInfo s : inputs) names.add(s.name);
+        int newest = -1;
+        int found = 0;
+        for (int i = 0; i < manifest.segments.size(); i++) {
+            if (names.contains(manifest.segments.get(i).name)) {
+                newest = i;
+                found++;
+            }
+        }
+        if (found != names.size()) {
+            deleteFiles(merged.name);
+            return false;
+        }
+        List<SegmentInfo> next = new ArrayList<>();
+        for (int i = 0; i < manifest.segments.size(); i++) {
+            SegmentInfo s = manifest.segments.get(i);
+            if (i == newest) {
+                if (merged.docs > 0) next.add(merged);
+            } else if (!names.contains(s.name)) {
+                next.add(s);
+            }
+        }
+        manifest.segments = next;
+        manifest.generation++;
+        save();
+        for (String name : names) deleteFiles(name);
+        if (merged.docs == 0) deleteFiles(merged.name);
+        return true;
+    }
+
+    /** Swaps every committed segment for {@code only}; callers keep other commits out until it returns. */
+    public synchronized void replaceAll(SegmentInfo only) throws IOException {
+        List<SegmentInfo> old = new ArrayList<>(manifest.segments);
+        manifest.segments.clear();
+        if (only != null) {
+            pending.remove(only.name);
+            manifest.segments.add(only);
+        }
+        manifest.generation++;
+        save();
+        for (SegmentInfo s : old) deleteFiles(s.name);
+        deleteUnreferenced();
+    }
+
+    private void save() throws IOException {
+        manifest.format_version = SegmentFormat.VERSION;
+        Path target = dir.resolve(MANIFEST);
+        Path tmp = dir.resolve(MANIFEST + ".tmp");
+        Files.writeString(tmp, G.toJson(manifest), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void deleteUnreferenced() {
+        Set<String> live = new HashSet<>();
+        for (SegmentInfo s : manifest.segments) live.add(s.name);
+        live.addAll(pending);
+        try (var stream = Files.list(dir)) {
+            for (Path p : (Iterable<Path>) stream::iterator) {
+                String fn = p.getFileName().toString();
+                if (fn.startsWith(MANIFEST)) continue;
+                int dot = fn.indexOf('.');
+                String base = dot > 0 ? fn.substring(0, dot) : fn;
+                if (!live.contains(base)) {
+                    try { Files.deleteIfExists(p); } catch (IOException ignored) {}
+                }
+            }
+        } catch (IOException ignored) {}
+    }
+
+    private void deleteFiles(String name) {
+        for (String ext : SegmentFormat.EXTENSIONS) {
+            try { Files.deleteIfExists(dir.resolve(name + ext)); } catch (IOException ignored) {}
+        }
+    }
+
+    private static IndexManifest load(Path dir) throws IOException {
+        Path p = dir.resolve(MANIFEST);
+        if (!Files.exists(p)) return new IndexManifest();
+        IndexManifest m = G.fromJson(Files.readString(p, StandardCharsets.UTF_8), IndexManifest.class);
+        if (m == null) return new IndexManifest();
+        if (m.format_version != SegmentFormat.VERSION) {
+            System.err.println("SegmentIndex: index format " + m.format_version + " is not supported, run /index/rebuild");
+            IndexManifest fresh = new IndexManifest();
+            fresh.generation = m.generation;
+            fresh.next_segment = m.next_segment;
+            return fresh;
+        }
+        if (m.segments == null) m.segments = new ArrayList<>();
+        return m;
+    }
+}
@@ -0,0 +1,124 @@
+package org.ulpgc.bd.indexing.index;
+
+import org.ulpgc.bd.indexing.model.SegmentInfo;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * K-way merges segments into one. A doc is copied only from the input that holds its live version;
+ * {@code live[i][ord]} tells whether doc {@code ord} of input {@code i} survives. Positions are
+ * carried over when the output is positional, which callers only ask for if every input is; doc
+ * metadata always is.
+ */
+public class SegmentMerger {
+
+    public static SegmentInfo merge(List<SegmentReader> inputs, boolean[][] live, SegmentWriter out) throws IOException {
+        // (doc id, source) pairs sorted by doc id; source is the index into from/fromOrd
+        long[] docs = new long[0];
+        int[] from = new int[0];
+        int[] fromOrd = new int[0];
+        int n = 0;
+        for (int i = 0; i < inputs.size(); i++) {
+            SegmentReader r = inputs.get(i);
+            for (int ord = 0; ord < r.docCount(); ord++) {
+                if (!live[i][ord]) continue;
+                if (n == docs.length) {
+                    docs = Arrays.copyOf(docs, Math.max(16, n * 2));
+                    from = Arrays.copyOf(from, docs.length);
+                    fromOrd = Arrays.copyOf(fromOrd, docs.length);
+                }
+                from[n] = i;
+                fromOrd[n] = ord;
+                docs[n] = ((long) r.docId(ord) << 32) | n;
+                n++;
+            }
+        }
+        Arrays.sort(docs, 0, n);
+        for (int i = 0; i < n; i++) {
+            int src = (int) docs[i];
+            SegmentReader r = inputs.get(from[src]);
+            out.addDoc((int) (docs[i] >>> 32), r.docLength(fromOrd[src]), r.meta(fromOrd[src]));
+        }
+
+        PriorityQueue<Cursor> pq = new PriorityQueue<>((a, b) -> {
+            int c = a.terms.term().compareTo(b.terms.term());
+            return c != 0 ? c : Integer.compare(a.index, b.index);
+        });
+        for (int i = 0; i < inputs.size(); i++) {
+            Cursor c = new Cursor(i, inputs.get(i), live[i]);
+            if (c.terms.next()) pq.add(c);
+        }
+
+        List<Cursor> same = new ArrayList<>();
+        SegmentReader.PostingsEnum[] pes = new SegmentReader.PostingsEnum[inputs.size()];
+        Cursor[] owners = new Cursor[inputs.size()];
+        int[] positions = new int[64];
+        while (!pq.isEmpty()) {
+            same.clear();
+            Cursor top = pq.poll();
+            String term = top.terms.term();
+            same.add(top);
+            while (!pq.isEmpty() && pq.peek().terms.term().equals(term)) same.add(pq.poll());
+
+            int open = 0;
+            for (Cursor c : same) {
+                SegmentReader.PostingsEnum pe = c.reader.postings(c.terms);
+                if (nextLive(pe, c) == SegmentReader.NO_MORE_DOCS) continue;
+                owners[open] = c;
+                pes[open++] = pe;
+            }
+            if (open > 0) out.startTerm(term);
+            while (open > 0) {
+                int min = 0;
+                for (int i = 1; i < open; i++) if (pes[i].doc() < pes[min].doc()) min = i;
+                SegmentReader.PostingsEnum pe = pes[min];
+                if (out.hasPositions()) {
+                    positions = pe.positions(positions);
+                    out.addPosting(pe.doc(), pe.tf(), positions, 0);
+                } else {
+                    out.addPosting(pe.doc(), pe.tf());
+                }
+                if (nextLive(pe, owners[min]) == SegmentReader.NO_MORE_DOCS) {
+                    pes[min] = pes[--open];
+                    owners[min] = owners[open];
+                }
+            }
+            for (Cursor c : same) if (c.terms.next()) pq.add(c);
+        }
+        return out.finish();
+    }
+
+    private static int nextLive(SegmentReader.PostingsEnum pe, Cursor c) {
+        int doc = pe.nextDoc();
+        while (doc != SegmentReader.NO_MORE_DOCS && !c.isLive(doc)) doc = pe.nextDoc();
+        return doc;
+    }
+
+    private static class Cursor {
+        final int index;
+        final SegmentReader reader;
+        final SegmentReader.TermsEnum terms;
+        final boolean[] live;
+        final boolean allLive;
+
+        Cursor(int index, SegmentReader reader, boolean[] live) {
+            this.index = index;
+            this.reader = reader;
+            this.terms = reader.terms();
+            this.live = live;
+            boolean all = true;
+            for (boolean b : live) if (!b) { all = false; break; }
+            this.allLive = all;
+        }
+
+        boolean isLive(int doc) {
+            if (allLive) return true;
+            int ord = reader.docOrd(doc);
+            return ord >= 0 && live[ord];
+        }
+    }
+}
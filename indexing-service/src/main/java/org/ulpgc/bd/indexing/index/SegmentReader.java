@@ -0,0 +1,232 @@
+package org.ulpgc.bd.indexing.index;
+
+import org.ulpgc.bd.indexing.model.DocMeta;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Read-only, memory-mapped view of one segment.
+ */
+public class SegmentReader {
+    public static final int NO_MORE_DOCS = Integer.MAX_VALUE;
+
+    private final String name;
+    private final IndexInput terms;
+    private final IndexInput postings;
+    private final IndexInput positions;
+    private final int[] docIds;
+    private final int[] docLengths;
+    private final long totalTokens;
+    private final int termCount;
+    private final DocFields fields;
+
+    private SegmentReader(String name, IndexInput terms, IndexInput postings, IndexInput positions, int[] docIds,
+                          int[] docLengths, long totalTokens, int termCount, DocFields fields) {
+        this.name = name;
+        this.terms = terms;
+        this.postings = postings;
+        this.positions = positions;
+        this.docIds = docIds;
+        this.docLengths = docLengths;
+        this.totalTokens = totalTokens;
+        this.termCount = termCount;
+        this.fields = fields;
+    }
+
+    public static SegmentReader open(Path dir, String name) throws IOException {
+        IndexInput docs = map(dir.resolve(name + SegmentFormat.DOCS_EXT), SegmentFormat.MAGIC_DOCS);
+        IndexInput terms = map(dir.resolve(name + SegmentFormat.TERMS_EXT), SegmentFormat.MAGIC_TERMS);
+        IndexInput postings = map(dir.resolve(name + SegmentFormat.POSTINGS_EXT), SegmentFormat.MAGIC_POSTINGS);
+
+        docs.seek(docs.length() - 12);
+        int docCount = docs.readInt();
+        long totalTokens = docs.readLong();
+        int[] ids = new int[docCount];
+        int[] lengths = new int[docCount];
+        docs.seek(8);
+        int doc = 0;
+        for (int i = 0; i < docCount; i++) {
+            doc += docs.readVInt();
+            ids[i] = doc;
+            lengths[i] = docs.readVInt();
+        }
+
+        terms.seek(12);
+        boolean positional = (terms.readInt() & SegmentFormat.FLAG_POSITIONS) != 0;
+        IndexInput positions = positional ? map(dir.resolve(name + SegmentFormat.POSITIONS_EXT), SegmentFormat.MAGIC_POSITIONS) : null;
+        terms.seek(terms.length() - 16);
+        int termCount = terms.readInt();
+        DocFields fields = DocFields.open(dir.resolve(name + SegmentFormat.FIELDS_EXT), docCount);
+        return new SegmentReader(name, terms, postings, positions, ids, lengths, totalTokens, termCount, fields);
+    }
+
+    private static IndexInput map(Path file, int magic) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            IndexInput in = IndexInput.map(ch);
+            if (in.readInt() != magic) throw new IOException("corrupt segment file " + file);
+            int version = in.readInt();
+            if (version != SegmentFormat.VERSION) throw new IOException("unsupported segment version " + version + " in " + file);
+            return in;
+        }
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public int docCount() {
+        return docIds.length;
+    }
+
+    public long totalTokens() {
+        return totalTokens;
+    }
+
+    public int termCount() {
+        return termCount;
+    }
+
+    public boolean hasPositions() {
+        return positions != null;
+    }
+
+    public int docId(int ord) {
+        return docIds[ord];
+    }
+
+    public int docLength(int ord) {
+        return docLengths[ord];
+    }
+
+    /** Stored metadata of doc {@code ord}, or null if the segment was written without a fields file. */
+    public DocMeta meta(int ord) {
+        return fields == null ? null : fields.get(ord, docIds[ord]);
+    }
+
+    public int docOrd(int docId) {
+        int i = Arrays.binarySearch(docIds, docId);
+        return i >= 0 ? i : -1;
+    }
+
+    public boolean containsDoc(int docId) {
+        return docOrd(docId) >= 0;
+    }
+
+    public TermsEnum terms() {
+        return new TermsEnum();
+    }
+
+    public PostingsEnum postings(TermsEnum te) {
+        return new PostingsEnum(te.postingsOffset, te.positionsOffset, te.df);
+    }
+
+    public class TermsEnum {
+        private final IndexInput in = terms.copy();
+        private int ord = -1;
+        private byte[] bytes = new byte[32];
+        private int length;
+        private String term;
+        private int df;
+        private long postingsOffset;
+        private long positionsOffset;
+
+        private TermsEnum() {
+            in.seek(16);
+        }
+
+        public boolean next() {
+            if (ord + 1 >= termCount) {
+                ord = termCount;
+                term = null;
+                return false;
+            }
+            ord++;
+            if (ord % SegmentFormat.TERMS_PER_BLOCK == 0) {
+                length = in.readVInt();
+                ensure(length);
+                in.readBytes(bytes, 0, length);
+                df = in.readVInt();
+                postingsOffset = in.readVLong();
+                if (positions != null) positionsOffset = in.readVLong();
+            } else {
+                int shared = in.readVInt();
+                int suffix = in.readVInt();
+                length = shared + suffix;
+                ensure(length);
+                in.readBytes(bytes, shared, suffix);
+                df = in.readVInt();
+                postingsOffset += in.readVLong();
+                if (positions != null) positionsOffset += in.readVLong();
+            }
+            in.readVLong();
+            term = new String(bytes, 0, length, StandardCharsets.UTF_8);
+            return true;
+        }
+
+        private void ensure(int n) {
+            if (bytes.length < n) bytes = Arrays.copyOf(bytes, Math.max(n, bytes.length * 2));
+        }
+
+        public String term() {
+            return term;
+        }
+
+        public int df() {
+            return df;
+        }
+    }
+
+    public class PostingsEnum {
+        private final IndexInput in = postings.copy();
+        private final IndexInput pos = positions != null ? positions.copy() : null;
+        private final int df;
+        private int read;
+        private int doc;
+        private int tf;
+        private long positionsPointer;
+        private int positionsLength;
+
+        private PostingsEnum(long offset, long positionsOffset, int df) {
+            this.df = df;
+            in.seek(offset);
+            this.positionsPointer = positionsOffset;
+        }
+
+        public int nextDoc() {
+            if (read >= df) return doc = NO_MORE_DOCS;
+            doc += in.readVInt();
+            tf = in.readVInt();
+            if (pos != null) {
+                positionsPointer += positionsLength;
+                positionsLength = in.readVInt();
+            }
+            read++;
+            return doc;
+        }
+
+        /** Decodes the current doc's positions into {@code buf}, growing it if needed. */
+        public int[] positions(int[] buf) {
+            if (buf.length < tf) buf = new int[Math.max(tf, buf.length * 2)];
+            pos.seek(positionsPointer);
+            int p = 0;
+            for (int i = 0; i < tf; i++) {
+                p += pos.readVInt();
+                buf[i] = p;
+            }
+            return buf;
+        }
+
+        public int doc() {
+            return doc;
+        }
+
+        public int tf() {
+            return tf;
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package org.ulpgc.bd.indexing.index;
+
+import org.ulpgc.bd.indexing.model.DocMeta;
+import org.ulpgc.bd.indexing.model.SegmentInfo;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Streams one immutable segment to disk. Docs must be added in ascending id order, then terms in
+ * ascending {@link String#compareTo} order, each followed by its postings in ascending doc order.
+ * A positional segment also writes every posting's token positions to a {@code .positions} file.
+ * Doc metadata is buffered and written as columns to {@code .fields} by {@link #finish}.
+ */
+public class SegmentWriter implements Closeable {
+    private final Path dir;
+    private final String name;
+    private final IndexOutput docsOut;
+    private final IndexOutput termsOut;
+    private final IndexOutput postingsOut;
+    private final IndexOutput positionsOut;
+    private final List<Long> blockOffsets = new ArrayList<>();
+    private final List<DocMeta> docMetas = new ArrayList<>();
+
+    private int docCount;
+    private long totalTokens;
+    private int lastDocAdded = -1;
+
+    private int termCount;
+    private long postingsCount;
+    private String currentTerm;
+    private String lastTerm;
+    private byte[] previousTermBytes = new byte[0];
+    private long previousPostingsOffset;
+    private long previousPositionsOffset;
+    private long termPostingsOffset;
+    private long termPositionsOffset;
+    private int termDf;
+    private int lastDocInTerm;
+    private int[] skipDocs = new int[8];
+    private long[] skipPostings = new long[8];
+    private long[] skipPositions = new long[8];
+    private int skipCount;
+    private boolean finished;
+
+    public SegmentWriter(Path dir, String name) throws IOException {
+        this(dir, name, false);
+    }
+
+    public SegmentWriter(Path dir, String name, boolean positions) throws IOException {
+        this.dir = dir;
+        this.name = name;
+        Files.createDirectories(dir);
+        this.docsOut = new IndexOutput(dir.resolve(name + SegmentFormat.DOCS_EXT));
+        this.termsOut = new IndexOutput(dir.resolve(name + SegmentFormat.TERMS_EXT));
+        this.postingsOut = new IndexOutput(dir.resolve(name + SegmentFormat.POSTINGS_EXT));
+        this.positionsOut = positions ? new IndexOutput(dir.resolve(name + SegmentFormat.POSITIONS_EXT)) : null;
+        docsOut.writeInt(SegmentFormat.MAGIC_DOCS);
+        docsOut.writeInt(SegmentFormat.VERSION);
+        termsOut.writeInt(SegmentFormat.MAGIC_TERMS);
+        termsOut.writeInt(SegmentFormat.VERSION);
+        termsOut.writeInt(SegmentFormat.TERMS_PER_BLOCK);
+        termsOut.writeInt(positions ? SegmentFormat.FLAG_POSITIONS : 0);
+        postingsOut.writeInt(SegmentFormat.MAGIC_POSTINGS);
+        postingsOut.writeInt(SegmentFormat.VERSION);
+        if (positionsOut != null) {
+            positionsOut.writeInt(SegmentFormat.MAGIC_POSITIONS);
+            positionsOut.writeInt(SegmentFormat.VERSION);
+        }
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public boolean hasPositions() {
+        return positionsOut != null;
+    }
+
+    public void addDoc(int docId, int length) throws IOException {
+        addDoc(docId, length, null);
+    }
+
+    public void addDoc(int docId, int length, DocMeta meta) throws IOException {
+        if (docId <= lastDocAdded) throw new IllegalArgumentException("docs out of order: " + docId + " after " + lastDocAdded);
+        docsOut.writeVInt(docId - Math.max(lastDocAdded, 0));
+        docsOut.writeVInt(length);
+        lastDocAdded = docId;
+        docMetas.add(meta);
+        docCount++;
+        totalTokens += length;
+    }
+
+    public void startTerm(String term) throws IOException {
+        if (currentTerm != null) finishTerm();
+        if (termCount > 0 && term.compareTo(lastTerm) <= 0) throw new IllegalArgumentException("terms out of order: " + term + " after " + lastTerm);
+        currentTerm = term;
+        termPostingsOffset = postingsOut.position();
+        termPositionsOffset = positionsOut != null ? positionsOut.position() : 0L;
+        termDf = 0;
+        lastDocInTerm = 0;
+        skipCount = 0;
+    }
+
+    public void addPosting(int docId, int tf) throws IOException {
+        if (positionsOut != null) throw new IllegalStateException("positional segment needs positions for " + currentTerm);
+        checkOrder(docId);
+        postingsOut.writeVInt(docId - lastDocInTerm);
+        postingsOut.writeVInt(tf);
+        afterPosting(docId);
+    }
+
+    /** Adds a posting whose {@code tf} ascending positions are {@code positions[off..off+tf)}. */
+    public void addPosting(int docId, int tf, int[] positions, int off) throws IOException {
+        if (positionsOut == null) {
+            addPosting(docId, tf);
+            return;
+        }
+        checkOrder(docId);
+        long start = positionsOut.position();
+        int last = 0;
+        for (int i = 0; i < tf; i++) {
+            positionsOut.writeVInt(positions[off + i] - last);
+            last = positions[off + i];
+        }
+        postingsOut.writeVInt(docId - lastDocInTerm);
+        postingsOut.writeVInt(tf);
+        postingsOut.writeVInt((int) (positionsOut.position() - start));
+        afterPosting(docId);
+    }
+
+    private void checkOrder(int docId) {
+        if (termDf > 0 && docId <= lastDocInTerm) throw new IllegalArgumentException("postings out of order for " + currentTerm);
+    }
+
+    private void afterPosting(int docId) {
+        lastDocInTerm = docId;
+        termDf++;
+        postingsCount++;
+        if (termDf % SegmentFormat.SKIP_INTERVAL == 0) {
+            if (skipCount == skipDocs.length) {
+                skipDocs = Arrays.copyOf(skipDocs, skipCount * 2);
+                skipPostings = Arrays.copyOf(skipPostings, skipCount * 2);
+                skipPositions = Arrays.copyOf(skipPositions, skipCount * 2);
+            }
+            skipDocs[skipCount] = docId;
+            skipPostings[skipCount] = postingsOut.position();
+            skipPositions[skipCount] = positionsOut != null ? positionsOut.position() : 0L;
+            skipCount++;
+        }
+    }
+
+    private void finishTerm() throws IOException {
+        if (skipCount > 0 && skipCount * SegmentFormat.SKIP_INTERVAL == termDf) skipCount--;
+        long skipLength = 0L;
+        if (skipCount > 0) {
+            skipLength = postingsOut.position() - termPostingsOffset;
+            int lastDoc = 0;
+            long lastPostings = termPostingsOffset;
+            long lastPositions = termPositionsOffset;
+            for (int i = 0; i < skipCount; i++) {
+                postingsOut.writeVInt(skipDocs[i] - lastDoc);
+                postingsOut.writeVLong(skipPostings[i] - lastPostings);
+                if (positionsOut != null) postingsOut.writeVLong(skipPositions[i] - lastPositions);
+                lastDoc = skipDocs[i];
+                lastPostings = skipPostings[i];
+                lastPositions = skipPositions[i];
+            }
+        }
+
+        byte[] bytes = currentTerm.getBytes(StandardCharsets.UTF_8);
+        if (termCount % SegmentFormat.TERMS_PER_BLOCK == 0) {
+            blockOffsets.add(termsOut.position());
+            termsOut.writeVInt(bytes.length);
+            termsOut.writeBytes(bytes, 0, bytes.length);
+            termsOut.writeVInt(termDf);
+            termsOut.writeVLong(termPostingsOffset);
+            if (positionsOut != null) termsOut.writeVLong(termPositionsOffset);
+        } else {
+            int shared = sharedPrefix(previousTermBytes, bytes);
+            termsOut.writeVInt(shared);
+            termsOut.writeVInt(bytes.length - shared);
+            termsOut.writeBytes(bytes, shared, bytes.length - shared);
+            termsOut.writeVInt(termDf);
+            termsOut.writeVLong(termPostingsOffset - previousPostingsOffset);
+            if (positionsOut != null) termsOut.writeVLong(termPositionsOffset - previousPositionsOffset);
+        }
+        termsOut.writeVLong(skipLength);
+        previousTermBytes = bytes;
+        previousPostingsOffset = termPostingsOffset;
+        previousPositionsOffset = termPositionsOffset;
+        lastTerm = currentTerm;
+        currentTerm = null;
+        termCount++;
+    }
+
+    public SegmentInfo finish() throws IOException {
+        if (currentTerm != null) finishTerm();
+        long blockIndexOffset = termsOut.position();
+        for (long off : blockOffsets) termsOut.writeLong(off);
+        termsOut.writeInt(termCount);
+        termsOut.writeInt(blockOffsets.size());
+        termsOut.writeLong(blockIndexOffset);
+        docsOut.writeInt(docCount);
+        docsOut.writeLong(totalTokens);
+        close();
+        finished = true;
+        DocFields.write(dir.resolve(name + SegmentFormat.FIELDS_EXT), docMetas);
+
+        SegmentInfo info = new SegmentInfo();
+        info.name = name;
+        info.docs = docCount;
+        info.tokens = totalTokens;
+        info.terms = termCount;
+        info.postings = postingsCount;
+        long bytes = 0L;
+        for (String ext : SegmentFormat.EXTENSIONS) {
+            Path f = dir.resolve(name + ext);
+            if (Files.exists(f)) bytes += Files.size(f);
+        }
+        info.size_bytes = bytes;
+        return info;
+    }
+
+    public void abort() {
+        try { close(); } catch (IOException ignored) {}
+        for (String ext : SegmentFormat.EXTENSIONS) {
+            try { Files.deleteIfExists(dir.resolve(name + ext)); } catch (IOException ignored) {}
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (finished) return;
+        IOException first = null;
+        for (IndexOutput o : new IndexOutput[]{docsOut, termsOut, postingsOut, positionsOut}) {
+            if (o == null) continue;
+            try { o.close(); } catch (IOException e) { if (first == null) first = e; }
+        }
+        if (first != null) throw first;
+    }
+
+    private static int sharedPrefix(byte[] a, byte[] b) {
+        int n = Math.min(a.length, b.length);
+        int i = 0;
+        while (i < n && a[i] == b[i]) i++;
+        return i;
+    }
+}
@@ -0,0 +1,52 @@
+package org.ulpgc.bd.indexing.index;
+
+import org.ulpgc.bd.indexing.model.SegmentInfo;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Groups segments into size tiers that grow by {@code mergeFactor} and merges a tier once it holds
+ * {@code mergeFactor} segments, so every posting is rewritten about log(N) times overall.
+ */
+public class TieredMergePolicy {
+    private final int mergeFactor;
+    private final long floorBytes;
+
+    public TieredMergePolicy() {
+        this(10, 64 * 1024L);
+    }
+
+    public TieredMergePolicy(int mergeFactor, long floorBytes) {
+        if (mergeFactor < 2) throw new IllegalArgumentException("mergeFactor must be >= 2");
+        this.mergeFactor = mergeFactor;
+        this.floorBytes = Math.max(1L, floorBytes);
+    }
+
+    public List<SegmentInfo> findMerge(List<SegmentInfo> segments) {
+        List<List<SegmentInfo>> tiers = new ArrayList<>();
+        for (SegmentInfo s : segments) {
+            int tier = tierOf(s.size_bytes);
+            while (tiers.size() <= tier) tiers.add(new ArrayList<>());
+            tiers.get(tier).add(s);
+        }
+        for (List<SegmentInfo> tier : tiers) {
+            if (tier.size() < mergeFactor) continue;
+            List<SegmentInfo> pick = new ArrayList<>(tier);
+            pick.sort(Comparator.comparingLong(s -> s.size_bytes));
+            return List.copyOf(pick.subList(0, mergeFactor));
+        }
+        return null;
+    }
+
+    private int tierOf(long bytes) {
+        long size = Math.max(bytes, floorBytes) / floorBytes;
+        int tier = 0;
+        while (size >= mergeFactor) {
+            size /= mergeFactor;
+            tier++;
+        }
+        return tier;
+    }
+}
@@ -5,4 +5,5 @@ public class DocMeta {
     public String title;
     public String author;
     public String language;
+    public int year;
 }
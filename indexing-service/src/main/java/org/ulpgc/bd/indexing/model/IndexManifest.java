@@ -0,0 +1,11 @@
+package org.ulpgc.bd.indexing.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class IndexManifest {
+    public int format_version;
+    public long generation;
+    public int next_segment;
+    public List<SegmentInfo> segments = new ArrayList<>();
+}
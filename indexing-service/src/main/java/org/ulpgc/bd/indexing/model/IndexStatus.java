@@ -5,4 +5,18 @@ public class IndexStatus {
     public String last_update;
     public double index_size_MB;
     public String indexer_version;
+    public Long docs_bytes;
+    public long inverted_bytes;
+    public int segments;
+    public long generation;
+    /** Docs across all segments, counting older copies not yet merged away. */
+    public long segment_docs;
+    public long tokens;
+    public long postings;
+    /** Term lists across all segments; a term in several segments counts once per segment. */
+    public long segment_terms;
+    public double avg_postings_per_term;
+    /** Distinct terms, as of manifest {@code vocabulary_generation}; -1 until first counted. */
+    public long vocabulary_size;
+    public Long vocabulary_generation;
 }
@@ -0,0 +1,10 @@
+package org.ulpgc.bd.indexing.model;
+
+public class SegmentInfo {
+    public String name;
+    public int docs;
+    public long tokens;
+    public int terms;
+    public long postings;
+    public long size_bytes;
+}
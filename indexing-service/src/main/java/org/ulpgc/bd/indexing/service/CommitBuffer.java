@@ -0,0 +1,255 @@
+package org.ulpgc.bd.indexing.service;
+
+import org.ulpgc.bd.indexing.index.ExternalSortIndexBuilder;
+import org.ulpgc.bd.indexing.index.SegmentIndex;
+import org.ulpgc.bd.indexing.index.SegmentWriter;
+import org.ulpgc.bd.indexing.model.DocMeta;
+import org.ulpgc.bd.indexing.model.SegmentInfo;
+import org.ulpgc.bd.indexing.util.TermCounter;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Collects tokenized books in an {@link ExternalSortIndexBuilder} and commits them together as one
+ * segment, once {@code maxBooks} are buffered or the oldest has waited {@code maxMillis}. Batches
+ * are flushed one at a time in the order they were started, so a later copy of a book always lands
+ * in a newer segment. After each commit {@code onCommit} gets the batch's docs, once.
+ */
+final class CommitBuffer {
+
+    interface OnCommit {
+        void committed(List<Pending> docs) throws IOException;
+    }
+
+    static final class Pending {
+        final DocMeta meta;
+        final DatalakeCatalog.Entry source;
+
+        Pending(DocMeta meta, DatalakeCatalog.Entry source) {
+            this.meta = meta;
+            this.source = source;
+        }
+    }
+
+    private static final class Batch {
+        final ExternalSortIndexBuilder builder;
+        final ExternalSortIndexBuilder.RunBuffer buffer;
+        final Map<Integer, Pending> docs = new LinkedHashMap<>();
+        final CompletableFuture<SegmentInfo> committed = new CompletableFuture<>();
+        final long startNanos = System.nanoTime();
+        /** Adds counted into {@code docs} but not yet copied into {@code buffer}; guarded by the CommitBuffer. */
+        int adding;
+
+        Batch(ExternalSortIndexBuilder builder) {
+            this.builder = builder;
+            this.buffer = builder.newBuffer();
+        }
+    }
+
+    private final SegmentIndex segments;
+    private final Path tmpRoot;
+    private final int maxBooks;
+    private final long maxNanos;
+    private final long memoryBytes;
+    private final OnCommit onCommit;
+    private final Object flushLock = new Object();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "index-committer");
+        t.setDaemon(true);
+        return t;
+    });
+    private Batch current;
+    private long nextBatch;
+    private long batchesCommitted;
+    private long booksCommitted;
+    private volatile int lastBatchBooks;
+    private volatile long lastBatchMillis;
+
+    CommitBuffer(SegmentIndex segments, Path tmpRoot, int maxBooks, long maxMillis, long memoryBytes, OnCommit onCommit) {
+        this.segments = segments;
+        this.tmpRoot = tmpRoot;
+        this.maxBooks = Math.max(1, maxBooks);
+        this.maxNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, maxMillis));
+        this.memoryBytes = memoryBytes;
+        this.onCommit = onCommit;
+        long tick = Math.max(10, maxMillis / 4);
+        timer.scheduleWithFixedDelay(this::flushIfDue, tick, tick, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Buffers one book; the future completes when its batch is committed. A book already waiting in
+     * the open batch first has that batch flushed, since a segment holds each doc once. The postings
+     * are copied in under the batch's own lock, so a spill to disk never holds up {@link #pending},
+     * {@link #stats} or the commit timer.
+     */
+    CompletableFuture<SegmentInfo> add(DocMeta meta, TermCounter tf, DatalakeCatalog.Entry source) throws IOException {
+        while (true) {
+            Batch target = null;
+            Batch duplicate = null;
+            boolean full = false;
+            synchronized (this) {
+                if (current != null && current.docs.containsKey(meta.book_id)) {
+                    duplicate = current;
+                } else {
+                    if (current == null) {
+                        current = new Batch(new ExternalSortIndexBuilder(tmpRoot.resolve("batch_" + nextBatch++), memoryBytes, 1, segments.positions()));
+                    }
+                    target = current;
+                    target.docs.put(meta.book_id, new Pending(meta, source));
+                    target.adding++;
+                    full = target.docs.size() >= maxBooks;
+                }
+            }
+            if (duplicate != null) {
+                flush(duplicate);
+                continue;
+            }
+            boolean added = false;
+            synchronized (target) {
+                try {
+                    target.buffer.add(meta, tf);
+                    added = true;
+                } finally {
+                    synchronized (this) {
+                        if (!added) target.docs.remove(meta.book_id);
+                        target.adding--;
+                        notifyAll();
+                    }
+                }
+            }
+            if (full) flush(target);
+            return target.committed;
+        }
+    }
+
+    /** Commit of the open batch if it already holds {@code bookId} from the same {@code source}, else null. */
+    synchronized CompletableFuture<SegmentInfo> pending(int bookId, DatalakeCatalog.Entry source) {
+        Pending p = current == null ? null : current.docs.get(bookId);
+        if (p == null || source == null || p.source == null || source.checksum_sha256 == null) return null;
+        boolean same = source.checksum_sha256.equals(p.source.checksum_sha256) && Objects.equals(source.parser_version, p.source.parser_version);
+        return same ? current.committed : null;
+    }
+
+    /** Commits whatever is buffered and returns once it is. */
+    void flush() throws IOException {
+        synchronized (flushLock) {
+            flushCurrent();
+        }
+    }
+
+    /**
+     * Commits whatever is buffered, then runs {@code work} with no batch committing until it returns;
+     * for a rebuild, which replaces every segment. Books added meanwhile wait in the open batch, or
+     * block once it is full, and land in a segment newer than the rebuilt one.
+     */
+    <T> T exclusive(Supplier<T> work) throws IOException {
+        synchronized (flushLock) {
+            flushCurrent();
+            return work.get();
+        }
+    }
+
+    private void flushCurrent() throws IOException {
+        Batch b;
+        synchronized (this) {
+            b = current;
+            current = null;
+        }
+        if (b != null) write(b);
+    }
+
+    /** Commits {@code target} unless another thread already has. */
+    private void flush(Batch target) throws IOException {
+        synchronized (flushLock) {
+            synchronized (this) {
+                if (current != target) return;
+                current = null;
+            }
+            write(target);
+        }
+    }
+
+    private void flushIfDue() {
+        Batch b;
+        synchronized (this) {
+            b = current;
+        }
+        if (b == null || System.nanoTime() - b.startNanos < maxNanos) return;
+        try {
+            flush(b);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("CommitBuffer: commit failed - " + e.getMessage());
+        }
+    }
+
+    private void write(Batch b) throws IOException {
+        // b is no longer current, so no new adds start; wait out the ones already under way
+        synchronized (this) {
+            while (b.adding > 0) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("interrupted waiting for a batch to fill");
+                }
+            }
+        }
+        SegmentInfo info;
+        SegmentWriter w = null;
+        try {
+            w = segments.newWriter();
+            info = b.builder.write(w);
+            segments.commit(info);
+        } catch (IOException | RuntimeException e) {
+            if (w != null) segments.discard(w);
+            b.committed.completeExceptionally(e);
+            throw e;
+        } finally {
+            b.builder.close();
+            removeTmpRoot();
+        }
+        synchronized (this) {
+            batchesCommitted++;
+            booksCommitted += b.docs.size();
+        }
+        lastBatchBooks = b.docs.size();
+        lastBatchMillis = (System.nanoTime() - b.startNanos) / 1_000_000L;
+        try {
+            onCommit.committed(new ArrayList<>(b.docs.values()));
+        } finally {
+            b.committed.complete(info);
+        }
+    }
+
+    /**
+     * Each batch's builder makes its own directory under {@code tmpRoot}, creating the root too, and
+     * deletes it on close; the root goes once no batch is using it. Locked against {@link #add},
+     * which starts the next batch.
+     */
+    private synchronized void removeTmpRoot() {
+        try {
+            Files.deleteIfExists(tmpRoot);
+        } catch (IOException ignored) {
+            // the open batch has its directory there
+        }
+    }
+
+    synchronized Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("buffered_books", current == null ? 0 : current.docs.size());
+        m.put("batches_committed", batchesCommitted);
+        m.put("books_committed", booksCommitted);
+        m.put("last_batch_books", lastBatchBooks);
+        m.put("last_batch_ms", lastBatchMillis);
+        return m;
+    }
+}
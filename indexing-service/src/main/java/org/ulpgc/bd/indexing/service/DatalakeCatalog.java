@@ -0,0 +1,159 @@
+package org.ulpgc.bd.indexing.service;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+
+/**
+ * Read-only view of the ingestion service's datalake catalog ({@code catalog.snapshot} plus the
+ * append-only {@code catalog.log}; see the ingestion side for how they are written). Each lookup
+ * stats both files: new log lines are read from where the last refresh stopped, and a replaced
+ * snapshot or log (a compaction) means everything is reloaded. A compaction writes new files, so
+ * it is told by their file keys, and the snapshot's size and mtime, rather than by the log getting
+ * shorter: a refresh between the two replacements already sees the new snapshot beside the old log.
+ */
+final class DatalakeCatalog {
+    static final String SNAPSHOT = "catalog.snapshot";
+    static final String LOG = "catalog.log";
+    private static final Gson GSON = new Gson();
+
+    private final Path datalake;
+    private final Map<Integer, Entry> entries = new HashMap<>();
+    private BasicFileAttributes snapshotSeen;
+    private Object logKey;
+    private long logOffset;
+    private boolean loaded;
+
+    DatalakeCatalog(Path datalake) {
+        this.datalake = datalake;
+    }
+
+    /** One catalog line; the checksum and parser version say which content the body holds. */
+    static final class Entry {
+        int book_id;
+        String dir;
+        String checksum_sha256;
+        String parser_version;
+    }
+
+    /** True once the ingestion service has created a catalog for this datalake. */
+    boolean exists() {
+        return Files.exists(datalake.resolve(SNAPSHOT)) || Files.exists(datalake.resolve(LOG));
+    }
+
+    /** Header and body of the latest copy of {@code bookId}, or null if it was never ingested. */
+    synchronized Path[] find(int bookId) throws IOException {
+        refresh();
+        Entry e = entries.get(bookId);
+        return e == null ? null : files(bookId, e.dir);
+    }
+
+    /** Latest catalog entry of {@code bookId}, or null if it was never ingested. */
+    synchronized Entry entry(int bookId) throws IOException {
+        refresh();
+        return entries.get(bookId);
+    }
+
+    /** Every cataloged entry, whether or not its files are still on disk. */
+    synchronized Map<Integer, Entry> entries() throws IOException {
+        refresh();
+        return new HashMap<>(entries);
+    }
+
+    /** Every cataloged book whose files are still on disk. */
+    synchronized Map<Integer, Path[]> all() throws IOException {
+        refresh();
+        Map<Integer, Path[]> out = new HashMap<>();
+        for (Map.Entry<Integer, Entry> e : entries.entrySet()) {
+            Path[] pair = files(e.getKey(), e.getValue().dir);
+            if (Files.exists(pair[0]) && Files.exists(pair[1])) out.put(e.getKey(), pair);
+        }
+        return out;
+    }
+
+    private Path[] files(int bookId, String dir) {
+        Path d = datalake.resolve(dir);
+        return new Path[]{d.resolve(bookId + "_header.txt"), d.resolve(bookId + "_body.txt")};
+    }
+
+    private void refresh() throws IOException {
+        Path snapshot = datalake.resolve(SNAPSHOT);
+        Path log = datalake.resolve(LOG);
+        for (int attempt = 0; ; attempt++) {
+            BasicFileAttributes before = attributes(snapshot);
+            BasicFileAttributes logNow = attributes(log);
+            long logSize = logNow == null ? 0 : logNow.size();
+            if (loaded && sameFile(before, snapshotSeen) && Objects.equals(key(logNow), logKey) && logSize >= logOffset) {
+                if (logSize > logOffset) logOffset = readLines(log, logOffset);
+                return;
+            }
+            entries.clear();
+            if (before != null) readLines(snapshot, 0);
+            long offset = Files.exists(log) ? readLines(log, 0) : 0;
+            // a compaction between reading the snapshot and the log would hide the folded lines
+            BasicFileAttributes after = attributes(snapshot);
+            if (sameFile(before, after) || attempt >= 3) {
+                snapshotSeen = after;
+                logKey = key(logNow);
+                logOffset = offset;
+                loaded = true;
+                return;
+            }
+        }
+    }
+
+    private static BasicFileAttributes attributes(Path file) throws IOException {
+        try {
+            return Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private static Object key(BasicFileAttributes a) {
+        return a == null ? null : a.fileKey();
+    }
+
+    private static boolean sameFile(BasicFileAttributes a, BasicFileAttributes b) {
+        if (a == null || b == null) return a == b;
+        return a.size() == b.size() && a.lastModifiedTime().equals(b.lastModifiedTime()) && Objects.equals(a.fileKey(), b.fileKey());
+    }
+
+    /** Applies every complete line from {@code offset} on; returns the offset after the last one. */
+    private long readLines(Path file, long offset) throws IOException {
+        byte[] bytes;
+        try (SeekableByteChannel ch = Files.newByteChannel(file)) {
+            ch.position(offset);
+            try (InputStream in = Channels.newInputStream(ch)) {
+                bytes = in.readAllBytes();
+            }
+        }
+        int start = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] != '\n') continue;
+            apply(new String(bytes, start, i - start, StandardCharsets.UTF_8));
+            start = i + 1;
+        }
+        // a trailing partial line is still being appended; it is read on the next refresh
+        return offset + start;
+    }
+
+    private void apply(String line) {
+        if (line.isBlank()) return;
+        try {
+            Entry e = GSON.fromJson(line, Entry.class);
+            if (e != null && e.dir != null) entries.put(e.book_id, e);
+        } catch (JsonParseException ignored) {
+        }
+    }
+}
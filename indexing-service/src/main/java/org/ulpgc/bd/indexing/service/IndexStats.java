@@ -0,0 +1,191 @@
+package org.ulpgc.bd.indexing.service;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import org.ulpgc.bd.indexing.index.SegmentIndex;
+import org.ulpgc.bd.indexing.index.SegmentReader;
+import org.ulpgc.bd.indexing.model.IndexStatus;
+import org.ulpgc.bd.indexing.model.SegmentInfo;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Running totals behind {@code /index/status}, so it never walks {@code docs/} or {@code inverted/}.
+ * Segment numbers are summed from the segment manifest, which every commit and merge already saves
+ * atomically. The doc-record count and bytes are kept here and saved with {@code index_status.json};
+ * a {@code docs.dirty} marker exists while records are being written, and finding one on open (or
+ * a status file without these counters) means {@code docs/} is walked once to recount.
+ *
+ * Terms repeat across segments, so the vocabulary is counted by merging the segments' term lists
+ * on a background thread, at most once per manifest generation; until then the last count is reported.
+ */
+final class IndexStats {
+    private static final String STATUS = "index_status.json";
+    private static final String DIRTY = "docs.dirty";
+    private static final Gson G = new Gson();
+
+    private final Path datamarts;
+    private final SegmentIndex segments;
+    private final String indexerVersion;
+    private final AtomicBoolean counting = new AtomicBoolean();
+    private final ExecutorService counter = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "vocabulary-counter");
+        t.setDaemon(true);
+        return t;
+    });
+    private int writers;
+    private int docs;
+    private long docsBytes;
+    private String lastUpdate;
+    private volatile long vocabulary = -1;
+    private volatile long vocabularyGeneration = -1;
+
+    IndexStats(Path datamarts, SegmentIndex segments, String indexerVersion) throws IOException {
+        this.datamarts = datamarts;
+        this.segments = segments;
+        this.indexerVersion = indexerVersion;
+        IndexStatus saved = null;
+        Path status = datamarts.resolve(STATUS);
+        if (Files.exists(status)) {
+            try {
+                saved = G.fromJson(Files.readString(status, StandardCharsets.UTF_8), IndexStatus.class);
+            } catch (JsonParseException ignored) {
+            }
+        }
+        if (saved != null) lastUpdate = saved.last_update;
+        if (saved != null && saved.docs_bytes != null && !Files.exists(datamarts.resolve(DIRTY))) {
+            docs = saved.books_indexed;
+            docsBytes = saved.docs_bytes;
+            if (saved.vocabulary_generation != null && saved.vocabulary_generation == segments.generation()) {
+                vocabulary = saved.vocabulary_size;
+                vocabularyGeneration = saved.vocabulary_generation;
+            }
+        } else if (Files.exists(datamarts.resolve("docs")) || saved != null) {
+            recount();
+            save();
+            Files.deleteIfExists(datamarts.resolve(DIRTY));
+        }
+    }
+
+    /** Call before writing doc records; the marker goes once every writer has called {@link #endDocWrites}. */
+    synchronized void beginDocWrites() throws IOException {
+        if (writers++ > 0) return;
+        Files.createDirectories(datamarts);
+        Path dirty = datamarts.resolve(DIRTY);
+        if (!Files.exists(dirty)) Files.createFile(dirty);
+    }
+
+    /** One doc record was written: {@code oldBytes} is its previous size, or -1 if it is new. */
+    synchronized void docWritten(long oldBytes, long newBytes) {
+        if (oldBytes < 0) docs++;
+        else docsBytes -= oldBytes;
+        docsBytes += newBytes;
+    }
+
+    synchronized void endDocWrites() throws IOException {
+        if (--writers == 0) Files.deleteIfExists(datamarts.resolve(DIRTY));
+    }
+
+    /** Counts {@code docs/} from scratch; for opening without saved counters, and after a rebuild. */
+    synchronized void recount() throws IOException {
+        int n = 0;
+        long bytes = 0L;
+        Path docsDir = datamarts.resolve("docs");
+        if (Files.exists(docsDir)) {
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(docsDir, "*.json")) {
+                for (Path p : ds) {
+                    n++;
+                    bytes += Files.size(p);
+                }
+            }
+        }
+        docs = n;
+        docsBytes = bytes;
+    }
+
+    /** Marks the index as updated now; the next {@link #status} carries this time. */
+    synchronized void touch() {
+        lastUpdate = Instant.now().toString();
+    }
+
+    synchronized IndexStatus status() {
+        List<SegmentInfo> segs = segments.segments();
+        long generation = segments.generation();
+        IndexStatus st = new IndexStatus();
+        st.books_indexed = docs;
+        st.last_update = lastUpdate;
+        st.indexer_version = indexerVersion;
+        st.docs_bytes = docsBytes;
+        st.segments = segs.size();
+        st.generation = generation;
+        long bytes = 0L;
+        for (SegmentInfo s : segs) {
+            st.segment_docs += s.docs;
+            st.tokens += s.tokens;
+            st.segment_terms += s.terms;
+            st.postings += s.postings;
+            bytes += s.size_bytes;
+        }
+        st.inverted_bytes = bytes;
+        st.index_size_MB = Math.round(((docsBytes + bytes) / (1024.0 * 1024.0)) * 100.0) / 100.0;
+        st.avg_postings_per_term = st.segment_terms == 0 ? 0.0 : Math.round(st.postings * 100.0 / st.segment_terms) / 100.0;
+        st.vocabulary_size = vocabulary;
+        st.vocabulary_generation = vocabularyGeneration;
+        return st;
+    }
+
+    /** Writes {@link #status} to {@code index_status.json} and returns it. */
+    synchronized IndexStatus save() throws IOException {
+        IndexStatus st = status();
+        Path target = datamarts.resolve(STATUS);
+        Path tmp = target.resolveSibling(STATUS + ".tmp");
+        Files.createDirectories(datamarts);
+        Files.writeString(tmp, G.toJson(st), StandardCharsets.UTF_8);
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return st;
+    }
+
+    /** Starts counting the vocabulary in the background if the segments changed since the last count. */
+    void refreshVocabulary() {
+        if (vocabularyGeneration == segments.generation() || !counting.compareAndSet(false, true)) return;
+        counter.execute(() -> {
+            try {
+                long generation = segments.generation();
+                long n = distinctTerms(segments.segments());
+                vocabulary = n;
+                vocabularyGeneration = generation;
+            } catch (IOException | RuntimeException e) {
+                // a merge deleted a segment mid-count; the next status call counts again
+            } finally {
+                counting.set(false);
+            }
+        });
+    }
+
+    /** K-way merge of the segments' sorted term lists. */
+    private long distinctTerms(List<SegmentInfo> segs) throws IOException {
+        PriorityQueue<SegmentReader.TermsEnum> pq = new PriorityQueue<>(Comparator.comparing(SegmentReader.TermsEnum::term));
+        for (SegmentInfo s : segs) {
+            SegmentReader.TermsEnum te = SegmentReader.open(segments.dir(), s.name).terms();
+            if (te.next()) pq.add(te);
+        }
+        long n = 0;
+        String last = null;
+        while (!pq.isEmpty()) {
+            SegmentReader.TermsEnum te = pq.poll();
+            if (!te.term().equals(last)) {
+                n++;
+                last = te.term();
+            }
+            if (te.next()) pq.add(te);
+        }
+        return n;
+    }
+}
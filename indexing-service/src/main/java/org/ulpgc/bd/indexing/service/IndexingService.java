@@ -2,18 +2,34 @@ package org.ulpgc.bd.indexing.service;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonWriter;
+import org.ulpgc.bd.indexing.index.MergeScheduler;
+import org.ulpgc.bd.indexing.index.ExternalSortIndexBuilder;
+import org.ulpgc.bd.indexing.index.SegmentIndex;
+import org.ulpgc.bd.indexing.index.SegmentWriter;
+import org.ulpgc.bd.indexing.index.TieredMergePolicy;
 import org.ulpgc.bd.indexing.model.DocMeta;
 import org.ulpgc.bd.indexing.model.IndexStatus;
+import org.ulpgc.bd.indexing.model.SegmentInfo;
+import org.ulpgc.bd.indexing.util.ShardRing;
+import org.ulpgc.bd.indexing.util.TermCounter;
 import org.ulpgc.bd.indexing.util.TextUtil;
 
 import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
-import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -21,184 +37,361 @@ public class IndexingService {
     private final Path datalake;
     private final Path datamarts;
     private final String indexerVersion;
+    private final int rebuildThreads;
+    private final long rebuildMemoryBytes;
+    private final SegmentIndex segments;
+    private final MergeScheduler merges;
+    private final DatalakeCatalog catalog;
+    private final CommitBuffer commits;
+    private final IndexStats stats;
+    private final String node;
+    private final ShardRing ring;
     private static final Gson G = new GsonBuilder().disableHtmlEscaping().create();
+    private static final Pattern YEAR = Pattern.compile("\\b\\d{4}\\b");
 
     public IndexingService(Path datalake, Path datamarts, String indexerVersion) {
+        this(datalake, datamarts, indexerVersion, Runtime.getRuntime().availableProcessors(), 256L << 20);
+    }
+
+    public IndexingService(Path datalake, Path datamarts, String indexerVersion, int rebuildThreads, long rebuildMemoryBytes) {
+        this(datalake, datamarts, indexerVersion, rebuildThreads, rebuildMemoryBytes, false);
+    }
+
+    public IndexingService(Path datalake, Path datamarts, String indexerVersion, int rebuildThreads, long rebuildMemoryBytes,
+                           boolean positions) {
+        this(datalake, datamarts, indexerVersion, rebuildThreads, rebuildMemoryBytes, positions, 500, 2000, 32L << 20);
+    }
+
+    /**
+     * Updates are committed in batches of up to {@code batchBooks}, or after {@code batchMillis},
+     * whichever comes first; {@code batchMemoryBytes} bounds a batch's buffered postings before it
+     * spills to disk.
+     */
+    public IndexingService(Path datalake, Path datamarts, String indexerVersion, int rebuildThreads, long rebuildMemoryBytes,
+                           boolean positions, int batchBooks, long batchMillis, long batchMemoryBytes) {
+        this(datalake, datamarts, indexerVersion, rebuildThreads, rebuildMemoryBytes, positions, batchBooks, batchMillis, batchMemoryBytes,
+                null, null);
+    }
+
+    /**
+     * With a {@code ring}, this is index node {@code node} and only indexes the books the ring
+     * assigns to it; the other nodes of the ring index the rest into their own datamarts.
+     */
+    public IndexingService(Path datalake, Path datamarts, String indexerVersion, int rebuildThreads, long rebuildMemoryBytes,
+                           boolean positions, int batchBooks, long batchMillis, long batchMemoryBytes, String node, ShardRing ring) {
+        if (ring != null && !ring.nodes().contains(node)) throw new IllegalArgumentException("node '" + node + "' is not in " + ring.nodes());
+        this.node = node;
+        this.ring = ring;
         this.datalake = datalake;
+        this.catalog = new DatalakeCatalog(datalake);
         this.datamarts = datamarts;
         this.indexerVersion = indexerVersion;
+        this.rebuildThreads = rebuildThreads;
+        this.rebuildMemoryBytes = rebuildMemoryBytes;
+        try {
+            this.segments = new SegmentIndex(datamarts.resolve("inverted"), positions);
+            this.stats = new IndexStats(datamarts, segments, indexerVersion);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.merges = new MergeScheduler(segments, new TieredMergePolicy());
+        this.commits = new CommitBuffer(segments, datamarts.resolve("commit_tmp"), batchBooks, batchMillis, batchMemoryBytes, this::committed);
+        merges.maybeMerge();
     }
 
+    /** Indexes {@code bookId} and returns once it is committed; see {@link #updateOne(int, boolean)}. */
     public Map<String, Object> updateOne(int bookId) {
+        return updateOne(bookId, true);
+    }
+
+    /**
+     * Indexes the latest datalake copy of {@code bookId}. When the catalog says that copy has the
+     * checksum and parser version already recorded in {@code docs/<id>.json}, nothing is done.
+     * Otherwise the book is added to the open batch; with {@code waitForCommit} this returns once
+     * that batch is committed and searchable, else right away with {@code "index": "buffered"}.
+     */
+    public Map<String, Object> updateOne(int bookId, boolean waitForCommit) {
         Map<String, Object> out = new LinkedHashMap<>();
+        CompletableFuture<SegmentInfo> commit = update(bookId, out);
+        if (commit == null || !waitForCommit) return out;
+        try {
+            commit.get();
+            out.put("index", "updated");
+        } catch (Exception e) {
+            Throwable cause = e instanceof ExecutionException && e.getCause() != null ? e.getCause() : e;
+            out.clear();
+            out.put("book_id", bookId);
+            out.put("status", "error");
+            out.put("message", cause.getMessage());
+        }
+        return out;
+    }
+
+    /**
+     * Buffers {@code bookId} as {@link #updateOne(int, boolean)} does without waiting, filling
+     * {@code out} with the result, and returns the commit of its batch; null when nothing was
+     * buffered because the book is not owned, unchanged or could not be read.
+     */
+    CompletableFuture<SegmentInfo> update(int bookId, Map<String, Object> out) {
+        if (!owns(bookId)) {
+            out.put("book_id", bookId);
+            out.put("index", "not_owned");
+            out.put("owner", ring.owner(bookId));
+            return null;
+        }
         try {
+            // read before the files, so a copy ingested in between is indexed again next time
+            DatalakeCatalog.Entry source = catalog.exists() ? catalog.entry(bookId) : null;
+            Path docPath = datamarts.resolve("docs").resolve(bookId + ".json");
+            if (source != null && indexedFrom(docPath, source)) {
+                out.put("book_id", bookId);
+                out.put("index", "unchanged");
+                out.put("checksum_sha256", source.checksum_sha256);
+                return null;
+            }
+            CompletableFuture<SegmentInfo> commit = commits.pending(bookId, source);
+            if (commit != null) {
+                out.put("book_id", bookId);
+                out.put("index", "buffered");
+                return commit;
+            }
+
             var pair = findLatestHeaderBody(bookId);
             if (pair == null) throw new IOException("book not found in datalake");
             Path header = pair[0];
             Path body = pair[1];
 
             DocMeta meta = readMeta(header, bookId);
-            String text = Files.readString(body, StandardCharsets.UTF_8);
-            Map<String, Integer> tf = countTerms(text, meta.language);
+            TermCounter tf = TextUtil.countTerms(body, meta.language, segments.positions());
 
-            Path docsDir = datamarts.resolve("docs");
-            Files.createDirectories(docsDir);
-            Path docPath = docsDir.resolve(bookId + ".json");
-            writeAtomic(docPath, G.toJson(Map.of(
-                    "book_id", bookId,
-                    "title", meta.title,
-                    "author", meta.author,
-                    "language", meta.language,
-                    "terms", tf
-            )));
-
-            updateInverted(tf, bookId);
-
-            updateStatus();
+            commit = commits.add(meta, tf, source);
 
             out.put("book_id", bookId);
-            out.put("index", "updated");
+            out.put("index", "buffered");
             out.put("doc_terms", tf.size());
             out.put("title", meta.title);
             out.put("author", meta.author);
             out.put("language", meta.language);
+            return commit;
         } catch (Exception e) {
             out.clear();
             out.put("book_id", bookId);
             out.put("status", "error");
             out.put("message", e.getMessage());
+            return null;
         }
-        return out;
     }
 
+    /** Whether this node indexes {@code bookId}; always, without a shard ring. */
+    public boolean owns(int bookId) {
+        return ring == null || ring.owner(bookId).equals(node);
+    }
+
+    /** Commits every buffered update now; returns once they are searchable. */
+    public void commit() throws IOException {
+        commits.flush();
+    }
+
+    /** Runs once per committed batch. */
+    private void committed(List<CommitBuffer.Pending> docs) throws IOException {
+        // written after the commit: it is what later updates compare against
+        Path docsDir = datamarts.resolve("docs");
+        Files.createDirectories(docsDir);
+        stats.beginDocWrites();
+        try {
+            // each record is replaced atomically and counted once written, so the counts hold even if one fails
+            for (CommitBuffer.Pending p : docs) {
+                Path docPath = docsDir.resolve(p.meta.book_id + ".json");
+                long oldBytes = Files.exists(docPath) ? Files.size(docPath) : -1;
+                stats.docWritten(oldBytes, writeDocJson(docPath, p.meta, p.source));
+            }
+            updateStatus();
+        } finally {
+            stats.endDocWrites();
+        }
+        merges.maybeMerge();
+    }
+
+    /** Rebuilds every segment from the datalake; micro-batch commits wait until the rebuilt one is live. */
     public Map<String, Object> rebuildAll() {
+        try {
+            return commits.exclusive(this::rebuild);
+        } catch (IOException e) {
+            Map<String, Object> out = new LinkedHashMap<>();
+            out.put("status", "error");
+            out.put("message", e.getMessage());
+            return out;
+        }
+    }
+
+    private Map<String, Object> rebuild() {
         Map<String, Object> out = new LinkedHashMap<>();
+        long t0 = System.nanoTime();
+        ExecutorService pool = null;
+        ExternalSortIndexBuilder builder = null;
+        boolean writing = false;
         try {
+            // catalog first: a body re-ingested after this read is newer than its checksum and gets reindexed later
+            Map<Integer, DatalakeCatalog.Entry> sources = catalog.exists() ? catalog.entries() : Map.of();
             Map<Integer, Path[]> files = listAllBooks();
+            if (ring != null) files.keySet().removeIf(id -> !owns(id));
             Path docsDir = datamarts.resolve("docs");
-            Path invDir = datamarts.resolve("inverted");
-            if (Files.exists(invDir)) deleteRecursively(invDir);
-            Files.createDirectories(invDir);
             if (!Files.exists(docsDir)) Files.createDirectories(docsDir);
 
-            Map<String, Map<Integer, Integer>> inverted = new HashMap<>();
-            int processed = 0;
-
-            for (Map.Entry<Integer, Path[]> e : files.entrySet()) {
-                int bookId = e.getKey();
-                Path header = e.getValue()[0];
-                Path body = e.getValue()[1];
-
-                DocMeta meta = readMeta(header, bookId);
-                String text = Files.readString(body, StandardCharsets.UTF_8);
-                Map<String, Integer> tf = countTerms(text, meta.language);
-
-                Path docPath = docsDir.resolve(bookId + ".json");
-                writeAtomic(docPath, G.toJson(Map.of(
-                        "book_id", bookId,
-                        "title", meta.title,
-                        "author", meta.author,
-                        "language", meta.language,
-                        "terms", tf
-                )));
-
-                for (Map.Entry<String, Integer> t : tf.entrySet()) {
-                    inverted.computeIfAbsent(t.getKey(), k -> new HashMap<>()).put(bookId, t.getValue());
-                }
-                processed++;
+            List<Map.Entry<Integer, Path[]>> books = new ArrayList<>(files.entrySet());
+            Map<Path, Long> sizes = new HashMap<>();
+            for (Map.Entry<Integer, Path[]> e : books) sizes.put(e.getValue()[1], Files.size(e.getValue()[1]));
+            books.sort((a, b) -> Long.compare(sizes.get(b.getValue()[1]), sizes.get(a.getValue()[1])));
+
+            int threads = Math.max(1, rebuildThreads);
+            pool = Executors.newFixedThreadPool(threads, r -> {
+                Thread t = new Thread(r, "rebuild-worker");
+                t.setDaemon(true);
+                return t;
+            });
+            builder = new ExternalSortIndexBuilder(datamarts.resolve("rebuild_tmp"), rebuildMemoryBytes, threads, segments.positions());
+            DocMeta[] metas = new DocMeta[books.size()];
+            List<Future<?>> workers = new ArrayList<>();
+            AtomicInteger next = new AtomicInteger();
+            for (int w = 0; w < Math.min(threads, Math.max(1, books.size())); w++) {
+                ExternalSortIndexBuilder.RunBuffer buffer = builder.newBuffer();
+                workers.add(pool.submit(() -> {
+                    for (int i = next.getAndIncrement(); i < books.size(); i = next.getAndIncrement()) {
+                        int bookId = books.get(i).getKey();
+                        Path[] pair = books.get(i).getValue();
+                        DocMeta meta = readMeta(pair[0], bookId);
+                        buffer.add(meta, TextUtil.countTerms(pair[1], meta.language, segments.positions()));
+                        metas[i] = meta;
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> f : workers) f.get();
+
+            SegmentWriter w = segments.newWriter();
+            try {
+                segments.replaceAll(builder.write(w));
+            } catch (IOException | RuntimeException e) {
+                segments.discard(w);
+                throw e;
             }
 
-            writeInvertedShards(inverted);
+            // like committed(): a record's checksum says the body is indexed, so it is written only once the segment is live
+            stats.beginDocWrites();
+            writing = true;
+            workers.clear();
+            next.set(0);
+            for (int t = 0; t < Math.min(threads, Math.max(1, metas.length)); t++) {
+                workers.add(pool.submit(() -> {
+                    for (int i = next.getAndIncrement(); i < metas.length; i = next.getAndIncrement()) {
+                        writeDocJson(docsDir.resolve(metas[i].book_id + ".json"), metas[i], sources.get(metas[i].book_id));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> f : workers) f.get();
 
+            stats.recount();
             updateStatus();
-
-            out.put("books_processed", processed);
-            out.put("elapsed_time", "");
+            stats.endDocWrites();
+            writing = false;
+
+            out.put("books_processed", books.size());
+            if (ring != null) out.put("node", node);
+            out.put("threads", threads);
+            out.put("positions", segments.positions());
+            out.put("spilled_runs", builder.spilledRuns());
+            out.put("elapsed_time", (System.nanoTime() - t0) / 1_000_000L + " ms");
         } catch (Exception e) {
+            Throwable cause = e instanceof ExecutionException && e.getCause() != null ? e.getCause() : e;
             out.clear();
             out.put("status", "error");
-            out.put("message", e.getMessage());
+            out.put("message", cause.getMessage());
+        } finally {
+            if (pool != null) pool.shutdownNow();
+            if (writing) {
+                // some doc records may have been rewritten; count them again rather than guess
+                try {
+                    stats.recount();
+                    stats.endDocWrites();
+                } catch (IOException e) {
+                    System.err.println("IndexingService: recount after failed rebuild - " + e.getMessage());
+                }
+            }
+            if (builder != null) builder.close();
         }
         return out;
     }
 
     public Map<String, Object> status() {
         try {
-            IndexStatus st = computeStatus();
-            return Map.of(
-                    "books_indexed", st.books_indexed,
-                    "last_update", st.last_update,
-                    "index_size_MB", st.index_size_MB,
-                    "indexer_version", st.indexer_version
-            );
+            stats.refreshVocabulary();
+            IndexStatus st = stats.status();
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("books_indexed", st.books_indexed);
+            m.put("last_update", st.last_update);
+            m.put("index_size_MB", st.index_size_MB);
+            m.put("indexer_version", st.indexer_version);
+            m.put("segments", st.segments);
+            m.put("generation", st.generation);
+            m.put("segment_docs", st.segment_docs);
+            m.put("tokens", st.tokens);
+            m.put("postings", st.postings);
+            m.put("segment_terms", st.segment_terms);
+            m.put("vocabulary_size", st.vocabulary_size);
+            m.put("vocabulary_generation", st.vocabulary_generation);
+            m.put("avg_postings_per_term", st.avg_postings_per_term);
+            m.put("commits", commits.stats());
+            if (ring != null) {
+                Map<String, Object> shard = new LinkedHashMap<>();
+                shard.put("node", node);
+                shard.put("nodes", ring.nodes());
+                m.put("shard", shard);
+            }
+            return m;
         } catch (Exception e) {
             return Map.of("status", "error", "message", e.getMessage());
         }
     }
 
-    private Map<String, Integer> countTerms(String body, String language) {
-        List<String> toks = TextUtil.tokenize(body, language);
-        Map<String, Integer> tf = new HashMap<>();
-        for (String t : toks) tf.merge(t, 1, Integer::sum);
-        return tf;
-    }
-
-    private void updateInverted(Map<String, Integer> tf, int bookId) throws IOException {
-        Path invDir = datamarts.resolve("inverted");
-        Files.createDirectories(invDir);
-        Map<String, Map<Integer, Integer>> byShard = new HashMap<>();
-        for (Map.Entry<String, Integer> e : tf.entrySet()) {
-            String term = e.getKey();
-            String shard = shardName(term);
-            byShard.computeIfAbsent(shard, k -> new HashMap<>());
-        }
-        for (String shard : byShard.keySet()) {
-            Path shardFile = invDir.resolve(shard + ".json");
-            Map<String, Map<String, Integer>> data = new HashMap<>();
-            if (Files.exists(shardFile)) {
-                String s = Files.readString(shardFile, StandardCharsets.UTF_8);
-                if (!s.isBlank()) data = G.fromJson(s, data.getClass());
-            }
-            if (data == null) data = new HashMap<>();
-            for (Map.Entry<String, Integer> e : tf.entrySet()) {
-                String term = e.getKey();
-                if (!shard.equals(shardName(term))) continue;
-                Map<String, Integer> postings = data.computeIfAbsent(term, k -> new HashMap<>());
-                postings.put(String.valueOf(bookId), e.getValue());
+    /**
+     * Human-readable record of the book's metadata; search reads the segment's {@code .fields} columns instead.
+     * With a catalog {@code source}, also the checksum and parser version of the body that was indexed.
+     * Returns the record's size in bytes.
+     */
+    private long writeDocJson(Path docPath, DocMeta meta, DatalakeCatalog.Entry source) throws IOException {
+        StringWriter sw = new StringWriter();
+        try (JsonWriter jw = G.newJsonWriter(sw)) {
+            jw.beginObject();
+            jw.name("book_id").value(meta.book_id);
+            jw.name("title").value(meta.title);
+            jw.name("author").value(meta.author);
+            jw.name("language").value(meta.language);
+            jw.name("year").value(meta.year);
+            if (source != null && source.checksum_sha256 != null && !source.checksum_sha256.isEmpty()) {
+                jw.name("checksum_sha256").value(source.checksum_sha256);
+                jw.name("parser_version").value(source.parser_version);
             }
-            writeAtomic(shardFile, G.toJson(data));
+            jw.endObject();
         }
+        byte[] bytes = sw.toString().getBytes(StandardCharsets.UTF_8);
+        writeAtomic(docPath, bytes);
+        return bytes.length;
     }
 
-    private void writeInvertedShards(Map<String, Map<Integer, Integer>> inverted) throws IOException {
-        Path invDir = datamarts.resolve("inverted");
-        Files.createDirectories(invDir);
-        Map<String, Map<String, Map<String, Integer>>> shards = new HashMap<>();
-        for (Map.Entry<String, Map<Integer, Integer>> e : inverted.entrySet()) {
-            String term = e.getKey();
-            String shard = shardName(term);
-            Map<String, Map<String, Integer>> shardMap = shards.computeIfAbsent(shard, k -> new HashMap<>());
-            Map<String, Integer> postings = new HashMap<>();
-            for (Map.Entry<Integer, Integer> p : e.getValue().entrySet()) {
-                postings.put(String.valueOf(p.getKey()), p.getValue());
-            }
-            shardMap.put(term, postings);
-        }
-        for (Map.Entry<String, Map<String, Map<String, Integer>>> s : shards.entrySet()) {
-            Path shardFile = invDir.resolve(s.getKey() + ".json");
-            writeAtomic(shardFile, G.toJson(s.getValue()));
+    private boolean indexedFrom(Path docPath, DatalakeCatalog.Entry source) {
+        if (source.checksum_sha256 == null || source.checksum_sha256.isEmpty() || !Files.exists(docPath)) return false;
+        try {
+            Map<?, ?> doc = G.fromJson(Files.readString(docPath, StandardCharsets.UTF_8), Map.class);
+            return doc != null && source.checksum_sha256.equals(doc.get("checksum_sha256"))
+                    && Objects.equals(source.parser_version, doc.get("parser_version"));
+        } catch (IOException | RuntimeException e) {
+            return false;
         }
     }
 
-    private String shardName(String term) {
-        if (term == null || term.isEmpty()) return "other";
-        char c = term.charAt(0);
-        if (c >= 'a' && c <= 'z') return String.valueOf(c);
-        if (c >= '0' && c <= '9') return "num";
-        return "other";
-    }
-
     private Path[] findLatestHeaderBody(int bookId) throws IOException {
+        if (catalog.exists()) return catalog.find(bookId);
         if (!Files.exists(datalake)) return null;
         Pattern pHeader = Pattern.compile("^(\\d+)_header\\.txt$");
         Pattern pBody = Pattern.compile("^(\\d+)_body\\.txt$");
@@ -222,6 +415,7 @@ public class IndexingService {
     }
 
     private Map<Integer, Path[]> listAllBooks() throws IOException {
+        if (catalog.exists()) return catalog.all();
         Map<Integer, Path[]> map = new HashMap<>();
         if (!Files.exists(datalake)) return map;
         Pattern pHeader = Pattern.compile("^(\\d+)_header\\.txt$");
@@ -287,71 +481,35 @@ public class IndexingService {
             if (k.equals("title")) m.title = v;
             else if (k.equals("author")) m.author = v;
             else if (k.equals("language")) m.language = v;
+            else if (k.equals("year") || k.equals("release date")) m.year = parseYear(v);
         }
         return m;
     }
 
-    private void updateStatus() throws IOException {
-        IndexStatus st = computeStatus();
-        Path statusPath = datamarts.resolve("index_status.json");
-        writeAtomic(statusPath, G.toJson(st));
-        Path logDir = datamarts;
-        Files.createDirectories(logDir);
-        Path log = logDir.resolve("indexing.log");
+    private static int parseYear(String v) {
+        Matcher m = YEAR.matcher(v);
+        int year = 0;
+        while (m.find()) year = Integer.parseInt(m.group());
+        return year;
+    }
+
+    // concurrent updates would race on the same .tmp file
+    private synchronized void updateStatus() throws IOException {
+        stats.touch();
+        IndexStatus st = stats.save();
+        Path log = datamarts.resolve("indexing.log");
         String line = G.toJson(Map.of(
-                "ts", Instant.now().toString(),
+                "ts", st.last_update,
                 "books_indexed", st.books_indexed,
                 "index_size_MB", st.index_size_MB
         )) + System.lineSeparator();
         Files.writeString(log, line, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
     }
 
-    private IndexStatus computeStatus() throws IOException {
-        Path docsDir = datamarts.resolve("docs");
-        Path invDir = datamarts.resolve("inverted");
-        int docs = 0;
-        long bytes = 0L;
-        if (Files.exists(docsDir)) {
-            try (var s = Files.walk(docsDir)) {
-                for (Path p : (Iterable<Path>) s::iterator) {
-                    if (p.getFileName() != null && p.getFileName().toString().endsWith(".json")) {
-                        docs++;
-                        bytes += Files.size(p);
-                    }
-                }
-            }
-        }
-        if (Files.exists(invDir)) {
-            try (var s = Files.walk(invDir)) {
-                for (Path p : (Iterable<Path>) s::iterator) {
-                    if (p.getFileName() != null && p.getFileName().toString().endsWith(".json")) {
-                        bytes += Files.size(p);
-                    }
-                }
-            }
-        }
-        IndexStatus st = new IndexStatus();
-        st.books_indexed = docs;
-        st.last_update = Instant.now().toString();
-        st.index_size_MB = Math.round((bytes / (1024.0 * 1024.0)) * 100.0) / 100.0;
-        st.indexer_version = indexerVersion;
-        return st;
-    }
-
-    private void writeAtomic(Path target, String content) throws IOException {
+    private void writeAtomic(Path target, byte[] content) throws IOException {
         Files.createDirectories(target.getParent());
         Path tmp = target.resolveSibling(target.getFileName().toString() + ".tmp");
-        Files.writeString(tmp, content, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        Files.write(tmp, content, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
         Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
     }
-
-    private void deleteRecursively(Path path) throws IOException {
-        if (!Files.exists(path)) return;
-        try (var s = Files.walk(path)) {
-            List<Path> all = new ArrayList<>();
-            for (Path p : (Iterable<Path>) s::iterator) all.add(p);
-            Collections.reverse(all);
-            for (Path p : all) Files.deleteIfExists(p);
-        }
-    }
 }
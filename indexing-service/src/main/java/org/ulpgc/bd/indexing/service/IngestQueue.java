@@ -0,0 +1,178 @@
+package org.ulpgc.bd.indexing.service;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Consumer side of the ingestion service's event queue ({@code datalake/queue}; see the ingestion
+ * side for how segments are written and deleted). Reads resume from this consumer's offset file,
+ * which is only rewritten by {@link #ack}, so events polled but not acknowledged before a restart
+ * are read again.
+ */
+final class IngestQueue {
+    static final String DIR = "queue";
+    static final String CONSUMERS = "consumers";
+    private static final String SUFFIX = ".log";
+    private static final int READ_CHUNK = 1 << 20;
+    private static final Gson GSON = new Gson();
+
+    private final Path dir;
+    private final Path offsetFile;
+    private final Path failedFile;
+    /** Next byte to read and the seq expected there; both are past every acknowledged event. */
+    private long position;
+    private long seq;
+
+    static final class Event {
+        long seq;
+        int book_id;
+        String dir;
+        String checksum_sha256;
+        String parser_version;
+    }
+
+    static final class Offset {
+        long position;
+        long seq;
+
+        Offset(long position, long seq) {
+            this.position = position;
+            this.seq = seq;
+        }
+    }
+
+    /** Events read by one {@link #poll}, and where the queue stands after them. */
+    static final class Batch {
+        final List<Event> events;
+        final Offset next;
+
+        Batch(List<Event> events, Offset next) {
+            this.events = events;
+            this.next = next;
+        }
+    }
+
+    /** Opens, and registers if new, consumer {@code name}; a new one starts at the oldest event kept. */
+    IngestQueue(Path datalake, String name) throws IOException {
+        this.dir = datalake.resolve(DIR);
+        Path consumers = dir.resolve(CONSUMERS);
+        this.offsetFile = consumers.resolve(name + ".offset");
+        this.failedFile = consumers.resolve(name + ".failed");
+        Files.createDirectories(consumers);
+        Offset o = null;
+        if (Files.exists(offsetFile)) {
+            try {
+                o = GSON.fromJson(Files.readString(offsetFile, StandardCharsets.UTF_8), Offset.class);
+            } catch (JsonParseException ignored) {
+            }
+        }
+        if (o == null) {
+            List<Long> starts = segments();
+            o = new Offset(starts.isEmpty() ? 0 : starts.get(0), 0);
+            ack(o);
+        }
+        position = o.position;
+        seq = o.seq;
+    }
+
+    /** Up to {@code max} events after the last acknowledged one; empty when there are none yet. */
+    synchronized Batch poll(int max) throws IOException {
+        List<Event> events = new ArrayList<>();
+        long pos = position;
+        long next = seq;
+        while (events.size() < max) {
+            List<Long> starts = segments();
+            int i = starts.size() - 1;
+            while (i >= 0 && starts.get(i) > pos) i--;
+            if (i < 0) break;
+            Path seg = dir.resolve(String.format("%020d", starts.get(i)) + SUFFIX);
+            long size = Files.size(seg);
+            if (pos - starts.get(i) >= size) {
+                // this segment is done; the next one starts exactly where it ends
+                if (i + 1 < starts.size() && starts.get(i + 1) == starts.get(i) + size) {
+                    pos = starts.get(i + 1);
+                    continue;
+                }
+                break;
+            }
+            ByteBuffer buf = ByteBuffer.allocate((int) Math.min(READ_CHUNK, size - (pos - starts.get(i))));
+            try (FileChannel ch = FileChannel.open(seg, StandardOpenOption.READ)) {
+                ch.position(pos - starts.get(i));
+                while (buf.hasRemaining() && ch.read(buf) > 0) {
+                }
+            }
+            byte[] bytes = buf.array();
+            int n = buf.position();
+            int lineStart = 0;
+            for (int j = 0; j < n && events.size() < max; j++) {
+                if (bytes[j] != '\n') continue;
+                Event e = parse(new String(bytes, lineStart, j - lineStart, StandardCharsets.UTF_8));
+                if (e != null) {
+                    events.add(e);
+                    next = e.seq + 1;
+                }
+                lineStart = j + 1;
+            }
+            // a line still being appended is read on a later poll
+            if (lineStart == 0) break;
+            pos += lineStart;
+        }
+        return new Batch(events, new Offset(pos, next));
+    }
+
+    private static Event parse(String line) {
+        if (line.isBlank()) return null;
+        try {
+            return GSON.fromJson(line, Event.class);
+        } catch (JsonParseException e) {
+            return null;
+        }
+    }
+
+    /** Marks everything up to {@code next} as consumed; the producer may then drop those segments. */
+    synchronized void ack(Offset next) throws IOException {
+        Path tmp = offsetFile.resolveSibling(offsetFile.getFileName() + ".tmp");
+        Files.writeString(tmp, GSON.toJson(next), StandardCharsets.UTF_8);
+        Files.move(tmp, offsetFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        position = next.position;
+        seq = next.seq;
+    }
+
+    /** Keeps an event that could not be processed, so acknowledging past it loses nothing. */
+    synchronized void deadLetter(Event e, String message) throws IOException {
+        Map<String, Object> line = new LinkedHashMap<>();
+        line.put("seq", e.seq);
+        line.put("book_id", e.book_id);
+        line.put("dir", e.dir);
+        line.put("message", message);
+        Files.writeString(failedFile, GSON.toJson(line) + "\n", StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    synchronized long acknowledgedSeq() {
+        return seq;
+    }
+
+    private List<Long> segments() throws IOException {
+        List<Long> starts = new ArrayList<>();
+        if (!Files.isDirectory(dir)) return starts;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            for (Path p : ds) {
+                String n = p.getFileName().toString();
+                try {
+                    starts.add(Long.parseLong(n.substring(0, n.length() - SUFFIX.length())));
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+        Collections.sort(starts);
+        return starts;
+    }
+}
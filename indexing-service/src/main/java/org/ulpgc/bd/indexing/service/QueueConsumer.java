@@ -0,0 +1,138 @@
+package org.ulpgc.bd.indexing.service;
+
+import org.ulpgc.bd.indexing.model.SegmentInfo;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Indexes the books of the ingestion service's event queue on one background thread, up to
+ * {@code batchSize} events at a time. The books of a batch are buffered and committed together,
+ * and only then is the batch acknowledged; a book that fails is written to the consumer's
+ * dead-letter file first, so the queue never stalls behind it. While the queue is empty the
+ * thread checks it again every {@code idleMillis}. On a sharded index every node reads the whole
+ * queue under its own consumer name and skips the books it does not own.
+ */
+public class QueueConsumer {
+    public static final String NAME = "indexer";
+
+    private final String name;
+    private final IngestQueue queue;
+    private final IndexingService service;
+    private final int batchSize;
+    private final long idleMillis;
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong indexed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private volatile long lastBatchMillis;
+    private volatile boolean running;
+
+    public QueueConsumer(Path datalake, IndexingService service, int batchSize, long idleMillis) {
+        this(datalake, NAME, service, batchSize, idleMillis);
+    }
+
+    public QueueConsumer(Path datalake, String name, IndexingService service, int batchSize, long idleMillis) {
+        this.name = name;
+        try {
+            this.queue = new IngestQueue(datalake, name);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.service = service;
+        this.batchSize = Math.max(1, batchSize);
+        this.idleMillis = idleMillis;
+    }
+
+    public void start() {
+        running = true;
+        Thread t = new Thread(this::run, "queue-consumer");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                IngestQueue.Batch batch = queue.poll(batchSize);
+                if (batch.events.isEmpty()) {
+                    Thread.sleep(idleMillis);
+                    continue;
+                }
+                long t0 = System.nanoTime();
+                process(batch.events);
+                queue.ack(batch.next);
+                batches.incrementAndGet();
+                lastBatchMillis = (System.nanoTime() - t0) / 1_000_000L;
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException | RuntimeException e) {
+                System.err.println("QueueConsumer: batch failed, retrying - " + e.getMessage());
+                try {
+                    Thread.sleep(Math.max(idleMillis, 1000));
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Indexes each book once, however many events the batch holds for it, then commits them and
+     * waits for every book's batch, since the commit timer may have written some of them already.
+     */
+    private void process(List<IngestQueue.Event> events) throws IOException {
+        Map<Integer, IngestQueue.Event> latest = new LinkedHashMap<>();
+        for (IngestQueue.Event e : events) {
+            if (service.owns(e.book_id)) latest.put(e.book_id, e);
+            else skipped.incrementAndGet();
+        }
+        Map<IngestQueue.Event, CompletableFuture<SegmentInfo>> commits = new LinkedHashMap<>();
+        for (IngestQueue.Event e : latest.values()) {
+            Map<String, Object> r = new LinkedHashMap<>();
+            CompletableFuture<SegmentInfo> commit = service.update(e.book_id, r);
+            if ("error".equals(r.get("status"))) {
+                queue.deadLetter(e, String.valueOf(r.get("message")));
+                failed.incrementAndGet();
+            } else if (commit != null) {
+                commits.put(e, commit);
+            } else {
+                indexed.incrementAndGet();
+            }
+        }
+        service.commit();
+        for (Map.Entry<IngestQueue.Event, CompletableFuture<SegmentInfo>> c : commits.entrySet()) {
+            try {
+                c.getValue().join();
+                indexed.incrementAndGet();
+            } catch (CompletionException | CancellationException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                queue.deadLetter(c.getKey(), "commit failed: " + cause.getMessage());
+                failed.incrementAndGet();
+            }
+        }
+    }
+
+    public void stop() {
+        running = false;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("consumer", name);
+        m.put("acknowledged_seq", queue.acknowledgedSeq());
+        m.put("batch_size", batchSize);
+        m.put("batches", batches.get());
+        m.put("indexed", indexed.get());
+        m.put("failed", failed.get());
+        m.put("skipped", skipped.get());
+        m.put("last_batch_ms", lastBatchMillis);
+        return m;
+    }
+}
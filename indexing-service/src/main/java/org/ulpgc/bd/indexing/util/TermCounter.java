@@ -0,0 +1,81 @@
+package org.ulpgc.bd.indexing.util;
+
+import org.ulpgc.bd.indexing.collections.IntList;
+import org.ulpgc.bd.indexing.collections.TermDictionary;
+
+import java.util.Arrays;
+
+/**
+ * Per-document term frequencies: a {@link TermDictionary} plus a parallel count list, so a
+ * repeated token costs one hash probe and an int increment. A positional counter also keeps each
+ * term's token positions, in order.
+ */
+public final class TermCounter implements Tokenizer.TokenSink {
+    private final TermDictionary dict;
+    private final IntList counts;
+    private IntList[] positions;
+    private long total;
+
+    public TermCounter() {
+        this(1024, false);
+    }
+
+    public TermCounter(int expected) {
+        this(expected, false);
+    }
+
+    public TermCounter(int expected, boolean positional) {
+        dict = new TermDictionary(expected);
+        counts = new IntList(expected);
+        positions = positional ? new IntList[Math.max(16, expected)] : null;
+    }
+
+    @Override
+    public void token(char[] buf, int off, int len, int position) {
+        int id = add(buf, off, len);
+        if (positions == null) return;
+        if (id == positions.length) positions = Arrays.copyOf(positions, id * 2);
+        if (positions[id] == null) positions[id] = new IntList(4);
+        positions[id].add(position);
+    }
+
+    public int add(char[] buf, int off, int len) {
+        int id = dict.add(buf, off, len);
+        if (id == counts.size()) counts.add(1);
+        else counts.increment(id);
+        total++;
+        return id;
+    }
+
+    public boolean hasPositions() {
+        return positions != null;
+    }
+
+    public IntList positions(int id) {
+        return positions[id];
+    }
+
+    public boolean contains(char[] buf, int off, int len) {
+        return dict.find(buf, off, len) >= 0;
+    }
+
+    public int size() {
+        return dict.size();
+    }
+
+    public long total() {
+        return total;
+    }
+
+    public String term(int id) {
+        return dict.term(id);
+    }
+
+    public int count(int id) {
+        return counts.get(id);
+    }
+
+    public int[] sortedIds() {
+        return dict.sortedIds();
+    }
+}
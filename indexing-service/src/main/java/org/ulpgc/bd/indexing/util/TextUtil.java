@@ -1,26 +1,75 @@
 package org.ulpgc.bd.indexing.util;
 
-import java.text.Normalizer;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 
 public class TextUtil {
-    private static final Set<String> STOP_EN = new HashSet<>(Arrays.asList(
-            "the","and","of","to","in","a","is","it","that","for","on","as","with","was","were","be","by","at","an","or","from","this","which","but","not","are","his","her","their","its","have","has","had","you","i","he","she","we","they","them","me","my","our","your"
-    ));
+    private static final int CHUNK = 64 * 1024;
 
     public static List<String> tokenize(String text, String language) {
         if (text == null || text.isEmpty()) return Collections.emptyList();
-        String t = Normalizer.normalize(text, Normalizer.Form.NFD).replaceAll("\\p{M}+", "");
-        t = t.toLowerCase(Locale.ROOT).replaceAll("[^\\p{IsAlphabetic}\\p{IsDigit}\\s]", " ");
-        String[] parts = t.split("\\s+");
-        List<String> out = new ArrayList<>(parts.length);
-        boolean en = language != null && language.toLowerCase(Locale.ROOT).startsWith("en");
-        for (String p : parts) {
-            if (p.isEmpty()) continue;
-            if (en && STOP_EN.contains(p)) continue;
-            if (p.length() == 1 && !Character.isDigit(p.charAt(0))) continue;
-            out.add(p);
-        }
+        List<String> out = new ArrayList<>();
+        Tokenizer tk = new Tokenizer(language, (buf, off, len, pos) -> out.add(new String(buf, off, len)));
+        tk.feed(text);
+        tk.finish();
         return out;
     }
+
+    public static TermCounter countTerms(CharSequence text, String language) {
+        TermCounter tc = new TermCounter();
+        if (text == null || text.length() == 0) return tc;
+        Tokenizer tk = new Tokenizer(language, tc);
+        tk.feed(text);
+        tk.finish();
+        return tc;
+    }
+
+    public static TermCounter countTerms(Path file, String language) throws IOException {
+        return countTerms(file, language, false);
+    }
+
+    public static TermCounter countTerms(Path file, String language, boolean positions) throws IOException {
+        TermCounter tc = new TermCounter(1024, positions);
+        tokenize(file, new Tokenizer(language, tc));
+        return tc;
+    }
+
+    public static void tokenize(Path file, Tokenizer tk) throws IOException {
+        CharsetDecoder dec = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        ByteBuffer bytes = ByteBuffer.allocate(CHUNK);
+        CharBuffer chars = CharBuffer.allocate(CHUNK);
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (true) {
+                boolean eof = ch.read(bytes) < 0;
+                bytes.flip();
+                CoderResult r;
+                do {
+                    r = dec.decode(bytes, chars, eof);
+                    drain(chars, tk);
+                } while (r.isOverflow());
+                bytes.compact();
+                if (eof) break;
+            }
+            while (dec.flush(chars).isOverflow()) drain(chars, tk);
+            drain(chars, tk);
+        }
+        tk.finish();
+    }
+
+    private static void drain(CharBuffer chars, Tokenizer tk) {
+        chars.flip();
+        tk.feed(chars.array(), chars.arrayOffset() + chars.position(), chars.remaining());
+        chars.clear();
+    }
 }
@@ -0,0 +1,141 @@
+package org.ulpgc.bd.indexing.util;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Single-pass tokenizer equivalent to NFD + mark stripping + lower-casing + splitting on anything
+ * that is not a letter or digit. Folding goes through a per-char lookup table, and tokens are
+ * handed to the sink as views into one reusable buffer, so nothing is allocated per token.
+ * Input can be fed in chunks; a token that straddles two chunks is carried over. Every raw token,
+ * including dropped stop words and single letters, takes a position, so phrase gaps are preserved.
+ */
+public final class Tokenizer {
+
+    public interface TokenSink {
+        void token(char[] buf, int off, int len, int position);
+    }
+
+    private static final char SEPARATOR = 0;
+    private static final char SKIP = 1;
+    private static final char EXPAND = 2;
+    private static final char[] FOLD = new char[65536];
+    private static final Map<Character, String> EXPANSIONS = new HashMap<>();
+    private static final Map<Integer, String> SUPPLEMENTARY = new ConcurrentHashMap<>();
+    private static final TermCounter STOP_EN = new TermCounter(64);
+
+    static {
+        for (int c = 0; c < 65536; c++) {
+            char ch = (char) c;
+            if (Character.isSurrogate(ch)) {
+                FOLD[c] = SEPARATOR;
+                continue;
+            }
+            String folded = fold(String.valueOf(ch));
+            if (folded.isEmpty()) FOLD[c] = SKIP;
+            else if (folded.length() == 1) FOLD[c] = folded.charAt(0) == ' ' ? SEPARATOR : folded.charAt(0);
+            else {
+                FOLD[c] = EXPAND;
+                EXPANSIONS.put(ch, folded);
+            }
+        }
+        for (String w : new String[]{
+                "the","and","of","to","in","a","is","it","that","for","on","as","with","was","were","be","by","at","an","or","from","this","which","but","not","are","his","her","their","its","have","has","had","you","i","he","she","we","they","them","me","my","our","your"
+        }) {
+            STOP_EN.add(w.toCharArray(), 0, w.length());
+        }
+    }
+
+    private static String fold(String s) {
+        String t = Normalizer.normalize(s, Normalizer.Form.NFD).replaceAll("\\p{M}+", "");
+        t = t.toLowerCase(Locale.ROOT);
+        StringBuilder sb = new StringBuilder(t.length());
+        t.codePoints().forEach(cp -> {
+            if (Character.isAlphabetic(cp) || Character.isDigit(cp)) sb.appendCodePoint(cp);
+            else sb.append(' ');
+        });
+        return sb.toString();
+    }
+
+    private final TokenSink sink;
+    private final boolean english;
+    private char[] token = new char[64];
+    private int len;
+    private int position;
+    private char pendingHigh;
+
+    public Tokenizer(String language, TokenSink sink) {
+        this.sink = sink;
+        this.english = language != null && language.toLowerCase(Locale.ROOT).startsWith("en");
+    }
+
+    public void feed(CharSequence text) {
+        int n = text.length();
+        for (int i = 0; i < n; i++) accept(text.charAt(i));
+    }
+
+    public void feed(char[] buf, int off, int count) {
+        int end = off + count;
+        for (int i = off; i < end; i++) accept(buf[i]);
+    }
+
+    public void finish() {
+        if (pendingHigh != 0) {
+            pendingHigh = 0;
+            flush();
+        }
+        flush();
+    }
+
+    private void accept(char c) {
+        if (pendingHigh != 0) {
+            char high = pendingHigh;
+            pendingHigh = 0;
+            if (Character.isLowSurrogate(c)) {
+                acceptCodePoint(Character.toCodePoint(high, c));
+                return;
+            }
+            flush();
+        }
+        char f = FOLD[c];
+        if (f > EXPAND) {
+            append(f);
+        } else if (f == SEPARATOR) {
+            if (Character.isHighSurrogate(c)) pendingHigh = c;
+            else flush();
+        } else if (f == EXPAND) {
+            expand(EXPANSIONS.get(c));
+        }
+    }
+
+    private void acceptCodePoint(int cp) {
+        expand(SUPPLEMENTARY.computeIfAbsent(cp, k -> fold(new String(Character.toChars(k)))));
+    }
+
+    private void expand(String folded) {
+        for (int i = 0; i < folded.length(); i++) {
+            char x = folded.charAt(i);
+            if (x == ' ') flush();
+            else append(x);
+        }
+    }
+
+    private void append(char c) {
+        if (len == token.length) token = Arrays.copyOf(token, len * 2);
+        token[len++] = c;
+    }
+
+    private void flush() {
+        if (len == 0) return;
+        int n = len;
+        len = 0;
+        int p = position++;
+        if (n == 1 && !Character.isDigit(token[0])) return;
+        if (english && STOP_EN.contains(token, 0, n)) return;
+        sink.token(token, 0, n, p);
+    }
+}
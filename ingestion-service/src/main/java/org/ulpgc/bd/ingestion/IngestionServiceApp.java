@@ -3,15 +3,18 @@ package org.ulpgc.bd.ingestion;
 import io.javalin.Javalin;
 import io.javalin.json.JavalinGson;
 import org.ulpgc.bd.ingestion.api.IngestionHttpApi;
+import org.ulpgc.bd.ingestion.io.HostThrottle;
 import org.ulpgc.bd.ingestion.io.HttpDownloader;
 import org.ulpgc.bd.ingestion.parser.GutenbergMetaExtractor;
 import org.ulpgc.bd.ingestion.parser.GutenbergSplitter;
+import org.ulpgc.bd.ingestion.service.BatchIngestion;
 import org.ulpgc.bd.ingestion.service.IngestionService;
 
 import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
 
 public class IngestionServiceApp {
 
@@ -21,14 +24,24 @@ public class IngestionServiceApp {
         Path datalake = moduleRoot.resolve("datalake").toAbsolutePath().normalize();
         String parserVersion = "gutenberg-heuristics-8";
 
-        HttpDownloader downloader = new HttpDownloader("IngestionService/1.0 (+mailto:adrian.budzich101@alu.ulpgc.es)", 6000, 10000);
+        int workers = Integer.getInteger("ingestion.workers", 16);
+        int hostConcurrency = Integer.getInteger("ingestion.host.concurrency", 4);
+        double hostRate = Double.parseDouble(System.getProperty("ingestion.host.rps", "4"));
+        long urlTtlDays = Long.getLong("ingestion.url.ttl.days", 30);
+        long maxQueueLag = Long.getLong("ingestion.queue.max.lag", 10_000);
+
+        HostThrottle throttle = new HostThrottle(hostConcurrency, hostRate);
+        HttpDownloader downloader = new HttpDownloader("IngestionService/1.0 (+mailto:adrian.budzich101@alu.ulpgc.es)", 6000, 10000, throttle);
         GutenbergSplitter splitter = new GutenbergSplitter();
         GutenbergMetaExtractor extractor = new GutenbergMetaExtractor();
-        IngestionService service = new IngestionService(datalake, parserVersion, downloader, splitter, extractor);
+        IngestionService service = new IngestionService(datalake, parserVersion, downloader, splitter, extractor,
+                TimeUnit.DAYS.toMillis(urlTtlDays), maxQueueLag);
+        BatchIngestion batches = new BatchIngestion(service, workers);
 
         Javalin app = Javalin.create(cfg -> cfg.jsonMapper(new JavalinGson())).start(port);
-        IngestionHttpApi.register(app, service);
-        System.out.println("Ingestion listening on :" + port + " datalake=" + datalake);
+        IngestionHttpApi.register(app, service, batches);
+        System.out.println("Ingestion listening on :" + port + " datalake=" + datalake + " workers=" + workers
+                + " host_concurrency=" + hostConcurrency + " host_rps=" + hostRate + " queue_max_lag=" + maxQueueLag);
     }
 
     private static Path detectModuleRoot(Class<?> anchor) {
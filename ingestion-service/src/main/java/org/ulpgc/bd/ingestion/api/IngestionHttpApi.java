@@ -1,13 +1,27 @@
 package org.ulpgc.bd.ingestion.api;
 
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import io.javalin.Javalin;
+import io.javalin.http.Context;
+import org.ulpgc.bd.ingestion.service.BatchIngestion;
 import org.ulpgc.bd.ingestion.service.IngestionService;
 
+import java.util.*;
+
 public class IngestionHttpApi {
 
-    public static void register(Javalin app, IngestionService service) {
+    public static void register(Javalin app, IngestionService service, BatchIngestion batches) {
+        // registered before /ingest/{id} so "batch" is not taken for an id
+        app.post("/ingest/batch", ctx -> handleBatch(ctx, batches));
         app.post("/ingest/{id}", ctx -> {
             int id = Integer.parseInt(ctx.pathParam("id"));
+            if (service.queueFull()) {
+                ctx.header("Retry-After", "5").status(503).json(error("indexing queue is full, retry later"));
+                return;
+            }
             ctx.json(service.ingest(id));
         });
         app.get("/ingest/status/{id}", ctx -> {
@@ -15,5 +29,46 @@ public class IngestionHttpApi {
             ctx.json(service.checkStatus(id));
         });
         app.get("/ingest/list", ctx -> ctx.json(service.listBooks()));
+        app.get("/ingest/queue", ctx -> ctx.json(service.queueStats()));
+        app.get("/ingest/jobs", ctx -> ctx.json(batches.listJobs()));
+        app.get("/ingest/jobs/{job_id}", ctx -> {
+            Map<String, Object> job = batches.status(ctx.pathParam("job_id"));
+            if (job == null) ctx.status(404).json(error("unknown job " + ctx.pathParam("job_id")));
+            else ctx.json(job);
+        });
+    }
+
+    /** Body: {"ids": [11, 84], "ranges": ["1000-1999"]}; either key may be left out. */
+    private static void handleBatch(Context ctx, BatchIngestion batches) {
+        List<Integer> ids = new ArrayList<>();
+        try {
+            JsonObject body = JsonParser.parseString(ctx.body()).getAsJsonObject();
+            if (body.has("ids")) for (JsonElement e : body.getAsJsonArray("ids")) ids.add(e.getAsInt());
+            if (body.has("ranges")) addRanges(body.getAsJsonArray("ranges"), ids);
+            ctx.status(202).json(batches.submit(ids));
+        } catch (RuntimeException e) {
+            ctx.status(400).json(error(e.getMessage()));
+        }
+    }
+
+    private static void addRanges(JsonArray ranges, List<Integer> ids) {
+        for (JsonElement e : ranges) {
+            String[] parts = e.getAsString().trim().split("\\s*-\\s*");
+            if (parts.length != 2) throw new IllegalArgumentException("bad range '" + e.getAsString() + "', expected from-to");
+            int from = Integer.parseInt(parts[0]);
+            int to = Integer.parseInt(parts[1]);
+            if (from > to) throw new IllegalArgumentException("bad range '" + e.getAsString() + "'");
+            if ((long) to - from + ids.size() >= BatchIngestion.MAX_BATCH) {
+                throw new IllegalArgumentException("batch exceeds " + BatchIngestion.MAX_BATCH + " ids");
+            }
+            for (int id = from; id <= to; id++) ids.add(id);
+        }
+    }
+
+    private static Map<String, Object> error(String message) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("status", "error");
+        m.put("message", message);
+        return m;
     }
 }
@@ -0,0 +1,165 @@
+package org.ulpgc.bd.ingestion.io;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import org.ulpgc.bd.ingestion.model.CatalogEntry;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Book ID to latest datalake copy, so status and listing calls never walk the datalake. Every
+ * ingest appends one JSON line to {@code catalog.log}; once the log reaches half the size of the
+ * map it is folded into {@code catalog.snapshot} and the log is swapped for an empty one, both
+ * replaced atomically. Replaying the log over the snapshot is idempotent, so a crash between the
+ * two steps loses nothing. Readers in other processes tail the log and reload whenever either
+ * file is replaced; an empty log written in place would look to them like the old one.
+ *
+ * A datalake written before the catalog existed is walked once on open to seed it.
+ */
+public class DatalakeCatalog {
+    public static final String SNAPSHOT = "catalog.snapshot";
+    public static final String LOG = "catalog.log";
+    private static final int MIN_COMPACT_LINES = 1024;
+    private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
+
+    private final Path datalake;
+    private final Map<Integer, CatalogEntry> entries = new HashMap<>();
+    private int logLines;
+
+    public DatalakeCatalog(Path datalake) throws IOException {
+        this.datalake = datalake;
+        Files.createDirectories(datalake);
+        Path snapshot = datalake.resolve(SNAPSHOT);
+        Path log = datalake.resolve(LOG);
+        if (!Files.exists(snapshot) && !Files.exists(log)) {
+            seedFromDatalake();
+            compact();
+            return;
+        }
+        read(snapshot);
+        logLines = read(log);
+        if (logLines >= Math.max(MIN_COMPACT_LINES, entries.size() / 2)) compact();
+    }
+
+    private int read(Path file) throws IOException {
+        if (!Files.exists(file)) return 0;
+        int lines = 0;
+        try (BufferedReader r = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            for (String line = r.readLine(); line != null; line = r.readLine()) {
+                if (line.isBlank()) continue;
+                try {
+                    CatalogEntry e = GSON.fromJson(line, CatalogEntry.class);
+                    if (e != null && e.dir != null) entries.put(e.book_id, e);
+                    lines++;
+                } catch (JsonParseException ignored) {
+                    // a torn last line from a crash mid-append
+                }
+            }
+        }
+        return lines;
+    }
+
+    public synchronized CatalogEntry get(int bookId) {
+        return entries.get(bookId);
+    }
+
+    public synchronized List<Integer> bookIds() {
+        List<Integer> ids = new ArrayList<>(entries.keySet());
+        Collections.sort(ids);
+        return ids;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized void record(CatalogEntry e) throws IOException {
+        Files.writeString(datalake.resolve(LOG), GSON.toJson(e) + "\n", StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        entries.put(e.book_id, e);
+        if (++logLines >= Math.max(MIN_COMPACT_LINES, entries.size() / 2)) compact();
+    }
+
+    /** Writes the whole map as the new snapshot, then replaces the log with an empty file. */
+    public synchronized void compact() throws IOException {
+        Path snapshot = datalake.resolve(SNAPSHOT);
+        Path tmp = datalake.resolve(SNAPSHOT + ".tmp");
+        List<Integer> ids = new ArrayList<>(entries.keySet());
+        Collections.sort(ids);
+        try (BufferedWriter w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            for (int id : ids) {
+                w.write(GSON.toJson(entries.get(id)));
+                w.write('\n');
+            }
+        }
+        Files.move(tmp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Path emptyLog = datalake.resolve(LOG + ".tmp");
+        Files.write(emptyLog, new byte[0]);
+        Files.move(emptyLog, datalake.resolve(LOG), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logLines = 0;
+    }
+
+    /** Latest {@code yyyyMMdd/HH} directory holding both files of each book. */
+    private void seedFromDatalake() throws IOException {
+        Map<String, Set<Integer>> headers = new HashMap<>();
+        Map<Integer, Path> latest = new HashMap<>();
+        try (var stream = Files.walk(datalake, 3)) {
+            for (Path p : (Iterable<Path>) stream::iterator) {
+                String fn = p.getFileName().toString();
+                if (fn.endsWith("_header.txt")) {
+                    Integer id = bookId(fn, "_header.txt");
+                    if (id != null) headers.computeIfAbsent(p.getParent().toString(), k -> new HashSet<>()).add(id);
+                }
+            }
+        }
+        try (var stream = Files.walk(datalake, 3)) {
+            for (Path p : (Iterable<Path>) stream::iterator) {
+                String fn = p.getFileName().toString();
+                if (!fn.endsWith("_body.txt")) continue;
+                Integer id = bookId(fn, "_body.txt");
+                if (id == null || !headers.getOrDefault(p.getParent().toString(), Set.of()).contains(id)) continue;
+                Path prev = latest.get(id);
+                if (prev == null || dir(p).compareTo(dir(prev)) > 0) latest.put(id, p);
+            }
+        }
+        for (Map.Entry<Integer, Path> e : latest.entrySet()) {
+            Path body = e.getValue();
+            Map<?, ?> meta = storedMeta(body.resolveSibling(e.getKey() + "_meta.json"));
+            CatalogEntry c = new CatalogEntry(e.getKey(), dir(body), string(meta.get("checksum_sha256")),
+                    Files.size(body), Files.getLastModifiedTime(body).toString());
+            c.parser_version = string(meta.get("parser_version"));
+            c.source_url = string(meta.get("source_url"));
+            entries.put(e.getKey(), c);
+        }
+    }
+
+    private String dir(Path file) {
+        return datalake.relativize(file.getParent()).toString().replace('\\', '/');
+    }
+
+    private static Integer bookId(String fileName, String suffix) {
+        String id = fileName.substring(0, fileName.length() - suffix.length());
+        if (id.isEmpty() || id.length() > 9) return null;
+        for (int i = 0; i < id.length(); i++) if (id.charAt(i) < '0' || id.charAt(i) > '9') return null;
+        return Integer.parseInt(id);
+    }
+
+    private static Map<?, ?> storedMeta(Path metaJson) {
+        try {
+            Map<?, ?> m = GSON.fromJson(Files.readString(metaJson, StandardCharsets.UTF_8), Map.class);
+            return m == null ? Map.of() : m;
+        } catch (IOException | JsonParseException e) {
+            return Map.of();
+        }
+    }
+
+    private static String string(Object v) {
+        return v == null ? "" : v.toString();
+    }
+}
@@ -0,0 +1,59 @@
+package org.ulpgc.bd.ingestion.io;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Politeness limits per host: at most {@code maxConcurrent} requests in flight, and request starts
+ * spaced so they never exceed {@code requestsPerSecond}. Callers pair every {@link #acquire} with a
+ * {@link #release} for the same host.
+ */
+public class HostThrottle {
+    public static final HostThrottle UNLIMITED = new HostThrottle(Integer.MAX_VALUE, 0);
+
+    private final int maxConcurrent;
+    private final long intervalNanos;
+    private final Map<String, Host> hosts = new ConcurrentHashMap<>();
+
+    /** {@code requestsPerSecond} of 0 or less disables pacing. */
+    public HostThrottle(int maxConcurrent, double requestsPerSecond) {
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.intervalNanos = requestsPerSecond > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / requestsPerSecond) : 0;
+    }
+
+    private static final class Host {
+        final Semaphore slots;
+        long nextStart;
+
+        Host(int slots) {
+            this.slots = new Semaphore(slots, true);
+        }
+    }
+
+    public void acquire(String host) throws InterruptedException {
+        if (this == UNLIMITED) return;
+        Host h = hosts.computeIfAbsent(host, k -> new Host(maxConcurrent));
+        h.slots.acquire();
+        if (intervalNanos == 0) return;
+        long start;
+        synchronized (h) {
+            start = Math.max(System.nanoTime(), h.nextStart);
+            h.nextStart = start + intervalNanos;
+        }
+        long wait = start - System.nanoTime();
+        try {
+            if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+        } catch (InterruptedException e) {
+            h.slots.release();
+            throw e;
+        }
+    }
+
+    public void release(String host) {
+        if (this == UNLIMITED) return;
+        Host h = hosts.get(host);
+        if (h != null) h.slots.release();
+    }
+}
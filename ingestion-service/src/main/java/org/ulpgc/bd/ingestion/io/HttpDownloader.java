@@ -1,7 +1,10 @@
 package org.ulpgc.bd.ingestion.io;
 
-import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.net.URI;
 import java.net.URL;
 import java.net.http.HttpClient;
@@ -16,6 +19,7 @@ import java.util.Comparator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
@@ -27,22 +31,51 @@ public class HttpDownloader {
     private final int connectTimeoutMs;
     private final int readTimeoutMs;
     private final HttpClient client;
+    private final HostThrottle throttle;
 
-    public static class FetchResult {
-        public final String text;
+    /** Reads a decoded response body as it arrives; the result is handed back in a {@link StreamResult}. */
+    public interface TextConsumer<T> {
+        T accept(Reader text) throws IOException;
+    }
+
+    /** A response whose status was neither 2xx nor 304. */
+    public static class HttpStatusException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public final int status;
+        public HttpStatusException(int status, URL url) {
+            super("HTTP " + status + " from " + url);
+            this.status = status;
+        }
+        public boolean notFound() { return status == 404 || status == 410; }
+    }
+
+    public static class StreamResult<T> {
+        public final T value;
         public final int status;
-        public final int sizeBytes;
+        public final long sizeBytes;
         public final String contentType;
-        public FetchResult(String text, int status, int sizeBytes, String contentType) {
-            this.text = text;
+        public final String etag;
+        public final String lastModified;
+        public StreamResult(T value, int status, long sizeBytes, String contentType, String etag, String lastModified) {
+            this.value = value;
             this.status = status;
             this.sizeBytes = sizeBytes;
             this.contentType = contentType == null ? "" : contentType;
+            this.etag = etag;
+            this.lastModified = lastModified;
         }
+        public boolean notModified() { return status == 304; }
     }
 
     public HttpDownloader(String userAgent, int connectTimeoutMs, int readTimeoutMs) {
+        this(userAgent, connectTimeoutMs, readTimeoutMs, HostThrottle.UNLIMITED);
+    }
+
+    /** Every request, probes included, goes through {@code throttle}. */
+    public HttpDownloader(String userAgent, int connectTimeoutMs, int readTimeoutMs, HostThrottle throttle) {
         this.userAgent = userAgent;
+        this.throttle = throttle;
         this.connectTimeoutMs = connectTimeoutMs;
         this.readTimeoutMs = readTimeoutMs;
         this.client = HttpClient.newBuilder()
@@ -52,17 +85,38 @@ public class HttpDownloader {
                 .build();
     }
 
+    /** Known layouts of a book's plain text on gutenberg.org, in the order they are probed by default. */
+    public static final List<String> URL_PATTERNS = List.of(
+            "https://www.gutenberg.org/files/%d/%d-0.txt",
+            "https://www.gutenberg.org/files/%d/%d.txt",
+            "https://www.gutenberg.org/files/%d/%d-8.txt",
+            "https://www.gutenberg.org/ebooks/%d.txt"
+    );
+
+    public static String candidateUrl(int pattern, int bookId) {
+        String p = URL_PATTERNS.get(pattern);
+        return p.contains("%d/%d") ? String.format(p, bookId, bookId) : String.format(p, bookId);
+    }
+
+    /** Index in {@link #URL_PATTERNS} that produces {@code url} for {@code bookId}, or -1. */
+    public static int patternOf(String url, int bookId) {
+        for (int i = 0; i < URL_PATTERNS.size(); i++) if (candidateUrl(i, bookId).equals(url)) return i;
+        return -1;
+    }
+
     public URL findGutenbergTextURL(int bookId) {
-        List<String> patterns = List.of(
-                "https://www.gutenberg.org/files/%d/%d-0.txt",
-                "https://www.gutenberg.org/files/%d/%d.txt",
-                "https://www.gutenberg.org/files/%d/%d-8.txt",
-                "https://www.gutenberg.org/ebooks/%d.txt"
-        );
+        return findGutenbergTextURL(bookId, Set.of());
+    }
+
+    /**
+     * Probes every candidate URL of {@code bookId} except those in {@code skip} with one-byte range
+     * requests, in parallel, and returns the best one that answered, or null.
+     */
+    public URL findGutenbergTextURL(int bookId, Set<String> skip) {
         List<String> candidates = new ArrayList<>();
-        for (String p : patterns) {
-            if (p.contains("%d/%d")) candidates.add(String.format(p, bookId, bookId));
-            else candidates.add(String.format(p, bookId));
+        for (int i = 0; i < URL_PATTERNS.size(); i++) {
+            String s = candidateUrl(i, bookId);
+            if (!skip.contains(s)) candidates.add(s);
         }
         List<CompletableFuture<Probe>> probes = new ArrayList<>();
         for (String s : candidates) {
@@ -73,7 +127,15 @@ public class HttpDownloader {
                     .header("Range", "bytes=0-0")
                     .GET()
                     .build();
+            String host = req.uri().getHost();
+            try {
+                throttle.acquire(host);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
             CompletableFuture<Probe> fut = client.sendAsync(req, HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((resp, ex) -> throttle.release(host))
                     .handle((resp, ex) -> {
                         if (ex != null) return new Probe(s, 0, "");
                         int code = resp.statusCode();
@@ -99,54 +161,59 @@ public class HttpDownloader {
                 } catch (Exception ignored) {}
             }
         }
-        for (String s : candidates) {
-            try {
-                HttpRequest req = HttpRequest.newBuilder(URI.create(s))
-                        .timeout(Duration.ofMillis(readTimeoutMs))
-                        .header("User-Agent", userAgent)
-                        .header("Accept-Encoding", "gzip")
-                        .method("HEAD", HttpRequest.BodyPublishers.noBody())
-                        .build();
-                HttpResponse<Void> resp = client.send(req, HttpResponse.BodyHandlers.discarding());
-                if (resp.statusCode() == 200) return new URL(s);
-            } catch (Exception ignored) {}
-        }
         return null;
     }
 
-    public String fetchText(URL url) throws IOException {
-        FetchResult r = fetchTextWithInfo(url);
-        return r.text;
+    /**
+     * Streams {@code url} through gzip and charset decoding into {@code consumer}, so no copy of the
+     * whole book is ever held in memory. The host slot stays taken until the body is fully read.
+     * {@code sizeBytes} counts the decoded bytes.
+     */
+    public <T> StreamResult<T> streamText(URL url, TextConsumer<T> consumer) throws IOException {
+        return streamText(url, null, null, consumer);
     }
 
-    public FetchResult fetchTextWithInfo(URL url) throws IOException {
-        HttpRequest req = HttpRequest.newBuilder(URI.create(url.toString()))
+    /**
+     * Conditional variant: a non-null {@code etag} or {@code lastModified} from an earlier response
+     * is sent back, and a 304 returns at once with a null value, without calling {@code consumer}.
+     * Any other non-2xx status is an error.
+     */
+    public <T> StreamResult<T> streamText(URL url, String etag, String lastModified, TextConsumer<T> consumer) throws IOException {
+        HttpRequest.Builder rb = HttpRequest.newBuilder(URI.create(url.toString()))
                 .timeout(Duration.ofMillis(readTimeoutMs))
                 .header("User-Agent", userAgent)
                 .header("Accept-Encoding", "gzip")
-                .GET()
-                .build();
+                .GET();
+        if (etag != null && !etag.isEmpty()) rb.header("If-None-Match", etag);
+        if (lastModified != null && !lastModified.isEmpty()) rb.header("If-Modified-Since", lastModified);
+        HttpRequest req = rb.build();
+        String host = req.uri().getHost();
         try {
-            HttpResponse<byte[]> resp = client.send(req, HttpResponse.BodyHandlers.ofByteArray());
-            int code = resp.statusCode();
-            byte[] raw = resp.body() == null ? new byte[0] : resp.body();
+            throttle.acquire(host);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        }
+        try {
+            HttpResponse<InputStream> resp = client.send(req, HttpResponse.BodyHandlers.ofInputStream());
             HttpHeaders h = resp.headers();
+            int code = resp.statusCode();
             String ct = header(h, "Content-Type").orElse("");
             String ce = header(h, "Content-Encoding").orElse("");
-            byte[] bytes = ce.toLowerCase(Locale.ROOT).contains("gzip") ? ungzip(raw) : raw;
-            int size = bytes.length;
-            String charset = detectCharset(ct);
-            String text;
-            try {
-                text = new String(bytes, Charset.forName(charset));
-            } catch (Exception e) {
-                try { text = new String(bytes, StandardCharsets.UTF_8); }
-                catch (Exception e2) { text = new String(bytes, Charset.forName("ISO-8859-1")); }
+            String tag = header(h, "ETag").orElse(null);
+            String modified = header(h, "Last-Modified").orElse(null);
+            try (InputStream raw = resp.body()) {
+                if (code == 304) return new StreamResult<>(null, code, 0, ct, tag != null ? tag : etag, modified != null ? modified : lastModified);
+                if (code < 200 || code >= 300) throw new HttpStatusException(code, url);
+                CountingInputStream in = new CountingInputStream(ce.toLowerCase(Locale.ROOT).contains("gzip") ? new GZIPInputStream(raw, 8192) : raw);
+                T value = consumer.accept(new InputStreamReader(in, charset(ct)));
+                return new StreamResult<>(value, code, in.count, ct, tag, modified);
             }
-            return new FetchResult(text, code, size, ct);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             throw new IOException("Interrupted", e);
+        } finally {
+            throttle.release(host);
         }
     }
 
@@ -154,16 +221,30 @@ public class HttpDownloader {
         return headers.firstValue(name);
     }
 
-    private static String detectCharset(String contentType) {
-        if (contentType == null) return "UTF-8";
-        Matcher m = Pattern.compile("(?i)charset=([\\w\\-]+)").matcher(contentType);
-        if (m.find()) return m.group(1).trim();
-        return "UTF-8";
+    private static Charset charset(String contentType) {
+        if (contentType != null) {
+            Matcher m = Pattern.compile("(?i)charset=([\\w\\-]+)").matcher(contentType);
+            if (m.find()) {
+                try {
+                    return Charset.forName(m.group(1).trim());
+                } catch (Exception ignored) {}
+            }
+        }
+        return StandardCharsets.UTF_8;
     }
 
-    private static byte[] ungzip(byte[] gz) throws IOException {
-        try (GZIPInputStream gis = new GZIPInputStream(new ByteArrayInputStream(gz))) {
-            return gis.readAllBytes();
+    private static class CountingInputStream extends FilterInputStream {
+        long count;
+        CountingInputStream(InputStream in) { super(in); }
+        @Override public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count++;
+            return b;
+        }
+        @Override public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
         }
     }
 
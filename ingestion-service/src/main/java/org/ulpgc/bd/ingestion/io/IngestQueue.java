@@ -0,0 +1,172 @@
+package org.ulpgc.bd.ingestion.io;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import org.ulpgc.bd.ingestion.model.IngestEvent;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Durable queue of {@link IngestEvent}s for the indexer, under {@code datalake/queue}. Events are
+ * JSON lines appended to segment files named after the byte position they start at; a new segment
+ * is begun once the current one passes {@code segmentBytes}. Each consumer keeps how far it has
+ * acknowledged in {@code consumers/<name>.offset} (byte position and event seq), so lag is a
+ * difference of seqs, and segments every consumer is past are deleted when a segment is rolled.
+ *
+ * A torn last line from a crash mid-append is cut off on open; lines are not fsynced.
+ */
+public class IngestQueue {
+    public static final String DIR = "queue";
+    public static final String CONSUMERS = "consumers";
+    public static final long DEFAULT_SEGMENT_BYTES = 16L << 20;
+    private static final String SUFFIX = ".log";
+    private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
+
+    private final Path dir;
+    private final Path consumers;
+    private final long segmentBytes;
+    private FileChannel out;
+    private long segmentStart;
+    private long position;
+    private long nextSeq;
+
+    /** What a consumer has acknowledged: everything before {@code position}, up to event {@code seq - 1}. */
+    private static final class Offset {
+        long position;
+        long seq;
+    }
+
+    public IngestQueue(Path datalake) throws IOException {
+        this(datalake, DEFAULT_SEGMENT_BYTES);
+    }
+
+    public IngestQueue(Path datalake, long segmentBytes) throws IOException {
+        this.dir = datalake.resolve(DIR);
+        this.consumers = dir.resolve(CONSUMERS);
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(consumers);
+        recover();
+    }
+
+    /** Finds the end of the log and the next seq from the last non-empty segment. */
+    private void recover() throws IOException {
+        List<Long> starts = segments();
+        for (int i = starts.size() - 1; i >= 0; i--) {
+            Path seg = segment(starts.get(i));
+            byte[] bytes = Files.readAllBytes(seg);
+            int end = bytes.length;
+            while (end > 0 && bytes[end - 1] != '\n') end--;
+            if (end < bytes.length) {
+                try (FileChannel ch = FileChannel.open(seg, StandardOpenOption.WRITE)) {
+                    ch.truncate(end);
+                }
+            }
+            if (end == 0 && i > 0) {
+                Files.delete(seg);
+                continue;
+            }
+            segmentStart = starts.get(i);
+            position = segmentStart + end;
+            int lineStart = end - 1;
+            while (lineStart > 0 && bytes[lineStart - 1] != '\n') lineStart--;
+            if (end > 0) nextSeq = seqOf(new String(bytes, lineStart, end - 1 - lineStart, StandardCharsets.UTF_8)) + 1;
+            break;
+        }
+        // a queue whose segments were removed by hand still continues after what consumers acked
+        for (Offset o : offsets().values()) {
+            if (starts.isEmpty() && o.position > position) position = segmentStart = o.position;
+            nextSeq = Math.max(nextSeq, o.seq);
+        }
+        out = FileChannel.open(segment(segmentStart), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private static long seqOf(String line) throws IOException {
+        try {
+            IngestEvent e = GSON.fromJson(line, IngestEvent.class);
+            if (e != null) return e.seq;
+        } catch (JsonParseException ignored) {
+        }
+        throw new IOException("unreadable last queue event: " + line);
+    }
+
+    /** Appends {@code event}, assigning it the next seq. */
+    public synchronized void publish(IngestEvent event) throws IOException {
+        if (position - segmentStart >= segmentBytes) roll();
+        event.seq = nextSeq;
+        ByteBuffer buf = ByteBuffer.wrap((GSON.toJson(event) + "\n").getBytes(StandardCharsets.UTF_8));
+        while (buf.hasRemaining()) position += out.write(buf);
+        nextSeq++;
+    }
+
+    private void roll() throws IOException {
+        out.close();
+        segmentStart = position;
+        out = FileChannel.open(segment(segmentStart), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        Map<String, Offset> acked = offsets();
+        if (acked.isEmpty()) return;
+        long slowest = Long.MAX_VALUE;
+        for (Offset o : acked.values()) slowest = Math.min(slowest, o.position);
+        List<Long> starts = segments();
+        // segment i ends where segment i + 1 starts
+        for (int i = 0; i + 1 < starts.size() && starts.get(i + 1) <= slowest; i++) Files.deleteIfExists(segment(starts.get(i)));
+    }
+
+    /** Events published but not yet acknowledged by the slowest consumer; 0 while none is registered. */
+    public synchronized long lag() throws IOException {
+        long lag = 0;
+        for (Offset o : offsets().values()) lag = Math.max(lag, nextSeq - o.seq);
+        return lag;
+    }
+
+    public synchronized Map<String, Object> stats() throws IOException {
+        Map<String, Object> consumerLag = new LinkedHashMap<>();
+        for (Map.Entry<String, Offset> e : offsets().entrySet()) consumerLag.put(e.getKey(), nextSeq - e.getValue().seq);
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("next_seq", nextSeq);
+        m.put("end_position", position);
+        m.put("segments", segments().size());
+        m.put("consumer_lag", consumerLag);
+        return m;
+    }
+
+    private Map<String, Offset> offsets() throws IOException {
+        Map<String, Offset> out = new TreeMap<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(consumers, "*.offset")) {
+            for (Path p : ds) {
+                try {
+                    Offset o = GSON.fromJson(Files.readString(p, StandardCharsets.UTF_8), Offset.class);
+                    String name = p.getFileName().toString();
+                    if (o != null) out.put(name.substring(0, name.length() - ".offset".length()), o);
+                } catch (JsonParseException | NoSuchFileException ignored) {
+                    // being replaced by its consumer; it is read again next time
+                }
+            }
+        }
+        return out;
+    }
+
+    private List<Long> segments() throws IOException {
+        List<Long> starts = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            for (Path p : ds) {
+                String n = p.getFileName().toString();
+                try {
+                    starts.add(Long.parseLong(n.substring(0, n.length() - SUFFIX.length())));
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+        Collections.sort(starts);
+        return starts;
+    }
+
+    private Path segment(long start) {
+        return dir.resolve(String.format("%020d", start) + SUFFIX);
+    }
+}
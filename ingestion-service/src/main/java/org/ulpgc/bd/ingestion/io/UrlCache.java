@@ -0,0 +1,125 @@
+package org.ulpgc.bd.ingestion.io;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Book ID to the plain-text URL it was last downloaded from, so re-ingests skip resolution. Each
+ * entry expires after {@code ttlMillis}. Wins are also counted per {@link HttpDownloader#URL_PATTERNS}
+ * index; {@link #likeliestPattern} is tried directly for books that are not cached.
+ *
+ * Stored like the datalake catalog: JSON lines appended to {@code url_cache.log}, and compacted
+ * into {@code url_cache.snapshot} once the log grows past half the map. A line with a null URL
+ * forgets a book.
+ */
+public class UrlCache {
+    public static final String SNAPSHOT = "url_cache.snapshot";
+    public static final String LOG = "url_cache.log";
+    private static final int MIN_COMPACT_LINES = 1024;
+    private static final Gson GSON = new Gson();
+
+    private final Path dir;
+    private final long ttlMillis;
+    private final Map<Integer, Entry> entries = new HashMap<>();
+    private final int[] wins = new int[HttpDownloader.URL_PATTERNS.size()];
+    private int logLines;
+
+    private static final class Entry {
+        int book_id;
+        String url;
+        int pattern;
+        long expires_at;
+
+        Entry(int book_id, String url, int pattern, long expires_at) {
+            this.book_id = book_id;
+            this.url = url;
+            this.pattern = pattern;
+            this.expires_at = expires_at;
+        }
+    }
+
+    public UrlCache(Path dir, long ttlMillis) throws IOException {
+        this.dir = dir;
+        this.ttlMillis = ttlMillis;
+        Files.createDirectories(dir);
+        read(dir.resolve(SNAPSHOT));
+        logLines = read(dir.resolve(LOG));
+        if (logLines >= Math.max(MIN_COMPACT_LINES, entries.size() / 2)) compact();
+    }
+
+    private int read(Path file) throws IOException {
+        if (!Files.exists(file)) return 0;
+        int lines = 0;
+        try (BufferedReader r = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            for (String line = r.readLine(); line != null; line = r.readLine()) {
+                if (line.isBlank()) continue;
+                try {
+                    Entry e = GSON.fromJson(line, Entry.class);
+                    if (e != null) apply(e);
+                    lines++;
+                } catch (JsonParseException ignored) {
+                    // a torn last line from a crash mid-append
+                }
+            }
+        }
+        return lines;
+    }
+
+    private void apply(Entry e) {
+        Entry old = e.url == null ? entries.remove(e.book_id) : entries.put(e.book_id, e);
+        if (old != null && old.pattern >= 0 && old.pattern < wins.length) wins[old.pattern]--;
+        if (e.url != null && e.pattern >= 0 && e.pattern < wins.length) wins[e.pattern]++;
+    }
+
+    /** Cached URL of {@code bookId}, or null if none or it expired. */
+    public synchronized String get(int bookId) {
+        Entry e = entries.get(bookId);
+        return e == null || e.expires_at < System.currentTimeMillis() ? null : e.url;
+    }
+
+    /** The pattern most books were found under so far; the default order breaks ties. */
+    public synchronized int likeliestPattern() {
+        int best = 0;
+        for (int i = 1; i < wins.length; i++) if (wins[i] > wins[best]) best = i;
+        return best;
+    }
+
+    public synchronized void put(int bookId, String url) throws IOException {
+        append(new Entry(bookId, url, HttpDownloader.patternOf(url, bookId), System.currentTimeMillis() + ttlMillis));
+    }
+
+    public synchronized void remove(int bookId) throws IOException {
+        if (entries.containsKey(bookId)) append(new Entry(bookId, null, -1, 0));
+    }
+
+    private void append(Entry e) throws IOException {
+        Files.writeString(dir.resolve(LOG), GSON.toJson(e) + "\n", StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        apply(e);
+        if (++logLines >= Math.max(MIN_COMPACT_LINES, entries.size() / 2)) compact();
+    }
+
+    /** Writes the live entries as the new snapshot, then empties the log; expired ones are dropped. */
+    public synchronized void compact() throws IOException {
+        Path snapshot = dir.resolve(SNAPSHOT);
+        Path tmp = dir.resolve(SNAPSHOT + ".tmp");
+        long now = System.currentTimeMillis();
+        try (BufferedWriter w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            for (Entry e : entries.values()) {
+                if (e.expires_at < now) continue;
+                w.write(GSON.toJson(e));
+                w.write('\n');
+            }
+        }
+        Files.move(tmp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.write(dir.resolve(LOG), new byte[0]);
+        logLines = 0;
+    }
+}
@@ -0,0 +1,25 @@
+package org.ulpgc.bd.ingestion.model;
+
+/**
+ * Latest stored copy of a book: its {@code yyyyMMdd/HH} directory under the datalake, body checksum,
+ * and the validators the source sent with it, for conditional re-downloads.
+ */
+public class CatalogEntry {
+    public int book_id;
+    public String dir;
+    public String checksum_sha256;
+    public long size_bytes;
+    public String ingested_at;
+    public String parser_version;
+    public String source_url;
+    public String etag;
+    public String last_modified;
+
+    public CatalogEntry(int book_id, String dir, String checksum_sha256, long size_bytes, String ingested_at) {
+        this.book_id = book_id;
+        this.dir = dir;
+        this.checksum_sha256 = checksum_sha256;
+        this.size_bytes = size_bytes;
+        this.ingested_at = ingested_at;
+    }
+}
@@ -0,0 +1,19 @@
+package org.ulpgc.bd.ingestion.model;
+
+/** "Book ingested" event: a new copy of {@code book_id} was stored under {@code dir}. */
+public class IngestEvent {
+    public long seq;
+    public int book_id;
+    public String dir;
+    public String checksum_sha256;
+    public String parser_version;
+    public String ingested_at;
+
+    public IngestEvent(int book_id, String dir, String checksum_sha256, String parser_version, String ingested_at) {
+        this.book_id = book_id;
+        this.dir = dir;
+        this.checksum_sha256 = checksum_sha256;
+        this.parser_version = parser_version;
+        this.ingested_at = ingested_at;
+    }
+}
@@ -19,12 +19,35 @@ public class GutenbergMetaExtractor {
     private static final Pattern P_NAME_EDITOR_LINE = Pattern.compile("(?im)^\\s*([A-Z][\\p{L}.'\\- ]{1,100})\\s*(?:,\\s*(?:Editor|Ed\\.)|\\(\\s*(?:Editor|Ed\\.)\\s*\\))\\s*$");
     private static final Pattern P_TITLE_SUFFIX_EDITOR = Pattern.compile("(?i)^(.*?)(?:,\\s*[A-Z][\\p{L}.'\\- ]{1,80}\\s*,\\s*(?:Editor|Ed\\.))\\s*$");
     private static final Pattern P_TITLE_EDITED_BY = Pattern.compile("(?i)^(.*?)(?:,\\s*edited\\s+by\\s+.+)$");
+    private static final Pattern P_SPACES = Pattern.compile("\\s+");
+    private static final Pattern P_CURLY_QUOTES = Pattern.compile("[“”]");
+    private static final Pattern P_FROM_COMMA = Pattern.compile(",.*$");
+    private static final Pattern P_NOT_NAME_CHAR = Pattern.compile("[^\\p{L}.'\\-]");
+    private static final Pattern P_CAPITALIZED = Pattern.compile("^[A-Z][\\p{L}'\\-]*$");
+    private static final Pattern P_INITIAL = Pattern.compile("^[A-Z]\\.$");
+    private static final Pattern P_BY_LINE = Pattern.compile("(?i)^by\\s+.+$");
+    private static final Pattern P_ONE_WORD_SENTENCE = Pattern.compile("^[A-Z][\\p{L}']+\\.$");
+    private static final Pattern P_LANGUAGE = Pattern.compile("^[A-Za-z][A-Za-z \\-]{0,40}$");
+
+    /**
+     * Literals every match of the patterns above must contain, all found in one pass. A pattern is
+     * then only tried at the lines leading up to its keyword's occurrences, never across the region.
+     */
+    private static final String[] KEYWORDS = {"title", "author", "language", "project", "dictionary", "under", "edit", "editor", "ed."};
+    private static final int K_TITLE = 0, K_AUTHOR = 1, K_LANGUAGE = 2, K_PROJECT = 3, K_DICTIONARY = 4, K_UNDER = 5, K_EDIT = 6, K_EDITOR = 7, K_ED = 8;
+    private static final KeywordAutomaton KEYWORD_AUTOMATON = new KeywordAutomaton(KEYWORDS);
+    /** Lines looked at for {@code by ...} author lines. */
+    private static final int BY_LINES = 800;
 
     private static final Set<String> STOP_TITLE = new HashSet<>(Arrays.asList(
             "edition","release","language","produced","transcribed","illustrated","scanned","proof","copyright",
             "millennium","fulcrum","version","versione","versión","etext","ebook","project gutenberg","plain vanilla","welcome","information",
             "contents","chapter","illustration","preface","prologue","introduction","dedication","index","table of contents"
     ));
+    /** {@link #STOP_TITLE} as one exact-case automaton over the ASCII words, plus the rest. */
+    private static final KeywordAutomaton STOP_TITLE_ASCII = new KeywordAutomaton(false,
+            STOP_TITLE.stream().filter(s -> s.chars().allMatch(c -> c < 128)).toArray(String[]::new));
+    private static final List<String> STOP_TITLE_OTHER = STOP_TITLE.stream().filter(s -> s.chars().anyMatch(c -> c >= 128)).toList();
     private static final Set<String> STOP_AUTHOR_HARD = new HashSet<>(Arrays.asList(
             "the","this","that","these","those","which","whose","wherein","whereof","whereas","series","edition","copyright",
             "email","address","transcribed","produced","edited","illustrated","scanned","proof","project","gutenberg","note","preface","contents","chapter","introduction","dedication","millennium","fulcrum","version","company","co.","inc.","ltd.","press"
@@ -33,35 +56,31 @@ public class GutenbergMetaExtractor {
             "de","di","da","del","della","van","von","der","den","la","le","du","y","af","bin","al","ibn","ap","mac","mc","fitz","st.","st"
     ));
 
-    public Meta extract(String text, GutenbergSplitter.Markers markers) {
-        String full = text == null ? "" : text.replace("\r\n", "\n").replace('\r', '\n');
-        if (full.startsWith("\uFEFF")) full = full.substring(1);
-
-        int coreStart = 0;
-        int coreEnd = full.length();
-        if (markers != null && markers.start != null && markers.end != null && markers.start.idx < markers.end.idx) {
-            coreStart = markers.start.idx + markers.start.len;
-            int lineEnd = full.indexOf('\n', markers.start.idx);
-            if (lineEnd >= 0) coreStart = Math.max(coreStart, lineEnd + 1);
-            coreEnd = markers.end.idx;
-        }
-
-        String pre = full.substring(0, Math.max(0, Math.min(markers != null && markers.start != null ? markers.start.idx : full.length(), 20000)));
-        String coreHead = full.substring(coreStart, Math.min(coreEnd, coreStart + 20000));
-        String metaRegion = pre + "\n" + coreHead;
-
+    /** {@code metaRegion} is the header plus the start of the text, as cut by {@link GutenbergSplitter#split}. */
+    public Meta extract(String metaRegion) {
         String title = null, author = null, language = null;
 
+        int[][] at = new int[KEYWORDS.length][8];
+        int[] count = new int[KEYWORDS.length];
+        boolean[] editorSuffix = new boolean[1];
+        KEYWORD_AUTOMATON.scan(metaRegion, 0, metaRegion.length(), (n, start) -> {
+            if (count[n] == at[n].length) at[n] = Arrays.copyOf(at[n], count[n] * 2);
+            at[n][count[n]++] = start;
+            // P_NAME_EDITOR_LINE needs "," or "(" before its Editor / Ed.
+            if ((n == K_EDITOR || n == K_ED) && !editorSuffix[0]) editorSuffix[0] = afterCommaOrParen(metaRegion, start);
+            return true;
+        });
+
         Matcher m;
-        m = P_TITLE_FIELD.matcher(metaRegion);
-        if (m.find()) title = m.group(1).trim();
-        m = P_AUTHOR_FIELD.matcher(metaRegion);
-        if (m.find()) author = m.group(1).trim();
-        m = P_LANG_FIELD.matcher(metaRegion);
-        if (m.find()) language = m.group(1).trim();
-
-        Matcher mpg = P_PG_LINE.matcher(metaRegion);
-        if (mpg.find()) {
+        m = firstMatch(P_TITLE_FIELD, metaRegion, at[K_TITLE], count[K_TITLE]);
+        if (m != null) title = m.group(1).trim();
+        m = firstMatch(P_AUTHOR_FIELD, metaRegion, at[K_AUTHOR], count[K_AUTHOR]);
+        if (m != null) author = m.group(1).trim();
+        m = firstMatch(P_LANG_FIELD, metaRegion, at[K_LANGUAGE], count[K_LANGUAGE]);
+        if (m != null) language = m.group(1).trim();
+
+        Matcher mpg = firstMatch(P_PG_LINE, metaRegion, at[K_PROJECT], count[K_PROJECT]);
+        if (mpg != null) {
             String t = mpg.group(1) != null ? mpg.group(1).trim() : null;
             String a = mpg.group(2) != null ? mpg.group(2).trim() : null;
             if ((title == null || title.isBlank()) && t != null) title = t;
@@ -73,32 +92,38 @@ public class GutenbergMetaExtractor {
             if (me1.matches()) title = me1.group(1).trim();
             Matcher me2 = P_TITLE_EDITED_BY.matcher(title);
             if (me2.matches()) title = me2.group(1).trim();
-            title = title.replaceAll("\\s+", " ").trim();
+            title = P_SPACES.matcher(title).replaceAll(" ").trim();
         }
 
-        String[] lines = metaRegion.split("\\n", -1);
+        Lines lines = new Lines(metaRegion);
 
         if (title == null || title.isBlank()) {
-            for (String ln : lines) {
+            // only lines holding "dictionary" can match
+            for (int o = 0, prev = -1; o < count[K_DICTIONARY]; o++) {
+                int i = lines.indexOf(at[K_DICTIONARY][o]);
+                if (i == prev) continue;
+                prev = i;
+                String ln = lines.get(i);
                 Matcher md = P_DICT_TITLE.matcher(ln);
                 if (md.find()) {
-                    title = ln.trim().replaceAll("\\s+", " ");
+                    title = P_SPACES.matcher(ln.trim()).replaceAll(" ");
                     break;
                 }
             }
         }
 
         String authorDir = null;
-        Matcher mu = P_UNDER_DIR.matcher(metaRegion);
-        if (mu.find()) authorDir = mu.group(1).trim().replaceFirst(",.*$", "");
+        Matcher mu = firstMatch(P_UNDER_DIR, metaRegion, at[K_UNDER], count[K_UNDER]);
+        if (mu != null) authorDir = P_FROM_COMMA.matcher(mu.group(1).trim()).replaceFirst("");
         String authorEd = null;
-        Matcher me = P_EDITED_BY.matcher(metaRegion);
-        if (me.find()) authorEd = me.group(1).trim().replaceFirst(",.*$", "");
+        Matcher me = firstMatch(P_EDITED_BY, metaRegion, at[K_EDIT], count[K_EDIT]);
+        if (me != null) authorEd = P_FROM_COMMA.matcher(me.group(1).trim()).replaceFirst("");
 
         List<Integer> byIdx = new ArrayList<>();
         List<String> byVals = new ArrayList<>();
-        for (int i = 0; i < Math.min(lines.length, 800); i++) {
-            Matcher mb = P_BY_START.matcher(lines[i]);
+        for (int i = 0; i < Math.min(lines.size(), BY_LINES); i++) {
+            if (!lines.mayStartWithBy(i)) continue;
+            Matcher mb = P_BY_START.matcher(lines.get(i));
             if (mb.find()) {
                 String cand = mb.group(1).trim();
                 if (!cand.toLowerCase(Locale.ROOT).startsWith("the ")) {
@@ -113,11 +138,11 @@ public class GutenbergMetaExtractor {
             else if (authorEd != null && !authorEd.isBlank()) author = authorEd;
         }
 
-        if ((author == null || author.isBlank())) {
+        if ((author == null || author.isBlank()) && editorSuffix[0]) {
             Matcher men = P_NAME_EDITOR_LINE.matcher(metaRegion);
             String best = null;
             while (men.find()) {
-                String cand = men.group(1).trim().replaceAll("\\s+", " ");
+                String cand = P_SPACES.matcher(men.group(1).trim()).replaceAll(" ");
                 if (best == null || cand.length() > best.length()) best = cand;
             }
             if (best != null) author = best + " (Editor)";
@@ -127,16 +152,16 @@ public class GutenbergMetaExtractor {
             String best = null;
             int bestScore = -1;
             for (String raw : byVals) {
-                String base = raw.replaceAll("[“”]", "\"").replaceAll("\\s+", " ").trim();
-                base = base.replaceFirst(",.*$", "");
-                String[] toks = base.split("\\s+");
+                String base = P_SPACES.matcher(P_CURLY_QUOTES.matcher(raw).replaceAll("\"")).replaceAll(" ").trim();
+                base = P_FROM_COMMA.matcher(base).replaceFirst("");
+                String[] toks = P_SPACES.split(base);
                 List<String> kept = new ArrayList<>();
                 for (String tk : toks) {
-                    String clean = tk.replaceAll("[^\\p{L}.'\\-]", "");
+                    String clean = P_NOT_NAME_CHAR.matcher(tk).replaceAll("");
                     if (clean.isEmpty()) break;
                     String low = clean.toLowerCase(Locale.ROOT);
                     if (STOP_AUTHOR_HARD.contains(low)) break;
-                    boolean okToken = clean.matches("^[A-Z][\\p{L}'\\-]*$") || clean.matches("^[A-Z]\\.$") || PARTICLES.contains(low);
+                    boolean okToken = P_CAPITALIZED.matcher(clean).matches() || P_INITIAL.matcher(clean).matches() || PARTICLES.contains(low);
                     if (!okToken) break;
                     if (PARTICLES.contains(low)) kept.add(low);
                     else kept.add(clean);
@@ -144,7 +169,7 @@ public class GutenbergMetaExtractor {
                 }
                 if (kept.isEmpty()) continue;
                 int uc = 0;
-                for (String tkn : kept) if (!PARTICLES.contains(tkn.toLowerCase(Locale.ROOT)) && (tkn.matches("^[A-Z]\\.$") || Character.isUpperCase(tkn.charAt(0)))) uc++;
+                for (String tkn : kept) if (!PARTICLES.contains(tkn.toLowerCase(Locale.ROOT)) && (P_INITIAL.matcher(tkn).matches() || Character.isUpperCase(tkn.charAt(0)))) uc++;
                 int score = uc * 10 + kept.size();
                 String candidate = String.join(" ", kept);
                 if (score > bestScore) { bestScore = score; best = candidate; }
@@ -153,14 +178,14 @@ public class GutenbergMetaExtractor {
         }
 
         if (author != null) {
-            String[] aa = author.split("\\s+");
+            String[] aa = P_SPACES.split(author);
             List<String> aaOut = new ArrayList<>();
             for (String tok : aa) {
                 String low = tok.toLowerCase(Locale.ROOT);
                 if (STOP_AUTHOR_HARD.contains(low)) break;
                 if (PARTICLES.contains(low)) { aaOut.add(low); continue; }
-                if (tok.matches("^[A-Z]\\.$")) { aaOut.add(tok); continue; }
-                String clean = tok.replaceAll("[^\\p{L}.'\\-]", "");
+                if (P_INITIAL.matcher(tok).matches()) { aaOut.add(tok); continue; }
+                String clean = P_NOT_NAME_CHAR.matcher(tok).replaceAll("");
                 if (clean.isEmpty()) break;
                 if (!Character.isUpperCase(clean.charAt(0))) break;
                 aaOut.add(clean);
@@ -173,35 +198,26 @@ public class GutenbergMetaExtractor {
             String tl = title.trim();
             String low = tl.toLowerCase(Locale.ROOT);
             boolean bad = false;
-            for (String s : STOP_TITLE) if (low.contains(s)) { bad = true; break; }
+            if (hasStopWord(low)) bad = true;
             if (tl.startsWith("[") || tl.startsWith("#") || low.startsWith("chapter")) bad = true;
-            if (tl.matches("^[A-Z][\\p{L}']+\\.$")) bad = true;
+            if (P_ONE_WORD_SENTENCE.matcher(tl).matches()) bad = true;
             if (bad) title = null;
         }
 
         if (title == null || title.isBlank()) {
             String chosen = null;
             int bestScore = -1;
-            String[] lns = lines;
             for (int idx : byIdx) {
                 for (int j = idx - 1; j >= 0 && j >= idx - 8; j--) {
-                    String l = lns[j].trim();
-                    if (l.isEmpty()) continue;
-                    String low = l.toLowerCase(Locale.ROOT);
-                    boolean bad = false;
-                    for (String s : STOP_TITLE) if (low.contains(s)) { bad = true; break; }
-                    if (bad) continue;
-                    if (l.startsWith("[") || l.startsWith("#") || low.startsWith("chapter")) continue;
-                    if (l.matches("(?i)^by\\s+.+$")) continue;
-                    if (l.length() < 3 || l.length() > 120) continue;
-                    if (l.matches("^[A-Z][\\p{L}']+\\.$")) continue;
+                    String l = lines.get(j).trim();
+                    if (!titleCandidate(l)) continue;
                     int letters = 0, upper = 0;
                     for (int k = 0; k < l.length(); k++) {
                         char c = l.charAt(k);
                         if (Character.isLetter(c)) { letters++; if (Character.isUpperCase(c)) upper++; }
                     }
                     int score = (letters == 0 ? 0 : (int)(100.0 * upper / letters)) + (8 - (idx - j));
-                    if (score > bestScore) { bestScore = score; chosen = l.replaceAll("\\s+", " ").trim(); }
+                    if (score > bestScore) { bestScore = score; chosen = P_SPACES.matcher(l).replaceAll(" ").trim(); }
                 }
             }
             if (chosen != null) title = chosen;
@@ -210,17 +226,9 @@ public class GutenbergMetaExtractor {
         if (title == null || title.isBlank()) {
             int pickedIdx = -1;
             int best = -1;
-            for (int k = 0; k < lines.length; k++) {
-                String l = lines[k].trim();
-                if (l.isEmpty()) continue;
-                String low = l.toLowerCase(Locale.ROOT);
-                boolean bad = false;
-                for (String s : STOP_TITLE) if (low.contains(s)) { bad = true; break; }
-                if (bad) continue;
-                if (l.startsWith("[") || l.startsWith("#") || low.startsWith("chapter")) continue;
-                if (l.length() < 3 || l.length() > 120) continue;
-                if (l.matches("(?i)^by\\s+.+$")) continue;
-                if (l.matches("^[A-Z][\\p{L}']+\\.$")) continue;
+            for (int k = 0; k < lines.size(); k++) {
+                String l = lines.get(k).trim();
+                if (!titleCandidate(l)) continue;
                 int letters = 0, upper = 0;
                 for (int i = 0; i < l.length(); i++) {
                     char c = l.charAt(i);
@@ -232,13 +240,117 @@ public class GutenbergMetaExtractor {
                 if (nearBy) score += 15;
                 if (score > best) { best = score; pickedIdx = k; }
             }
-            if (pickedIdx >= 0) title = lines[pickedIdx].trim().replaceAll("\\s+", " ");
+            if (pickedIdx >= 0) title = P_SPACES.matcher(lines.get(pickedIdx).trim()).replaceAll(" ");
         }
 
         Meta meta = new Meta();
         meta.title = title == null || title.strip().isEmpty() ? "Unknown" : title;
         meta.author = author == null || author.strip().isEmpty() ? "Unknown" : author;
-        meta.language = language != null && language.matches("^[A-Za-z][A-Za-z \\-]{0,40}$") ? language : "";
+        meta.language = language != null && P_LANGUAGE.matcher(language).matches() ? language : "";
         return meta;
     }
+
+    /**
+     * What {@code p.matcher(text).find()} would match, for a multiline pattern whose matches start
+     * at a line and reach one of the keyword occurrences {@code at} past nothing but blanks (or, for
+     * {@link #P_PG_LINE}, an optional "the" and blanks). Each occurrence, in order, is tried only at
+     * the line starts between the last non-blank before it and itself. Null if nothing matches.
+     */
+    private static Matcher firstMatch(Pattern p, String text, int[] at, int count) {
+        Matcher m = p.matcher(text);
+        for (int i = 0; i < count; i++) {
+            int k = at[i];
+            int from = k - 1;
+            while (from >= 0 && isRegexSpace(text.charAt(from))) from--;
+            while (from > 0 && !isLineStart(text, from)) from--;
+            for (int q = Math.max(from, 0); q <= k; q++) {
+                if (!isLineStart(text, q)) continue;
+                m.region(q, text.length());
+                if (m.lookingAt()) return m;
+            }
+        }
+        return null;
+    }
+
+    /** Where a {@code MULTILINE} {@code ^} can match. */
+    private static boolean isLineStart(String text, int i) {
+        if (i == 0) return true;
+        char c = text.charAt(i - 1);
+        if (c == '\r') return text.charAt(i) != '\n';
+        return c == '\n' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    /** Whether trimmed line {@code l} may be picked by the title fallbacks; cheapest checks first. */
+    private static boolean titleCandidate(String l) {
+        if (l.length() < 3 || l.length() > 120) return false;
+        if (l.startsWith("[") || l.startsWith("#")) return false;
+        String low = l.toLowerCase(Locale.ROOT);
+        if (low.startsWith("chapter") || hasStopWord(low)) return false;
+        if ((l.charAt(0) | 0x20) == 'b' && (l.charAt(1) | 0x20) == 'y' && P_BY_LINE.matcher(l).matches()) return false;
+        return !(l.endsWith(".") && P_ONE_WORD_SENTENCE.matcher(l).matches());
+    }
+
+    private static boolean hasStopWord(String low) {
+        if (STOP_TITLE_ASCII.containsAny(low)) return true;
+        for (String s : STOP_TITLE_OTHER) if (low.contains(s)) return true;
+        return false;
+    }
+
+    private static boolean afterCommaOrParen(String text, int at) {
+        int i = at - 1;
+        while (i >= 0 && isRegexSpace(text.charAt(i))) i--;
+        return i >= 0 && (text.charAt(i) == ',' || text.charAt(i) == '(');
+    }
+
+    /** {@code \s} without UNICODE_CHARACTER_CLASS. */
+    private static boolean isRegexSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /** The region's {@code \n}-separated lines as offsets, cut into strings only when read. */
+    private static final class Lines {
+        private final String text;
+        private int[] starts = new int[256];
+        private int size;
+
+        Lines(String text) {
+            this.text = text;
+            starts[size++] = 0;
+            for (int i = text.indexOf('\n'); i >= 0; i = text.indexOf('\n', i + 1)) {
+                if (size == starts.length) starts = Arrays.copyOf(starts, size * 2);
+                starts[size++] = i + 1;
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        String get(int i) {
+            int end = i + 1 < size ? starts[i + 1] - 1 : text.length();
+            return text.substring(starts[i], end);
+        }
+
+        /** Line holding char {@code offset}. */
+        int indexOf(int offset) {
+            int i = Arrays.binarySearch(starts, 0, size, offset);
+            return i >= 0 ? i : -i - 2;
+        }
+
+        /**
+         * False only when line {@code i} cannot match {@link #P_BY_START}: it neither starts with
+         * "by" after blanks nor holds a char that Java regexes also treat as a line break.
+         */
+        boolean mayStartWithBy(int i) {
+            int end = i + 1 < size ? starts[i + 1] - 1 : text.length();
+            int j = starts[i];
+            while (j < end && isRegexSpace(text.charAt(j))) j++;
+            if (j + 1 < end && (text.charAt(j) | 0x20) == 'b' && (text.charAt(j + 1) | 0x20) == 'y') return true;
+            for (int k = j; k < end; k++) {
+                char c = text.charAt(k);
+                if (c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') return true;
+            }
+            return false;
+        }
+    }
 }
@@ -1,6 +1,13 @@
 package org.ulpgc.bd.ingestion.parser;
 
-import java.util.Locale;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 
 public class GutenbergSplitter {
 
@@ -23,55 +30,242 @@ public class GutenbergSplitter {
             "*** END OF PROJECT GUTENBERG"
     };
 
+    /** Every start marker followed by every end marker, matched in one pass per line. */
+    private static final KeywordAutomaton MARKERS = new KeywordAutomaton(concat(START, END));
+
+    /** Chars of header and of text after the start marker kept for metadata extraction. */
+    public static final int META_CHARS = 20000;
+
     public static class Match {
         public final int idx;
         public final int len;
         public Match(int idx, int len) { this.idx = idx; this.len = len; }
     }
 
-    public static class Markers {
-        public final Match start;
-        public final Match end;
-        public Markers(Match start, Match end) { this.start = start; this.end = end; }
+    /**
+     * Outcome of {@link #split}: the trimmed body as a byte range of the normalized text that was
+     * written out, its SHA-256, and the bounded region metadata is read from.
+     */
+    public static class Split {
+        public final long bodyStart;
+        public final long bodyEnd;
+        public final byte[] bodySha256;
+        public final String metaRegion;
+        public Split(long bodyStart, long bodyEnd, byte[] bodySha256, String metaRegion) {
+            this.bodyStart = bodyStart;
+            this.bodyEnd = bodyEnd;
+            this.bodySha256 = bodySha256;
+            this.metaRegion = metaRegion;
+        }
+    }
+
+    /** Start marker in {@code line}, or null. */
+    public Match findStart(String line) {
+        int[] first = new int[START.length + END.length];
+        MARKERS.first(line, first);
+        return earliest(first, 0, START);
+    }
+
+    /** End marker in {@code line}, or null. */
+    public Match findEnd(String line) {
+        int[] first = new int[START.length + END.length];
+        MARKERS.first(line, first);
+        return earliest(first, START.length, END);
     }
 
-    public Markers findMarkers(String text) {
-        if (text == null) return new Markers(null, null);
-        String t = text;
-        if (t.startsWith("\uFEFF")) t = t.substring(1);
-        t = t.replace("\r\n", "\n").replace('\r', '\n');
-        Match s = earliestOf(START, t);
-        Match e = earliestOf(END, t);
-        return new Markers(s, e);
+    /**
+     * Copies {@code text} to {@code out} as UTF-8 with a leading BOM removed and every line ending
+     * turned into {@code \n}, finding the markers line by line as it goes. Only the first
+     * {@link #META_CHARS} chars of the book and of the text after the start marker are kept, for
+     * the metadata region. The body runs from the line after the start marker to the line before
+     * the end marker, or over the whole text when the markers are missing or out of order. Its
+     * checksum is computed on the way, so deciding whether a download changed anything needs no
+     * second pass.
+     */
+    public Split split(Reader text, OutputStream out) throws IOException {
+        BufferedReader in = new BufferedReader(text, 16384);
+        StringBuilder head = new StringBuilder();
+        StringBuilder core = new StringBuilder();
+        long bytes = 0, chars = 0;
+        long startIdx = -1, endIdx = -1;
+        long rawStart = -1, rawEnd = -1;
+        long contentStart = -1, contentEnd = 0;
+        long bodyStart = -1, bodyEnd = -1;
+        boolean coreOpen = false;
+        boolean first = true;
+        TrimmedDigest whole = new TrimmedDigest(), body = null;
+        byte[] wholeAtEnd = null, bodyAtEnd = null;
+        int[] firstAt = new int[START.length + END.length];
+        for (String line = in.readLine(); line != null; line = in.readLine()) {
+            if (first && line.startsWith("\uFEFF")) line = line.substring(1);
+            first = false;
+            byte[] b = line.getBytes(StandardCharsets.UTF_8);
+
+            boolean startLine = false;
+            if ((startIdx < 0 || endIdx < 0) && mentionsGutenberg(line)) MARKERS.first(line, firstAt);
+            else Arrays.fill(firstAt, -1);
+            if (startIdx < 0) {
+                Match m = earliest(firstAt, 0, START);
+                if (m != null) {
+                    startIdx = chars + m.idx;
+                    rawStart = bytes + b.length + 1;
+                    startLine = true;
+                }
+            }
+            if (endIdx < 0) {
+                Match m = earliest(firstAt, START.length, END);
+                if (m != null) {
+                    endIdx = chars + m.idx;
+                    rawEnd = bytes > 0 ? bytes - 1 : m.idx;
+                    bodyEnd = contentEnd;
+                    if (whole != null) wholeAtEnd = whole.peek();
+                    if (body != null) bodyAtEnd = body.peek();
+                    if (coreOpen) append(core, line.substring(0, m.idx));
+                    coreOpen = false;
+                }
+            }
+            if (coreOpen) {
+                append(core, line);
+                append(core, "\n");
+            }
+            if (startLine && endIdx < 0) coreOpen = true;
+
+            // chars up to ' ' are single UTF-8 bytes, so char offsets into the blank ends are byte offsets
+            int lo = 0, hi = line.length();
+            while (lo < hi && line.charAt(lo) <= ' ') lo++;
+            while (hi > lo && line.charAt(hi - 1) <= ' ') hi--;
+            if (lo < hi) {
+                if (contentStart < 0) contentStart = bytes + lo;
+                if (rawStart >= 0 && bytes >= rawStart && bodyStart < 0) bodyStart = bytes + lo;
+                contentEnd = bytes + b.length - (line.length() - hi);
+            }
+            int trailing = line.length() - hi;
+            if (whole != null) whole.line(b, lo, b.length - trailing, lo == hi);
+            if (body != null) body.line(b, lo, b.length - trailing, lo == hi);
+            if (startLine) body = new TrimmedDigest();
+            // a line past the start marker without an end marker settles the body range; the whole
+            // text's checksum is only needed for the fallbacks
+            else if (startIdx >= 0 && endIdx < 0) whole = null;
+
+            out.write(b);
+            out.write('\n');
+            bytes += b.length + 1;
+            chars += line.length() + 1;
+            append(head, line);
+            append(head, "\n");
+        }
+
+        long rs = startIdx >= 0 ? rawStart : 0;
+        long re = endIdx >= 0 ? rawEnd : bytes;
+        long from, to;
+        if (rs > re) {
+            from = contentStart;
+            to = contentEnd;
+        } else {
+            from = startIdx >= 0 ? bodyStart : contentStart;
+            to = endIdx >= 0 ? bodyEnd : contentEnd;
+        }
+        byte[] sha;
+        if (rs > re) sha = whole.peek();
+        else if (startIdx >= 0) sha = endIdx >= 0 ? bodyAtEnd : body.peek();
+        else sha = endIdx >= 0 ? wholeAtEnd : whole.peek();
+        if (from < 0 || to <= from) {
+            from = to = 0;
+            sha = new TrimmedDigest().peek();
+        }
+
+        boolean hasCore = startIdx >= 0 && endIdx >= 0 && startIdx < endIdx;
+        String pre = head.substring(0, (int) Math.min(head.length(), startIdx >= 0 ? startIdx : chars));
+        return new Split(from, to, sha, pre + "\n" + (hasCore ? core : head));
     }
 
-    public String sliceBody(String text, Markers m) {
-        if (text == null) return "";
-        String t = text;
-        if (t.startsWith("\uFEFF")) t = t.substring(1);
-        t = t.replace("\r\n", "\n").replace('\r', '\n');
-        int start = 0;
-        int end = t.length();
-        if (m != null && m.start != null) {
-            int lineEnd = t.indexOf('\n', m.start.idx);
-            start = lineEnd >= 0 ? lineEnd + 1 : m.start.idx + m.start.len;
+    /**
+     * SHA-256 of the lines fed so far with leading and trailing blanks left out, as
+     * {@link String#trim} would: blanks after the last content are held back until more content
+     * follows.
+     */
+    private static final class TrimmedDigest {
+        private final MessageDigest md;
+        private byte[] pending = new byte[256];
+        private int pendingLen;
+        private boolean started;
+
+        TrimmedDigest() {
+            try {
+                md = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        /** {@code b} is a line without its terminator; its content is {@code [lo, hi)} unless {@code blank}. */
+        void line(byte[] b, int lo, int hi, boolean blank) {
+            if (blank) {
+                if (started) hold(b, 0, b.length);
+                return;
+            }
+            if (started) {
+                md.update(pending, 0, pendingLen);
+                md.update(b, 0, hi);
+            } else {
+                md.update(b, lo, hi - lo);
+                started = true;
+            }
+            pendingLen = 0;
+            hold(b, hi, b.length - hi);
+        }
+
+        /** Queues a blank stretch and its line break. */
+        private void hold(byte[] b, int off, int len) {
+            if (pendingLen + len + 1 > pending.length) pending = Arrays.copyOf(pending, Math.max(pending.length * 2, pendingLen + len + 1));
+            System.arraycopy(b, off, pending, pendingLen, len);
+            pendingLen += len;
+            pending[pendingLen++] = '\n';
+        }
+
+        /** Digest of everything so far, leaving this one open for more lines. */
+        byte[] peek() {
+            try {
+                return ((MessageDigest) md.clone()).digest();
+            } catch (CloneNotSupportedException e) {
+                throw new IllegalStateException(e);
+            }
         }
-        if (m != null && m.end != null) {
-            int prevLine = t.lastIndexOf('\n', m.end.idx);
-            end = prevLine >= 0 ? prevLine : m.end.idx;
+    }
+
+    private static void append(StringBuilder sb, String s) {
+        int room = META_CHARS - sb.length();
+        if (room > 0) sb.append(s, 0, Math.min(room, s.length()));
+    }
+
+    /**
+     * Every marker names Project Gutenberg and almost no other line does, so this cheap check,
+     * built on vectorized {@link String#indexOf(int)}, spares most lines the automaton.
+     */
+    private static boolean mentionsGutenberg(String line) {
+        for (int from = 0; ; ) {
+            int lower = line.indexOf('g', from), upper = line.indexOf('G', from);
+            int i = lower < 0 ? upper : upper < 0 ? lower : Math.min(lower, upper);
+            if (i < 0) return false;
+            if (line.regionMatches(true, i, "gutenberg", 0, 9)) return true;
+            from = i + 1;
         }
-        if (start > end) { start = 0; end = t.length(); }
-        return t.substring(start, end).trim();
     }
 
-    private Match earliestOf(String[] needles, String hay) {
+    /** Earliest of {@code needles}, whose first occurrences start at {@code first[offset]}; ties go to the first listed. */
+    private static Match earliest(int[] first, int offset, String[] needles) {
         int best = -1;
         int len = 0;
-        String low = hay.toLowerCase(Locale.ROOT);
-        for (String n : needles) {
-            int i = low.indexOf(n.toLowerCase(Locale.ROOT));
-            if (i >= 0 && (best == -1 || i < best)) { best = i; len = n.length(); }
+        for (int n = 0; n < needles.length; n++) {
+            int i = first[offset + n];
+            if (i >= 0 && (best == -1 || i < best)) { best = i; len = needles[n].length(); }
         }
         return best == -1 ? null : new Match(best, len);
     }
+
+    private static String[] concat(String[] a, String[] b) {
+        String[] out = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, out, a.length, b.length);
+        return out;
+    }
 }
@@ -0,0 +1,143 @@
+package org.ulpgc.bd.ingestion.parser;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Aho-Corasick automaton over a fixed set of ASCII needles, so one pass over a text finds every
+ * occurrence of all of them; by default matched case-insensitively. Transitions are a dense table
+ * over ASCII, and any other char falls back to the root, so each char costs one array lookup.
+ */
+final class KeywordAutomaton {
+
+    interface Hits {
+        /** Needle {@code needle} occurs at {@code start}; return false to stop scanning. */
+        boolean hit(int needle, int start);
+    }
+
+    private static final char[] LOWER = new char[128];
+    static {
+        for (char c = 0; c < 128; c++) LOWER[c] = c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    private final boolean ignoreCase;
+    private final int[] lengths;
+    /** {@code next[state << 7 | c]}: the transition on ASCII char {@code c}, failures already folded in. */
+    private final int[] next;
+    private final int[][] out;
+
+    KeywordAutomaton(String... needles) {
+        this(true, needles);
+    }
+
+    KeywordAutomaton(boolean ignoreCase, String... needles) {
+        this.ignoreCase = ignoreCase;
+        lengths = new int[needles.length];
+        List<int[]> gotoTable = new ArrayList<>();
+        List<List<Integer>> ends = new ArrayList<>();
+        gotoTable.add(newRow());
+        ends.add(new ArrayList<>());
+        for (int n = 0; n < needles.length; n++) {
+            String needle = needles[n];
+            lengths[n] = needle.length();
+            int s = 0;
+            for (int i = 0; i < needle.length(); i++) {
+                int c = code(needle.charAt(i));
+                if (c >= 128) throw new IllegalArgumentException("non-ASCII needle: " + needle);
+                if (gotoTable.get(s)[c] < 0) {
+                    gotoTable.get(s)[c] = gotoTable.size();
+                    gotoTable.add(newRow());
+                    ends.add(new ArrayList<>());
+                }
+                s = gotoTable.get(s)[c];
+            }
+            ends.get(s).add(n);
+        }
+
+        int states = gotoTable.size();
+        next = new int[states << 7];
+        out = new int[states][];
+        int[] fail = new int[states];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int c = 0; c < 128; c++) {
+            int t = gotoTable.get(0)[c];
+            next[c] = t < 0 ? 0 : t;
+            if (t > 0) queue.add(t);
+        }
+        out[0] = toArray(ends.get(0));
+        while (!queue.isEmpty()) {
+            int s = queue.poll();
+            int[] row = gotoTable.get(s);
+            List<Integer> o = new ArrayList<>(ends.get(s));
+            for (int n : out[fail[s]]) o.add(n);
+            out[s] = toArray(o);
+            for (int c = 0; c < 128; c++) {
+                int t = row[c];
+                if (t < 0) {
+                    next[s << 7 | c] = next[fail[s] << 7 | c];
+                } else {
+                    fail[t] = next[fail[s] << 7 | c];
+                    next[s << 7 | c] = t;
+                    queue.add(t);
+                }
+            }
+        }
+    }
+
+    /** Reports every occurrence in {@code text[from, to)}, in order of where it ends. */
+    void scan(CharSequence text, int from, int to, Hits hits) {
+        int s = 0;
+        for (int i = from; i < to; i++) {
+            int c = code(text.charAt(i));
+            s = c < 128 ? next[s << 7 | c] : 0;
+            if (out[s].length == 0) continue;
+            for (int n : out[s]) {
+                if (!hits.hit(n, i - lengths[n] + 1)) return;
+            }
+        }
+    }
+
+    /** Fills {@code first[n]} with where needle {@code n} first occurs in {@code text}, or -1. */
+    void first(CharSequence text, int[] first) {
+        Arrays.fill(first, -1);
+        int s = 0;
+        for (int i = 0, len = text.length(); i < len; i++) {
+            int c = code(text.charAt(i));
+            s = c < 128 ? next[s << 7 | c] : 0;
+            if (out[s].length == 0) continue;
+            for (int n : out[s]) {
+                if (first[n] < 0) first[n] = i - lengths[n] + 1;
+            }
+        }
+    }
+
+    /** True if any needle occurs in {@code text}. */
+    boolean containsAny(CharSequence text) {
+        int s = 0;
+        for (int i = 0, len = text.length(); i < len; i++) {
+            int c = code(text.charAt(i));
+            s = c < 128 ? next[s << 7 | c] : 0;
+            if (out[s].length > 0) return true;
+        }
+        return false;
+    }
+
+    private int code(char c) {
+        if (!ignoreCase) return c;
+        return c < 128 ? LOWER[c] : Character.toLowerCase(c);
+    }
+
+    private static int[] newRow() {
+        int[] row = new int[128];
+        Arrays.fill(row, -1);
+        return row;
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] a = new int[list.size()];
+        for (int i = 0; i < a.length; i++) a[i] = list.get(i);
+        return a;
+    }
+}
@@ -0,0 +1,158 @@
+package org.ulpgc.bd.ingestion.service;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Runs batches of book IDs through {@link IngestionService#ingest} on a fixed pool of download
+ * workers. A submit returns a job ID at once; progress and the outcome of each ID are read back
+ * through {@link #status}. Politeness toward the source host is left to the downloader's
+ * {@link org.ulpgc.bd.ingestion.io.HostThrottle}, so the pool can be sized for bandwidth. Workers
+ * wait before each download while the indexer is too far behind on the ingest queue.
+ */
+public class BatchIngestion {
+    public static final int MAX_BATCH = 100_000;
+    private static final int MAX_FINISHED_JOBS = 100;
+    private static final long QUEUE_WAIT_MILLIS = 250;
+
+    private final IngestionService service;
+    private final ExecutorService pool;
+    private final AtomicLong nextJob = new AtomicLong(1);
+    private final Map<String, Job> jobs = new LinkedHashMap<>();
+
+    public BatchIngestion(IngestionService service, int workers) {
+        this.service = service;
+        this.pool = Executors.newFixedThreadPool(Math.max(1, workers), r -> {
+            Thread t = new Thread(r, "ingest-worker");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    private static final class Job {
+        final String id;
+        final int[] bookIds;
+        final AtomicReferenceArray<Map<String, Object>> results;
+        final String createdAt = LocalDateTime.now().toString();
+        final AtomicInteger done = new AtomicInteger();
+        final AtomicInteger downloaded = new AtomicInteger();
+        final AtomicInteger unchanged = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        final long startNanos = System.nanoTime();
+        volatile long finishNanos;
+        volatile String finishedAt;
+
+        Job(String id, int[] bookIds) {
+            this.id = id;
+            this.bookIds = bookIds;
+            this.results = new AtomicReferenceArray<>(bookIds.length);
+        }
+
+        boolean finished() {
+            return done.get() == bookIds.length;
+        }
+    }
+
+    /** Queues {@code bookIds} (duplicates dropped) and returns the new job's summary. */
+    public Map<String, Object> submit(Collection<Integer> bookIds) {
+        int[] ids = new LinkedHashSet<>(bookIds).stream().mapToInt(Integer::intValue).toArray();
+        if (ids.length == 0) throw new IllegalArgumentException("no book ids given");
+        if (ids.length > MAX_BATCH) throw new IllegalArgumentException("batch of " + ids.length + " ids exceeds " + MAX_BATCH);
+        Job job = new Job("ingest-" + nextJob.getAndIncrement(), ids);
+        synchronized (jobs) {
+            jobs.put(job.id, job);
+            prune();
+        }
+        for (int i = 0; i < ids.length; i++) {
+            int slot = i;
+            pool.execute(() -> run(job, slot));
+        }
+        return summary(job);
+    }
+
+    private void run(Job job, int slot) {
+        try {
+            while (service.queueFull()) Thread.sleep(QUEUE_WAIT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Map<String, Object> r = service.ingest(job.bookIds[slot]);
+        Map<String, Object> brief = new LinkedHashMap<>();
+        brief.put("book_id", r.get("book_id"));
+        brief.put("status", r.get("status"));
+        for (String k : new String[]{"reason", "message", "size_bytes", "resolve_ms", "download_ms", "parse_ms"}) {
+            if (r.containsKey(k)) brief.put(k, r.get(k));
+        }
+        job.results.set(slot, brief);
+        if ("error".equals(r.get("status"))) job.failed.incrementAndGet();
+        else if ("unchanged".equals(r.get("status"))) job.unchanged.incrementAndGet();
+        else job.downloaded.incrementAndGet();
+        if (job.done.incrementAndGet() == job.bookIds.length) {
+            job.finishNanos = System.nanoTime();
+            job.finishedAt = LocalDateTime.now().toString();
+        }
+    }
+
+    /** Drops the oldest finished jobs once too many are kept; running jobs always stay. */
+    private void prune() {
+        int finished = 0;
+        for (Job j : jobs.values()) if (j.finished()) finished++;
+        Iterator<Job> it = jobs.values().iterator();
+        while (finished > MAX_FINISHED_JOBS && it.hasNext()) {
+            if (it.next().finished()) {
+                it.remove();
+                finished--;
+            }
+        }
+    }
+
+    /** Progress of {@code jobId} plus the result of every finished ID, or null if the job is unknown. */
+    public Map<String, Object> status(String jobId) {
+        Job job;
+        synchronized (jobs) {
+            job = jobs.get(jobId);
+        }
+        if (job == null) return null;
+        Map<String, Object> out = summary(job);
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (int i = 0; i < job.results.length(); i++) {
+            Map<String, Object> r = job.results.get(i);
+            if (r != null) results.add(r);
+        }
+        out.put("results", results);
+        return out;
+    }
+
+    public Map<String, Object> listJobs() {
+        List<Map<String, Object>> out = new ArrayList<>();
+        synchronized (jobs) {
+            for (Job j : jobs.values()) out.add(summary(j));
+        }
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("count", out.size());
+        response.put("jobs", out);
+        return response;
+    }
+
+    private static Map<String, Object> summary(Job job) {
+        int done = job.done.get();
+        long end = job.finishNanos != 0 ? job.finishNanos : System.nanoTime();
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("job_id", job.id);
+        m.put("status", job.finishedAt != null ? "done" : done == 0 ? "queued" : "running");
+        m.put("total", job.bookIds.length);
+        m.put("completed", done);
+        m.put("downloaded", job.downloaded.get());
+        m.put("unchanged", job.unchanged.get());
+        m.put("failed", job.failed.get());
+        m.put("elapsed_ms", (end - job.startNanos) / 1_000_000L);
+        m.put("created_at", job.createdAt);
+        if (job.finishedAt != null) m.put("finished_at", job.finishedAt);
+        return m;
+    }
+}
@@ -2,23 +2,30 @@ package org.ulpgc.bd.ingestion.service;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import org.ulpgc.bd.ingestion.io.DatalakeCatalog;
 import org.ulpgc.bd.ingestion.io.HttpDownloader;
+import org.ulpgc.bd.ingestion.io.IngestQueue;
+import org.ulpgc.bd.ingestion.io.UrlCache;
+import org.ulpgc.bd.ingestion.model.CatalogEntry;
+import org.ulpgc.bd.ingestion.model.IngestEvent;
 import org.ulpgc.bd.ingestion.model.Meta;
 import org.ulpgc.bd.ingestion.parser.GutenbergMetaExtractor;
 import org.ulpgc.bd.ingestion.parser.GutenbergSplitter;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.net.URL;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
-import java.security.MessageDigest;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.TimeUnit;
 
 public class IngestionService {
 
@@ -27,70 +34,145 @@ public class IngestionService {
     private final HttpDownloader downloader;
     private final GutenbergSplitter splitter;
     private final GutenbergMetaExtractor extractor;
+    private final DatalakeCatalog catalog;
+    private final UrlCache urls;
+    private final IngestQueue queue;
+    private final long maxQueueLag;
     private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
 
     public IngestionService(Path datalake, String parserVersion, HttpDownloader downloader, GutenbergSplitter splitter, GutenbergMetaExtractor extractor) {
+        this(datalake, parserVersion, downloader, splitter, extractor, TimeUnit.DAYS.toMillis(30), 10_000);
+    }
+
+    /**
+     * Resolved book URLs are reused for {@code urlTtlMillis} before being looked up again. Once the
+     * indexer is {@code maxQueueLag} events behind on the ingest queue, {@link #queueFull} holds off
+     * new downloads.
+     */
+    public IngestionService(Path datalake, String parserVersion, HttpDownloader downloader, GutenbergSplitter splitter, GutenbergMetaExtractor extractor,
+                            long urlTtlMillis, long maxQueueLag) {
         this.datalake = datalake;
         this.parserVersion = parserVersion;
         this.downloader = downloader;
         this.splitter = splitter;
         this.extractor = extractor;
+        this.maxQueueLag = maxQueueLag;
+        try {
+            this.catalog = new DatalakeCatalog(datalake);
+            this.urls = new UrlCache(datalake, urlTtlMillis);
+            this.queue = new IngestQueue(datalake);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
+    /**
+     * Downloads {@code bookId} and stores its header and body under the current {@code yyyyMMdd/HH}
+     * directory. A book that is already stored is fetched conditionally from its cataloged URL, and
+     * nothing is written when the source answers 304 or the new body has the same checksum; the
+     * result then has status {@code unchanged}.
+     */
     public Map<String, Object> ingest(int bookId) {
         Map<String, Object> response = new LinkedHashMap<>();
         long t0 = System.nanoTime();
         try {
-            String date = LocalDate.now().format(DateTimeFormatter.BASIC_ISO_DATE);
-            String hour = String.format("%02d", LocalTime.now().getHour());
-            Path dir = datalake.resolve(date).resolve(hour);
-            Files.createDirectories(dir);
+            CatalogEntry prev = catalog.get(bookId);
+            if (prev != null && !stored(prev)) prev = null;
+            Path textPath = datalake.resolve(bookId + "_text." + Thread.currentThread().getId() + ".tmp");
 
-            URL url = downloader.findGutenbergTextURL(bookId);
-            if (url == null) throw new IOException("No accessible plain-text URL found for bookId " + bookId);
-
-            long t1 = System.nanoTime();
-            HttpDownloader.FetchResult fr = downloader.fetchTextWithInfo(url);
-            long t2 = System.nanoTime();
-
-            GutenbergSplitter.Markers markers = splitter.findMarkers(fr.text);
-            String body = splitter.sliceBody(fr.text, markers);
-            Meta meta = extractor.extract(fr.text, markers);
-
-            Path headerPath = dir.resolve(bookId + "_header.txt");
-            Path bodyPath = dir.resolve(bookId + "_body.txt");
+            URL url = null;
+            long t1 = t0;
+            HttpDownloader.StreamResult<GutenbergSplitter.Split> fr = null;
+            long t2;
+            try {
+                // cached URL first, then the likeliest pattern, then probe the rest; only a 404 moves on
+                Set<String> missed = new HashSet<>();
+                String cached = urls.get(bookId);
+                if (cached == null && prev != null && prev.source_url != null && !prev.source_url.isEmpty()) cached = prev.source_url;
+                if (cached != null) {
+                    url = new URL(cached);
+                    t1 = System.nanoTime();
+                    fr = tryDownload(url, prev, textPath);
+                    if (fr == null) {
+                        missed.add(cached);
+                        urls.remove(bookId);
+                    }
+                }
+                if (fr == null) {
+                    url = new URL(HttpDownloader.candidateUrl(urls.likeliestPattern(), bookId));
+                    if (!missed.contains(url.toString())) {
+                        t1 = System.nanoTime();
+                        fr = tryDownload(url, prev, textPath);
+                        if (fr == null) missed.add(url.toString());
+                    }
+                }
+                if (fr == null) {
+                    url = downloader.findGutenbergTextURL(bookId, missed);
+                    if (url == null) throw new IOException("No accessible plain-text URL found for bookId " + bookId);
+                    t1 = System.nanoTime();
+                    fr = download(url, prev, textPath);
+                }
+                t2 = System.nanoTime();
+                if (!url.toString().equals(urls.get(bookId))) urls.put(bookId, url.toString());
 
-            String header = "Title: " + meta.title + System.lineSeparator()
-                    + "Author: " + meta.author + System.lineSeparator()
-                    + "Language: " + meta.language;
+                if (fr.notModified()) {
+                    return unchanged(response, bookId, prev, url, fr, "not modified", t0, t1, t2);
+                }
+                String sha256 = hex(fr.value.bodySha256);
+                if (prev != null && sha256.equals(prev.checksum_sha256) && parserVersion.equals(prev.parser_version)) {
+                    if (!Objects.equals(fr.etag, prev.etag) || !Objects.equals(fr.lastModified, prev.last_modified)
+                            || !url.toString().equals(prev.source_url)) {
+                        CatalogEntry e = new CatalogEntry(bookId, prev.dir, prev.checksum_sha256, prev.size_bytes, prev.ingested_at);
+                        e.parser_version = prev.parser_version;
+                        e.source_url = url.toString();
+                        e.etag = fr.etag;
+                        e.last_modified = fr.lastModified;
+                        catalog.record(e);
+                    }
+                    return unchanged(response, bookId, prev, url, fr, "same checksum", t0, t1, t2);
+                }
 
-            writeAtomic(headerPath, header);
-            writeAtomic(bodyPath, body);
+                String date = LocalDate.now().format(DateTimeFormatter.BASIC_ISO_DATE);
+                String hour = String.format("%02d", LocalTime.now().getHour());
+                Path dir = datalake.resolve(date).resolve(hour);
+                Meta meta = extractor.extract(fr.value.metaRegion);
 
-            String sha256 = Files.exists(bodyPath) ? sha256Hex(Files.readAllBytes(bodyPath)) : "";
+                String header = "Title: " + meta.title + System.lineSeparator()
+                        + "Author: " + meta.author + System.lineSeparator()
+                        + "Language: " + meta.language;
 
-            persistMetaJson(dir, bookId, meta, url.toString(), sha256, parserVersion);
+                writeAtomic(dir.resolve(bookId + "_header.txt"), header);
+                Path bodyPath = dir.resolve(bookId + "_body.txt");
+                copyRange(textPath, fr.value.bodyStart, fr.value.bodyEnd, bodyPath);
 
-            long t3 = System.nanoTime();
-            long resolveMs = (t1 - t0) / 1_000_000L;
-            long downloadMs = (t2 - t1) / 1_000_000L;
-            long parseMs = (t3 - t2) / 1_000_000L;
+                persistMetaJson(dir, bookId, meta, url.toString(), sha256, parserVersion);
+                CatalogEntry entry = new CatalogEntry(bookId, date + "/" + hour, sha256, Files.size(bodyPath), LocalDateTime.now().toString());
+                entry.parser_version = parserVersion;
+                entry.source_url = url.toString();
+                entry.etag = fr.etag;
+                entry.last_modified = fr.lastModified;
+                catalog.record(entry);
+                queue.publish(new IngestEvent(bookId, entry.dir, sha256, parserVersion, entry.ingested_at));
 
-            response.put("book_id", bookId);
-            response.put("status", "downloaded");
-            response.put("path", dir.toString());
-            response.put("source_url", url.toString());
-            response.put("http_status", fr.status);
-            response.put("size_bytes", fr.sizeBytes);
-            response.put("resolve_ms", resolveMs);
-            response.put("download_ms", downloadMs);
-            response.put("parse_ms", parseMs);
-            response.put("title", meta.title);
-            response.put("author", meta.author);
-            response.put("language", meta.language);
-            response.put("checksum_sha256", sha256);
-            response.put("parser_version", parserVersion);
-            response.put("ingested_at", LocalDateTime.now().toString());
+                long t3 = System.nanoTime();
+                response.put("book_id", bookId);
+                response.put("status", "downloaded");
+                response.put("path", dir.toString());
+                response.put("source_url", url.toString());
+                response.put("http_status", fr.status);
+                response.put("size_bytes", fr.sizeBytes);
+                response.put("resolve_ms", (t1 - t0) / 1_000_000L);
+                response.put("download_ms", (t2 - t1) / 1_000_000L);
+                response.put("parse_ms", (t3 - t2) / 1_000_000L);
+                response.put("title", meta.title);
+                response.put("author", meta.author);
+                response.put("language", meta.language);
+                response.put("checksum_sha256", sha256);
+                response.put("parser_version", parserVersion);
+                response.put("ingested_at", LocalDateTime.now().toString());
+            } finally {
+                Files.deleteIfExists(textPath);
+            }
 
             persistIngestionLog(response);
 
@@ -103,58 +185,95 @@ public class IngestionService {
         return response;
     }
 
-    public Map<String, Object> checkStatus(int bookId) {
-        Map<String, Object> response = new LinkedHashMap<>();
+    /** Conditional on {@code prev}'s validators when it was downloaded from the same URL. */
+    private HttpDownloader.StreamResult<GutenbergSplitter.Split> download(URL url, CatalogEntry prev, Path textPath) throws IOException {
+        boolean same = prev != null && url.toString().equals(prev.source_url);
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(textPath), 1 << 16)) {
+            return downloader.streamText(url, same ? prev.etag : null, same ? prev.last_modified : null, text -> splitter.split(text, out));
+        }
+    }
+
+    /** Like {@link #download}, but null when the URL does not exist. */
+    private HttpDownloader.StreamResult<GutenbergSplitter.Split> tryDownload(URL url, CatalogEntry prev, Path textPath) throws IOException {
         try {
-            boolean headerFound = false;
-            boolean bodyFound = false;
-            if (Files.exists(datalake)) {
-                try (var stream = Files.walk(datalake)) {
-                    for (Path p : (Iterable<Path>) stream::iterator) {
-                        String fn = p.getFileName() != null ? p.getFileName().toString() : "";
-                        if (fn.equals(bookId + "_header.txt")) headerFound = true;
-                        if (fn.equals(bookId + "_body.txt")) bodyFound = true;
-                        if (headerFound && bodyFound) break;
-                    }
-                }
-            }
-            response.put("book_id", bookId);
-            response.put("header", headerFound ? "present" : "missing");
-            response.put("body", bodyFound ? "present" : "missing");
-            response.put("status", bodyFound ? "available" : "not found");
-        } catch (IOException e) {
-            response.put("status", "error");
-            response.put("message", e.getMessage());
+            return download(url, prev, textPath);
+        } catch (HttpDownloader.HttpStatusException e) {
+            if (e.notFound()) return null;
+            throw e;
         }
+    }
+
+    private Map<String, Object> unchanged(Map<String, Object> response, int bookId, CatalogEntry prev, URL url,
+                                          HttpDownloader.StreamResult<?> fr, String reason, long t0, long t1, long t2) {
+        response.put("book_id", bookId);
+        response.put("status", "unchanged");
+        response.put("reason", reason);
+        response.put("path", datalake.resolve(prev.dir).toString());
+        response.put("source_url", url.toString());
+        response.put("http_status", fr.status);
+        response.put("size_bytes", fr.sizeBytes);
+        response.put("resolve_ms", (t1 - t0) / 1_000_000L);
+        response.put("download_ms", (t2 - t1) / 1_000_000L);
+        response.put("checksum_sha256", prev.checksum_sha256);
+        response.put("parser_version", prev.parser_version);
+        response.put("checked_at", LocalDateTime.now().toString());
+        persistIngestionLog(response);
         return response;
     }
 
-    public Map<String, Object> listBooks() {
-        Map<String, Object> response = new LinkedHashMap<>();
-        Set<Integer> ids = new HashSet<>();
+    private boolean stored(CatalogEntry e) {
+        Path dir = datalake.resolve(e.dir);
+        return Files.exists(dir.resolve(e.book_id + "_header.txt")) && Files.exists(dir.resolve(e.book_id + "_body.txt"));
+    }
+
+    /** True while the slowest queue consumer is {@code maxQueueLag} or more events behind. */
+    public boolean queueFull() {
         try {
-            if (Files.exists(datalake)) {
-                try (var stream = Files.walk(datalake)) {
-                    for (Path p : (Iterable<Path>) stream::iterator) {
-                        String fn = p.getFileName() != null ? p.getFileName().toString() : "";
-                        Matcher m1 = Pattern.compile("^(\\d+)_header\\.txt$").matcher(fn);
-                        Matcher m2 = Pattern.compile("^(\\d+)_body\\.txt$").matcher(fn);
-                        if (m1.matches()) ids.add(Integer.parseInt(m1.group(1)));
-                        else if (m2.matches()) ids.add(Integer.parseInt(m2.group(1)));
-                    }
-                }
-            }
-            List<Integer> out = new ArrayList<>(ids);
-            Collections.sort(out);
-            response.put("count", out.size());
-            response.put("books", out);
+            return queue.lag() >= maxQueueLag;
         } catch (IOException e) {
-            response.put("status", "error");
-            response.put("message", e.getMessage());
+            return false;
+        }
+    }
+
+    public Map<String, Object> queueStats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        try {
+            m.putAll(queue.stats());
+        } catch (IOException e) {
+            m.put("status", "error");
+            m.put("message", e.getMessage());
+        }
+        m.put("max_lag", maxQueueLag);
+        m.put("full", queueFull());
+        return m;
+    }
+
+    public Map<String, Object> checkStatus(int bookId) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        CatalogEntry e = catalog.get(bookId);
+        Path dir = e == null ? null : datalake.resolve(e.dir);
+        boolean headerFound = dir != null && Files.exists(dir.resolve(bookId + "_header.txt"));
+        boolean bodyFound = dir != null && Files.exists(dir.resolve(bookId + "_body.txt"));
+        response.put("book_id", bookId);
+        response.put("header", headerFound ? "present" : "missing");
+        response.put("body", bodyFound ? "present" : "missing");
+        response.put("status", bodyFound ? "available" : "not found");
+        if (e != null) {
+            response.put("path", dir.toString());
+            response.put("checksum_sha256", e.checksum_sha256);
+            response.put("ingested_at", e.ingested_at);
         }
         return response;
     }
 
+    public Map<String, Object> listBooks() {
+        Map<String, Object> response = new LinkedHashMap<>();
+        List<Integer> out = catalog.bookIds();
+        response.put("count", out.size());
+        response.put("books", out);
+        return response;
+    }
+
     private void persistMetaJson(Path dir, int bookId, Meta meta, String sourceUrl, String sha256, String parserVersion) {
         Map<String, Object> m = new LinkedHashMap<>();
         m.put("book_id", bookId);
@@ -171,7 +290,7 @@ public class IngestionService {
         } catch (IOException ignored) {}
     }
 
-    private void persistIngestionLog(Map<String, Object> payload) {
+    private synchronized void persistIngestionLog(Map<String, Object> payload) {
         try {
             Files.createDirectories(datalake);
             Path log = datalake.resolve("ingestion.log");
@@ -182,20 +301,36 @@ public class IngestionService {
 
     private static void writeAtomic(Path target, String content) throws IOException {
         Files.createDirectories(target.getParent());
-        Path tmp = target.resolveSibling(target.getFileName().toString() + ".tmp");
+        // per-thread name: batch workers may write the same book concurrently
+        Path tmp = target.resolveSibling(target.getFileName().toString() + "." + Thread.currentThread().getId() + ".tmp");
         Files.writeString(tmp, content, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
         Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
     }
 
-    private static String sha256Hex(byte[] data) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            byte[] d = md.digest(data);
-            StringBuilder sb = new StringBuilder();
-            for (byte b : d) sb.append(String.format("%02x", b));
-            return sb.toString();
-        } catch (Exception e) {
-            return "";
+    /** Writes bytes {@code [from, to)} of {@code source} to {@code target} atomically. */
+    private static void copyRange(Path source, long from, long to, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        Path tmp = target.resolveSibling(target.getFileName().toString() + "." + Thread.currentThread().getId() + ".tmp");
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long pos = from;
+            while (pos < to) {
+                long n = in.transferTo(pos, to - pos, out);
+                if (n <= 0) break;
+                pos += n;
+            }
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static String hex(byte[] d) {
+        char[] out = new char[d.length * 2];
+        for (int i = 0; i < d.length; i++) {
+            out[2 * i] = HEX[(d[i] >> 4) & 0xf];
+            out[2 * i + 1] = HEX[d[i] & 0xf];
         }
+        return new String(out);
     }
 }
@@ -2,11 +2,55 @@ package org.ulpgc.bd.search;
 
 import io.javalin.Javalin;
 import org.ulpgc.bd.search.api.SearchHttpApi;
+import org.ulpgc.bd.search.service.SearchService;
+import org.ulpgc.bd.search.service.ShardedSearch;
+
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 
 public class SearchServiceApp {
     public static void main(String[] args) {
-        Javalin app = Javalin.create(config -> config.http.defaultContentType = "application/json").start(7003);
-        SearchHttpApi.register(app);
-        System.out.println("Search Service running on http://localhost:7003");
+        Path moduleRoot = detectModuleRoot(SearchServiceApp.class);
+        Path repoRoot = moduleRoot.getParent() != null ? moduleRoot.getParent() : moduleRoot;
+        String configured = System.getProperty("search.datamarts");
+        Path datamarts = (configured != null ? Paths.get(configured) : repoRoot.resolve("indexing-service").resolve("datamarts"))
+                .toAbsolutePath().normalize();
+
+        long cacheBytes = Long.getLong("search.cache.bytes", SearchService.DEFAULT_CACHE_BYTES);
+        SearchService service = new SearchService(datamarts, cacheBytes);
+        int port = Integer.getInteger("search.port", 7003);
+
+        // coordinator: -Dsearch.shards=http://localhost:7013,http://localhost:7023 (one search node per index node)
+        ShardedSearch shards = null;
+        List<String> shardUrls = new ArrayList<>();
+        for (String u : System.getProperty("search.shards", "").split(",")) if (!u.isBlank()) shardUrls.add(u.trim());
+        if (!shardUrls.isEmpty()) {
+            shards = new ShardedSearch(shardUrls, Duration.ofMillis(Long.getLong("search.shards.timeout.ms", 5000)));
+        }
+
+        Javalin app = Javalin.create(config -> config.http.defaultContentType = "application/json").start(port);
+        SearchHttpApi.register(app, service, shards);
+        System.out.println("Search Service running on http://localhost:" + port + " datamarts=" + datamarts
+                + (shards == null ? "" : " shards=" + shards.shards()));
+    }
+
+    private static Path detectModuleRoot(Class<?> anchor) {
+        try {
+            URI uri = anchor.getProtectionDomain().getCodeSource().getLocation().toURI();
+            Path p = Paths.get(uri);
+            if (Files.isRegularFile(p)) p = p.getParent();
+            String name = p.getFileName() != null ? p.getFileName().toString() : "";
+            if (name.equals("classes") || name.equals("test-classes")) p = p.getParent();
+            name = p.getFileName() != null ? p.getFileName().toString() : "";
+            if (name.equals("target") || name.equals("build")) p = p.getParent();
+            return p.toAbsolutePath().normalize();
+        } catch (Exception e) {
+            return Paths.get(".").toAbsolutePath().normalize();
+        }
     }
-}
\ No newline at end of file
+}
@@ -3,35 +3,127 @@ package org.ulpgc.bd.search.api;
 import io.javalin.Javalin;
 import io.javalin.http.Context;
 import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import org.ulpgc.bd.search.model.SearchPage;
+import org.ulpgc.bd.search.model.ShardQuery;
 import org.ulpgc.bd.search.service.SearchService;
+import org.ulpgc.bd.search.service.ShardedSearch;
+import java.io.IOException;
 import java.util.*;
 
 public class SearchHttpApi {
     private static final Gson gson = new Gson();
+    private static final int DEFAULT_K = 10;
+    private static final int MAX_K = 1000;
 
-    public static void register(Javalin app) {
+    public static void register(Javalin app, SearchService service) {
+        register(app, service, null);
+    }
+
+    /**
+     * With {@code shards}, {@code /search} fans out to them instead of reading the local index.
+     * The {@code /search/shard} routes always answer for the local index, as one shard.
+     */
+    public static void register(Javalin app, SearchService service, ShardedSearch shards) {
         app.get("/status", ctx -> ctx.result(gson.toJson(Map.of("service", "search-service", "status", "running"))));
-        app.get("/search", SearchHttpApi::handleSearch);
+        app.get("/search", ctx -> handleSearch(ctx, service, shards));
+        app.get("/search/cache", ctx -> ctx.result(gson.toJson(service.cacheStats())));
+        app.post("/search/shard/stats", ctx -> {
+            ShardQuery sq = shardQuery(ctx);
+            if (sq == null) return;
+            try {
+                ctx.result(gson.toJson(service.termStats(sq.q)));
+            } catch (IllegalArgumentException e) {
+                badQuery(ctx, e);
+            } catch (IOException e) {
+                ctx.status(500).result(gson.toJson(Map.of("status", "error", "message", String.valueOf(e.getMessage()))));
+            }
+        });
+        app.post("/search/shard", ctx -> {
+            ShardQuery sq = shardQuery(ctx);
+            if (sq == null) return;
+            List<String> facets = sq.facets == null ? List.of() : sq.facets;
+            int facetSize = sq.facet_size > 0 ? sq.facet_size : SearchService.FACET_SIZE;
+            int k = Math.max(1, Math.min(2 * MAX_K, sq.k));
+            try {
+                ctx.result(gson.toJson(service.page(sq.q, sq.author, sq.language, sq.year, k, 0, facets, sq.stats, facetSize)));
+            } catch (IllegalArgumentException e) {
+                badQuery(ctx, e);
+            }
+        });
+    }
+
+    private static ShardQuery shardQuery(Context ctx) {
+        try {
+            ShardQuery sq = gson.fromJson(ctx.body(), ShardQuery.class);
+            if (sq != null) return sq;
+        } catch (JsonParseException ignored) {
+        }
+        ctx.status(400).result(gson.toJson(Map.of("status", "error", "message", "expected a JSON shard query")));
+        return null;
     }
 
-    private static void handleSearch(Context ctx) {
+    private static void handleSearch(Context ctx, SearchService service, ShardedSearch shards) {
         String q = ctx.queryParam("q");
         String author = ctx.queryParam("author");
         String language = ctx.queryParam("language");
         String year = ctx.queryParam("year");
+        int k = intParam(ctx, "k", DEFAULT_K, 1, MAX_K);
+        int offset = intParam(ctx, "offset", 0, 0, MAX_K);
+
+        List<String> facets = facetsParam(ctx.queryParam("facets"));
 
-        List<Map<String, Object>> results = SearchService.search(q, author, language, year);
+        SearchPage page;
+        try {
+            page = shards != null
+                    ? shards.page(q, author, language, year, k, offset, facets)
+                    : service.page(q, author, language, year, k, offset, facets);
+        } catch (IllegalArgumentException e) {
+            badQuery(ctx, e);
+            return;
+        }
 
-        Map<String, Object> response = Map.of(
-                "query", q == null ? "" : q,
-                "filters", buildFilters(author, language, year),
-                "count", results.size(),
-                "results", results
-        );
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("query", q == null ? "" : q);
+        response.put("filters", buildFilters(author, language, year));
+        response.put("k", k);
+        response.put("offset", offset);
+        response.put("count", page.results.size());
+        response.put("results", page.results);
+        if (page.facets != null) response.put("facets", page.facets);
+        if (page.shards != null) response.put("shards", page.shards);
 
         ctx.result(gson.toJson(response));
     }
 
+    /** A query the parser or scorer rejects is the client's error, not a 500. */
+    private static void badQuery(Context ctx, IllegalArgumentException e) {
+        ctx.status(400).result(gson.toJson(Map.of("status", "error", "message", String.valueOf(e.getMessage()))));
+    }
+
+    private static int intParam(Context ctx, String name, int def, int min, int max) {
+        String v = ctx.queryParam(name);
+        if (v == null) return def;
+        try {
+            return Math.max(min, Math.min(max, Integer.parseInt(v.trim())));
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
+
+    /** "true" or "all" asks for every facet; otherwise a comma-separated list, unknown names ignored. */
+    private static List<String> facetsParam(String v) {
+        if (v == null || v.isBlank() || v.equalsIgnoreCase("false")) return List.of();
+        if (v.equalsIgnoreCase("true") || v.equalsIgnoreCase("all")) return SearchService.FACETS;
+        List<String> out = new ArrayList<>();
+        for (String f : SearchService.FACETS) {
+            for (String name : v.split(",")) {
+                if (name.trim().equalsIgnoreCase(f) && !out.contains(f)) out.add(f);
+            }
+        }
+        return out;
+    }
+
     private static Map<String, Object> buildFilters(String author, String language, String year) {
         Map<String, Object> filters = new LinkedHashMap<>();
         if (author != null) filters.put("author", author);
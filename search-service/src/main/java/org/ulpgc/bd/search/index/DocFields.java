@@ -0,0 +1,223 @@
+package org.ulpgc.bd.search.index;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Memory-mapped view of a segment's {@code .fields} columns (see the indexer's copy of this class
+ * for the layout). Author and language are dictionary-encoded, so a filter compares the small
+ * dictionary once and then scans a fixed-width int column; the resulting per-value bitsets are
+ * cached, since segments never change. Facet counts use one {@link FacetBitmap} per value of a
+ * column, built on first use.
+ */
+public final class DocFields {
+    private static final int FOOTER_BYTES = 3 * 4 + 4 * 8;
+    private static final int MAX_CACHED = 1024;
+
+    private final IndexInput in;
+    private final int docCount;
+    private final String[] authors;
+    private final String[] languages;
+    private final long titlesOffset;
+    private final long columnsOffset;
+    private final Map<String, BitSet> cache = new ConcurrentHashMap<>();
+    private final Map<String, Facet> facets = new ConcurrentHashMap<>();
+
+    private DocFields(IndexInput in, int docCount, String[] authors, String[] languages, long titlesOffset, long columnsOffset) {
+        this.in = in;
+        this.docCount = docCount;
+        this.authors = authors;
+        this.languages = languages;
+        this.titlesOffset = titlesOffset;
+        this.columnsOffset = columnsOffset;
+    }
+
+    /** Maps the fields file, or returns null if the segment predates it. */
+    static DocFields open(Path file, int docCount) throws IOException {
+        if (!Files.exists(file)) return null;
+        IndexInput in;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            in = IndexInput.map(ch);
+        }
+        if (in.readInt() != SegmentFormat.MAGIC_FIELDS) throw new IOException("corrupt segment file " + file);
+        int version = in.readInt();
+        if (version != SegmentFormat.VERSION) throw new IOException("unsupported segment version " + version + " in " + file);
+        in.seek(in.length() - FOOTER_BYTES);
+        int docs = in.readInt();
+        int authorCount = in.readInt();
+        int languageCount = in.readInt();
+        long authorsOffset = in.readLong();
+        long languagesOffset = in.readLong();
+        long titlesOffset = in.readLong();
+        long columnsOffset = in.readLong();
+        if (docs != docCount) throw new IOException("fields file " + file + " has " + docs + " docs, expected " + docCount);
+        return new DocFields(in, docs, readStrings(in, authorsOffset, authorCount), readStrings(in, languagesOffset, languageCount),
+                titlesOffset, columnsOffset);
+    }
+
+    private static String[] readStrings(IndexInput in, long offset, int count) {
+        String[] out = new String[count];
+        in.seek(offset);
+        byte[] bytes = new byte[64];
+        for (int i = 0; i < count; i++) {
+            int len = in.readVInt();
+            if (bytes.length < len) bytes = new byte[Math.max(len, bytes.length * 2)];
+            in.readBytes(bytes, 0, len);
+            out[i] = new String(bytes, 0, len, StandardCharsets.UTF_8);
+        }
+        return out;
+    }
+
+    public String title(int ord) {
+        long starts = columnsOffset + 12L * docCount;
+        long from = in.longAt(starts + 8L * ord);
+        long to = in.longAt(starts + 8L * (ord + 1));
+        byte[] b = new byte[(int) (to - from)];
+        IndexInput t = in.copy();
+        t.seek(titlesOffset + from);
+        t.readBytes(b, 0, b.length);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    public String author(int ord) {
+        return authors[authorOrd(ord)];
+    }
+
+    public String language(int ord) {
+        return languages[languageOrd(ord)];
+    }
+
+    public int year(int ord) {
+        return in.intAt(columnsOffset + 4L * (2 * docCount + ord));
+    }
+
+    private int authorOrd(int ord) {
+        return in.intAt(columnsOffset + 4L * ord);
+    }
+
+    private int languageOrd(int ord) {
+        return in.intAt(columnsOffset + 4L * (docCount + ord));
+    }
+
+    /** Docs whose author equals {@code value}, ignoring case. */
+    public BitSet authorIs(String value) {
+        return cached("a:" + value.toLowerCase(Locale.ROOT), () -> select(authors, value, 0));
+    }
+
+    /** Docs whose language equals {@code value}, ignoring case. */
+    public BitSet languageIs(String value) {
+        return cached("l:" + value.toLowerCase(Locale.ROOT), () -> select(languages, value, docCount));
+    }
+
+    public BitSet yearIs(int year) {
+        return cached("y:" + year, () -> {
+            BitSet bits = new BitSet(docCount);
+            long base = columnsOffset + 8L * docCount;
+            for (int ord = 0; ord < docCount; ord++) if (in.intAt(base + 4L * ord) == year) bits.set(ord);
+            return bits;
+        });
+    }
+
+    private BitSet select(String[] dictionary, String value, int column) {
+        boolean[] wanted = new boolean[dictionary.length];
+        boolean any = false;
+        for (int i = 0; i < dictionary.length; i++) {
+            if (dictionary[i].equalsIgnoreCase(value)) wanted[i] = any = true;
+        }
+        BitSet bits = new BitSet(docCount);
+        if (!any) return bits;
+        long base = columnsOffset + 4L * column;
+        for (int ord = 0; ord < docCount; ord++) if (wanted[in.intAt(base + 4L * ord)]) bits.set(ord);
+        return bits;
+    }
+
+    /**
+     * Adds to {@code out}, per value of {@code field} ("author", "language" or "year"), how many of
+     * the {@code hits} docs have it. Empty values and year 0 are not counted.
+     */
+    public void count(String field, BitSet hits, Map<String, Integer> out) {
+        Facet facet = facets.computeIfAbsent(field, this::facet);
+        int[] counts = new int[facet.values.length];
+        int hitCount = hits.cardinality();
+        if (hitCount == 0) return;
+        if (hitCount < facet.values.length || (long) hitCount * 16 < docCount) {
+            // few hits: reading their column entries beats touching every value's bitmap
+            for (int ord = hits.nextSetBit(0); ord >= 0 && ord < docCount; ord = hits.nextSetBit(ord + 1)) counts[facet.column[ord]]++;
+        } else {
+            long[] words = hits.toLongArray();
+            for (int v = 0; v < counts.length; v++) counts[v] = facet.bitmaps[v].andCardinality(words);
+        }
+        for (int v = 0; v < counts.length; v++) {
+            if (counts[v] > 0 && v != facet.skip) out.merge(facet.values[v], counts[v], Integer::sum);
+        }
+    }
+
+    private Facet facet(String field) {
+        int[] column = new int[docCount];
+        String[] values;
+        switch (field) {
+            case "author" -> {
+                for (int ord = 0; ord < docCount; ord++) column[ord] = authorOrd(ord);
+                values = authors;
+            }
+            case "language" -> {
+                for (int ord = 0; ord < docCount; ord++) column[ord] = languageOrd(ord);
+                values = languages;
+            }
+            case "year" -> {
+                int[] years = new int[docCount];
+                for (int ord = 0; ord < docCount; ord++) years[ord] = year(ord);
+                int[] distinct = Arrays.stream(years).distinct().sorted().toArray();
+                for (int ord = 0; ord < docCount; ord++) column[ord] = Arrays.binarySearch(distinct, years[ord]);
+                values = new String[distinct.length];
+                for (int v = 0; v < distinct.length; v++) values[v] = String.valueOf(distinct[v]);
+            }
+            default -> throw new IllegalArgumentException("unknown facet " + field);
+        }
+        int[] sizes = new int[values.length];
+        for (int v : column) sizes[v]++;
+        int[][] ords = new int[values.length][];
+        for (int v = 0; v < values.length; v++) ords[v] = new int[sizes[v]];
+        Arrays.fill(sizes, 0);
+        for (int ord = 0; ord < docCount; ord++) ords[column[ord]][sizes[column[ord]]++] = ord;
+        FacetBitmap[] bitmaps = new FacetBitmap[values.length];
+        for (int v = 0; v < values.length; v++) bitmaps[v] = FacetBitmap.of(ords[v], docCount);
+        // the value written for a missing author, language or year
+        int skip = field.equals("year") ? Arrays.asList(values).indexOf("0") : Arrays.asList(values).indexOf("");
+        return new Facet(values, column, bitmaps, skip);
+    }
+
+    /** Value dictionary, per-doc value index and per-value bitmaps of one column. */
+    private static final class Facet {
+        final String[] values;
+        final int[] column;
+        final FacetBitmap[] bitmaps;
+        final int skip;
+
+        Facet(String[] values, int[] column, FacetBitmap[] bitmaps, int skip) {
+            this.values = values;
+            this.column = column;
+            this.bitmaps = bitmaps;
+            this.skip = skip;
+        }
+    }
+
+    private BitSet cached(String key, Supplier<BitSet> compute) {
+        BitSet bits = cache.get(key);
+        if (bits != null) return bits;
+        bits = compute.get();
+        if (cache.size() >= MAX_CACHED) cache.clear();
+        cache.put(key, bits);
+        return bits;
+    }
+}
@@ -0,0 +1,39 @@
+package org.ulpgc.bd.search.index;
+
+/**
+ * Docs of one segment that share a facet value. As in Roaring bitmaps, the container depends on
+ * density: a sorted ord array while the value is rarer than one doc in 32, a plain word array
+ * otherwise, so neither rare authors nor common languages waste space.
+ */
+final class FacetBitmap {
+    private final int[] ords;
+    private final long[] words;
+
+    private FacetBitmap(int[] ords, long[] words) {
+        this.ords = ords;
+        this.words = words;
+    }
+
+    /** {@code ords} must be ascending. */
+    static FacetBitmap of(int[] ords, int docCount) {
+        if ((long) ords.length * 32 < docCount) return new FacetBitmap(ords, null);
+        long[] words = new long[(docCount + 63) >>> 6];
+        for (int ord : ords) words[ord >>> 6] |= 1L << ord;
+        return new FacetBitmap(null, words);
+    }
+
+    /** Number of docs in both this bitmap and {@code hits} (the words of a {@link java.util.BitSet}). */
+    int andCardinality(long[] hits) {
+        int count = 0;
+        if (words == null) {
+            for (int ord : ords) {
+                int w = ord >>> 6;
+                if (w < hits.length && (hits[w] & (1L << ord)) != 0) count++;
+            }
+        } else {
+            int n = Math.min(words.length, hits.length);
+            for (int i = 0; i < n; i++) count += Long.bitCount(words[i] & hits[i]);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,152 @@
+package org.ulpgc.bd.search.index;
+
+import com.google.gson.Gson;
+import org.ulpgc.bd.search.model.IndexManifest;
+import org.ulpgc.bd.search.model.SegmentInfo;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Point-in-time view of the segments listed in {@code segments.json}. A doc that appears in more
+ * than one segment is only live in the newest of them, mirroring how the indexer resolves updates.
+ */
+public class IndexSnapshot {
+    public static final String MANIFEST = "segments.json";
+    private static final Gson G = new Gson();
+
+    private final long generation;
+    private final List<Leaf> leaves;
+    private final int liveDocs;
+    private final long liveTokens;
+
+    private IndexSnapshot(long generation, List<Leaf> leaves) {
+        this.generation = generation;
+        this.leaves = leaves;
+        int docs = 0;
+        long tokens = 0;
+        for (Leaf l : leaves) {
+            for (int ord = 0; ord < l.reader.docCount(); ord++) {
+                if (l.isLive(ord)) {
+                    docs++;
+                    tokens += l.reader.docLength(ord);
+                }
+            }
+        }
+        this.liveDocs = docs;
+        this.liveTokens = tokens;
+    }
+
+    public static IndexSnapshot empty() {
+        return new IndexSnapshot(-1, List.of());
+    }
+
+    /** Opens the current manifest, reusing readers from {@code previous} for segments it already had. */
+    public static IndexSnapshot open(Path dir, IndexSnapshot previous) throws IOException {
+        Path p = dir.resolve(MANIFEST);
+        if (!Files.exists(p)) return empty();
+        IndexManifest m = G.fromJson(Files.readString(p, StandardCharsets.UTF_8), IndexManifest.class);
+        if (m == null || m.segments == null) return empty();
+        if (m.format_version != SegmentFormat.VERSION) {
+            throw new IOException("unsupported index format " + m.format_version + " in " + p);
+        }
+
+        Map<String, SegmentReader> reuse = new HashMap<>();
+        if (previous != null) for (Leaf l : previous.leaves) reuse.put(l.reader.name(), l.reader);
+
+        List<SegmentReader> readers = new ArrayList<>();
+        for (SegmentInfo s : m.segments) {
+            SegmentReader r = reuse.get(s.name);
+            readers.add(r != null ? r : SegmentReader.open(dir, s.name));
+        }
+
+        Set<Integer> newer = new HashSet<>();
+        Leaf[] leaves = new Leaf[readers.size()];
+        for (int i = readers.size() - 1; i >= 0; i--) {
+            SegmentReader r = readers.get(i);
+            boolean[] live = null;
+            for (int ord = 0; ord < r.docCount(); ord++) {
+                if (newer.contains(r.docId(ord))) {
+                    if (live == null) {
+                        live = new boolean[r.docCount()];
+                        Arrays.fill(live, true);
+                    }
+                    live[ord] = false;
+                }
+            }
+            for (int ord = 0; ord < r.docCount(); ord++) newer.add(r.docId(ord));
+            leaves[i] = new Leaf(r, live);
+        }
+        return new IndexSnapshot(m.generation, List.of(leaves));
+    }
+
+    /** Like {@link #open} but retries when a merge deletes a segment between reading the manifest and mapping it. */
+    public static IndexSnapshot openWithRetry(Path dir, IndexSnapshot previous) throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return open(dir, previous);
+            } catch (NoSuchFileException e) {
+                if (attempt == 4) throw e;
+            }
+        }
+    }
+
+    /** True while {@code segments.json} in {@code dir} still lists this snapshot's generation and segments. */
+    public boolean isCurrent(Path dir) throws IOException {
+        Path p = dir.resolve(MANIFEST);
+        if (!Files.exists(p)) return generation < 0;
+        IndexManifest m = G.fromJson(Files.readString(p, StandardCharsets.UTF_8), IndexManifest.class);
+        if (m == null || m.segments == null) return generation < 0;
+        if (m.generation != generation || m.segments.size() != leaves.size()) return false;
+        for (int i = 0; i < leaves.size(); i++) {
+            if (!m.segments.get(i).name.equals(leaves.get(i).reader.name())) return false;
+        }
+        return true;
+    }
+
+    public long generation() {
+        return generation;
+    }
+
+    public List<Leaf> leaves() {
+        return leaves;
+    }
+
+    public int liveDocs() {
+        return liveDocs;
+    }
+
+    public long liveTokens() {
+        return liveTokens;
+    }
+
+    public static final class Leaf {
+        public final SegmentReader reader;
+        private final boolean[] live;
+        private final BitSet liveBits;
+
+        Leaf(SegmentReader reader, boolean[] live) {
+            this.reader = reader;
+            this.live = live;
+            this.liveBits = new BitSet(reader.docCount());
+            for (int ord = 0; ord < reader.docCount(); ord++) if (live == null || live[ord]) liveBits.set(ord);
+        }
+
+        public boolean isLive(int ord) {
+            return live == null || live[ord];
+        }
+
+        /** Live doc ords; shared, so callers must copy before modifying. */
+        public BitSet liveBits() {
+            return liveBits;
+        }
+
+        public boolean isLiveDoc(int docId) {
+            return live == null || live[reader.docOrd(docId)];
+        }
+    }
+}
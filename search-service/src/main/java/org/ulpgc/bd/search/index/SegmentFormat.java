@@ -0,0 +1,25 @@
+package org.ulpgc.bd.search.index;
+
+public final class SegmentFormat {
+    public static final int MAGIC_TERMS = 0x54524D53;
+    public static final int MAGIC_POSTINGS = 0x504F5354;
+    public static final int MAGIC_DOCS = 0x444F4353;
+    public static final int MAGIC_POSITIONS = 0x504F5349;
+    public static final int MAGIC_FIELDS = 0x464C4453;
+    public static final int VERSION = 2;
+
+    public static final String TERMS_EXT = ".terms";
+    public static final String POSTINGS_EXT = ".postings";
+    public static final String DOCS_EXT = ".docs";
+    public static final String POSITIONS_EXT = ".positions";
+    public static final String FIELDS_EXT = ".fields";
+    public static final String[] EXTENSIONS = {TERMS_EXT, POSTINGS_EXT, DOCS_EXT, POSITIONS_EXT, FIELDS_EXT};
+
+    public static final int TERMS_PER_BLOCK = 16;
+    /** A skip entry is written after every this many postings of a term. */
+    public static final int SKIP_INTERVAL = 128;
+
+    public static final int FLAG_POSITIONS = 1;
+
+    private SegmentFormat() {}
+}
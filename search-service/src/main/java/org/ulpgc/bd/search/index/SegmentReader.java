@@ -0,0 +1,404 @@
+package org.ulpgc.bd.search.index;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Read-only, memory-mapped view of one segment written by the indexing service. Terms are found
+ * by binary search over the first term of every block, then a scan of at most one block. Postings
+ * of long terms carry a skip entry every {@link SegmentFormat#SKIP_INTERVAL} docs, which
+ * {@link PostingsEnum#advance} uses to jump instead of decoding every posting.
+ */
+public class SegmentReader {
+    public static final int NO_MORE_DOCS = Integer.MAX_VALUE;
+
+    private final String name;
+    private final IndexInput terms;
+    private final IndexInput postings;
+    private final IndexInput positions;
+    private final int[] docIds;
+    private final int[] docLengths;
+    private final long totalTokens;
+    private final int termCount;
+    private final long[] blockOffsets;
+    private final String[] blockFirstTerms;
+    private final int minDocLength;
+    private final DocFields fields;
+    private final Map<String, Integer> maxTfs = new ConcurrentHashMap<>();
+
+    private SegmentReader(String name, IndexInput terms, IndexInput postings, IndexInput positions, int[] docIds,
+                          int[] docLengths, long totalTokens, int termCount, long[] blockOffsets, String[] blockFirstTerms,
+                          DocFields fields) {
+        this.name = name;
+        this.terms = terms;
+        this.postings = postings;
+        this.positions = positions;
+        this.docIds = docIds;
+        this.docLengths = docLengths;
+        this.totalTokens = totalTokens;
+        this.termCount = termCount;
+        this.blockOffsets = blockOffsets;
+        this.blockFirstTerms = blockFirstTerms;
+        this.fields = fields;
+        int min = Integer.MAX_VALUE;
+        for (int len : docLengths) min = Math.min(min, len);
+        this.minDocLength = docLengths.length == 0 ? 0 : min;
+    }
+
+    public static SegmentReader open(Path dir, String name) throws IOException {
+        IndexInput docs = map(dir.resolve(name + SegmentFormat.DOCS_EXT), SegmentFormat.MAGIC_DOCS);
+        IndexInput terms = map(dir.resolve(name + SegmentFormat.TERMS_EXT), SegmentFormat.MAGIC_TERMS);
+        IndexInput postings = map(dir.resolve(name + SegmentFormat.POSTINGS_EXT), SegmentFormat.MAGIC_POSTINGS);
+
+        docs.seek(docs.length() - 12);
+        int docCount = docs.readInt();
+        long totalTokens = docs.readLong();
+        int[] ids = new int[docCount];
+        int[] lengths = new int[docCount];
+        docs.seek(8);
+        int doc = 0;
+        for (int i = 0; i < docCount; i++) {
+            doc += docs.readVInt();
+            ids[i] = doc;
+            lengths[i] = docs.readVInt();
+        }
+
+        terms.seek(12);
+        boolean positional = (terms.readInt() & SegmentFormat.FLAG_POSITIONS) != 0;
+        IndexInput positions = positional ? map(dir.resolve(name + SegmentFormat.POSITIONS_EXT), SegmentFormat.MAGIC_POSITIONS) : null;
+        terms.seek(terms.length() - 16);
+        int termCount = terms.readInt();
+        int blockCount = terms.readInt();
+        long blockIndexOffset = terms.readLong();
+        long[] offsets = new long[blockCount];
+        String[] firstTerms = new String[blockCount];
+        terms.seek(blockIndexOffset);
+        for (int b = 0; b < blockCount; b++) offsets[b] = terms.readLong();
+        byte[] bytes = new byte[32];
+        for (int b = 0; b < blockCount; b++) {
+            terms.seek(offsets[b]);
+            int len = terms.readVInt();
+            if (bytes.length < len) bytes = new byte[Math.max(len, bytes.length * 2)];
+            terms.readBytes(bytes, 0, len);
+            firstTerms[b] = new String(bytes, 0, len, StandardCharsets.UTF_8);
+        }
+        DocFields fields = DocFields.open(dir.resolve(name + SegmentFormat.FIELDS_EXT), docCount);
+        return new SegmentReader(name, terms, postings, positions, ids, lengths, totalTokens, termCount, offsets, firstTerms, fields);
+    }
+
+    private static IndexInput map(Path file, int magic) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            IndexInput in = IndexInput.map(ch);
+            if (in.readInt() != magic) throw new IOException("corrupt segment file " + file);
+            int version = in.readInt();
+            if (version != SegmentFormat.VERSION) throw new IOException("unsupported segment version " + version + " in " + file);
+            return in;
+        }
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public int docCount() {
+        return docIds.length;
+    }
+
+    public long totalTokens() {
+        return totalTokens;
+    }
+
+    public int termCount() {
+        return termCount;
+    }
+
+    public boolean hasPositions() {
+        return positions != null;
+    }
+
+    /** Doc metadata columns, or null for a segment written without them. */
+    public DocFields fields() {
+        return fields;
+    }
+
+    public int docId(int ord) {
+        return docIds[ord];
+    }
+
+    public int docLength(int ord) {
+        return docLengths[ord];
+    }
+
+    public int docOrd(int docId) {
+        int i = Arrays.binarySearch(docIds, docId);
+        return i >= 0 ? i : -1;
+    }
+
+    /** Ord of {@code docId} searching forward from {@code fromOrd}; for callers that visit docs in order. */
+    public int docOrd(int docId, int fromOrd) {
+        int lo = fromOrd, step = 1, hi = fromOrd;
+        while (hi < docIds.length && docIds[hi] < docId) {
+            lo = hi + 1;
+            hi += step;
+            step <<= 1;
+        }
+        int i = Arrays.binarySearch(docIds, lo, Math.min(hi + 1, docIds.length), docId);
+        return i >= 0 ? i : -1;
+    }
+
+    public boolean containsDoc(int docId) {
+        return docOrd(docId) >= 0;
+    }
+
+    public int minDocLength() {
+        return minDocLength;
+    }
+
+    /** Largest tf in the term's postings; computed on first use and kept for the segment's lifetime. */
+    public int maxTf(TermInfo info) {
+        return maxTfs.computeIfAbsent(info.term, t -> {
+            PostingsEnum pe = postings(info);
+            int max = 0;
+            while (pe.nextDoc() != NO_MORE_DOCS) max = Math.max(max, pe.tf());
+            return max;
+        });
+    }
+
+    /** Returns the dictionary entry for {@code term}, or null if this segment does not contain it. */
+    public TermInfo seek(String term) {
+        TermsEnum e = terms(term);
+        return term.equals(e.next()) ? e.info() : null;
+    }
+
+    /** Cursor over the dictionary in term order whose first {@link TermsEnum#next} is the first term {@code >= from}. */
+    public TermsEnum terms(String from) {
+        TermsEnum e = new TermsEnum();
+        e.seekCeil(from);
+        return e;
+    }
+
+    public PostingsEnum postings(TermInfo info) {
+        return new PostingsEnum(info);
+    }
+
+    public static final class TermInfo {
+        public final String term;
+        public final int df;
+        final long postingsOffset;
+        final long positionsOffset;
+        final long skipLength;
+
+        TermInfo(String term, int df, long postingsOffset, long positionsOffset, long skipLength) {
+            this.term = term;
+            this.df = df;
+            this.postingsOffset = postingsOffset;
+            this.positionsOffset = positionsOffset;
+            this.skipLength = skipLength;
+        }
+    }
+
+    /**
+     * Forward cursor over the front-coded dictionary. {@link #seekCeil} finds the block by binary
+     * search over block-first terms and scans at most one block, so skipping ahead is cheap.
+     */
+    public final class TermsEnum {
+        private final IndexInput in = terms.copy();
+        private byte[] bytes = new byte[64];
+        private int ord = -1;
+        private int length;
+        private int df;
+        private long offset;
+        private long positionsOffset;
+        private long skipLength;
+        private String term;
+        private boolean pending;
+
+        private TermsEnum() {}
+
+        /** Positions the cursor so that the next call to {@link #next} returns the first term {@code >= target}. */
+        public void seekCeil(String target) {
+            if (term != null && term.compareTo(target) < 0) {
+                int next = ord / SegmentFormat.TERMS_PER_BLOCK + 1;
+                if (next >= blockFirstTerms.length || blockFirstTerms[next].compareTo(target) > 0) {
+                    // the target is further into the current block: keep decoding from here
+                    scanTo(target);
+                    return;
+                }
+            }
+            int lo = 0, hi = blockFirstTerms.length - 1, block = 0;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (blockFirstTerms[mid].compareTo(target) <= 0) {
+                    block = mid;
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            ord = block * SegmentFormat.TERMS_PER_BLOCK - 1;
+            scanTo(target);
+        }
+
+        private void scanTo(String target) {
+            pending = false;
+            while (read() != null) {
+                if (term.compareTo(target) >= 0) {
+                    pending = true;
+                    return;
+                }
+            }
+        }
+
+        /** Returns the next term, or null once the dictionary is exhausted. */
+        public String next() {
+            if (pending) {
+                pending = false;
+                return term;
+            }
+            return read();
+        }
+
+        private String read() {
+            int o = ord + 1;
+            if (o >= termCount) {
+                ord = termCount;
+                return term = null;
+            }
+            if (o % SegmentFormat.TERMS_PER_BLOCK == 0) {
+                in.seek(blockOffsets[o / SegmentFormat.TERMS_PER_BLOCK]);
+                length = in.readVInt();
+                if (bytes.length < length) bytes = Arrays.copyOf(bytes, Math.max(length, bytes.length * 2));
+                in.readBytes(bytes, 0, length);
+                df = in.readVInt();
+                offset = in.readVLong();
+                if (positions != null) positionsOffset = in.readVLong();
+            } else {
+                int shared = in.readVInt();
+                int suffix = in.readVInt();
+                length = shared + suffix;
+                if (bytes.length < length) bytes = Arrays.copyOf(bytes, Math.max(length, bytes.length * 2));
+                in.readBytes(bytes, shared, suffix);
+                df = in.readVInt();
+                offset += in.readVLong();
+                if (positions != null) positionsOffset += in.readVLong();
+            }
+            skipLength = in.readVLong();
+            ord = o;
+            return term = new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+
+        public int df() {
+            return df;
+        }
+
+        public TermInfo info() {
+            return new TermInfo(term, df, offset, positionsOffset, skipLength);
+        }
+    }
+
+    public class PostingsEnum {
+        private final IndexInput in = postings.copy();
+        private final IndexInput pos = positions != null ? positions.copy() : null;
+        private final TermInfo info;
+        private final int df;
+        private int read;
+        private int doc = -1;
+        private int tf;
+        private long positionsPointer;
+        private int positionsLength;
+        private int[] skipDocs;
+        private long[] skipPostings;
+        private long[] skipPositions;
+        private int nextSkip;
+
+        private PostingsEnum(TermInfo info) {
+            this.info = info;
+            this.df = info.df;
+            in.seek(info.postingsOffset);
+            positionsPointer = info.positionsOffset;
+        }
+
+        public int nextDoc() {
+            if (read >= df) return doc = NO_MORE_DOCS;
+            doc = Math.max(doc, 0) + in.readVInt();
+            tf = in.readVInt();
+            if (pos != null) {
+                positionsPointer += positionsLength;
+                positionsLength = in.readVInt();
+            }
+            read++;
+            return doc;
+        }
+
+        public int advance(int target) {
+            if (doc >= target) return doc;
+            if (info.skipLength > 0) {
+                if (skipDocs == null) loadSkips();
+                int k = -1;
+                while (nextSkip < skipDocs.length && skipDocs[nextSkip] < target) k = nextSkip++;
+                if (k >= 0 && (k + 1) * SegmentFormat.SKIP_INTERVAL > read) {
+                    in.seek(skipPostings[k]);
+                    doc = skipDocs[k];
+                    read = (k + 1) * SegmentFormat.SKIP_INTERVAL;
+                    positionsPointer = skipPositions[k];
+                    positionsLength = 0;
+                }
+            }
+            while (doc < target) nextDoc();
+            return doc;
+        }
+
+        private void loadSkips() {
+            int n = (df - 1) / SegmentFormat.SKIP_INTERVAL;
+            skipDocs = new int[n];
+            skipPostings = new long[n];
+            skipPositions = new long[n];
+            IndexInput s = postings.copy();
+            s.seek(info.postingsOffset + info.skipLength);
+            int d = 0;
+            long p = info.postingsOffset, q = info.positionsOffset;
+            for (int i = 0; i < n; i++) {
+                d += s.readVInt();
+                p += s.readVLong();
+                if (pos != null) q += s.readVLong();
+                skipDocs[i] = d;
+                skipPostings[i] = p;
+                skipPositions[i] = q;
+            }
+        }
+
+        /** Decodes the current doc's positions into {@code buf}, growing it if needed. */
+        public int[] positions(int[] buf) {
+            if (buf.length < tf) buf = new int[Math.max(tf, buf.length * 2)];
+            pos.seek(positionsPointer);
+            int p = 0;
+            for (int i = 0; i < tf; i++) {
+                p += pos.readVInt();
+                buf[i] = p;
+            }
+            return buf;
+        }
+
+        public boolean hasPositions() {
+            return pos != null;
+        }
+
+        public int doc() {
+            return doc;
+        }
+
+        public int tf() {
+            return tf;
+        }
+
+        public int cost() {
+            return df;
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package org.ulpgc.bd.search.model;
+
+public class FacetCount {
+    public String value;
+    public int count;
+
+    public FacetCount(String value, int count) {
+        this.value = value;
+        this.count = count;
+    }
+}
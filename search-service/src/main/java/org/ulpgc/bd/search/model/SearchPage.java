@@ -0,0 +1,17 @@
+package org.ulpgc.bd.search.model;
+
+import java.util.List;
+import java.util.Map;
+
+/** One page of results plus, if they were asked for, facet counts over every match. */
+public class SearchPage {
+    public List<SearchResult> results;
+    public Map<String, List<FacetCount>> facets;
+    /** On a sharded search, how many shards were asked and which did not answer; otherwise null. */
+    public Map<String, Object> shards;
+
+    public SearchPage(List<SearchResult> results, Map<String, List<FacetCount>> facets) {
+        this.results = results;
+        this.facets = facets;
+    }
+}
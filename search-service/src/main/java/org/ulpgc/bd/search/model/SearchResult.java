@@ -6,6 +6,7 @@ public class SearchResult {
     public String author;
     public String language;
     public int year;
+    public float score;
 
     public SearchResult(int book_id, String title, String author, String language, int year) {
         this.book_id = book_id;
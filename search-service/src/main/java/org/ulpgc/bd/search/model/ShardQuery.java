@@ -0,0 +1,17 @@
+package org.ulpgc.bd.search.model;
+
+import org.ulpgc.bd.search.query.CollectionStats;
+
+import java.util.List;
+
+/** Body of the coordinator's calls to a shard; {@code stats} is only set on the scoring round. */
+public class ShardQuery {
+    public String q;
+    public String author;
+    public String language;
+    public String year;
+    public int k;
+    public List<String> facets;
+    public int facet_size;
+    public CollectionStats stats;
+}
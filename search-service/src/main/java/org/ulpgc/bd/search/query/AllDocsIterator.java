@@ -0,0 +1,35 @@
+package org.ulpgc.bd.search.query;
+
+import org.ulpgc.bd.search.index.SegmentReader;
+
+public final class AllDocsIterator implements DocIterator {
+    private final SegmentReader reader;
+    private int ord = -1;
+    private int doc = -1;
+
+    public AllDocsIterator(SegmentReader reader) {
+        this.reader = reader;
+    }
+
+    @Override
+    public int doc() {
+        return doc;
+    }
+
+    @Override
+    public int nextDoc() {
+        ord++;
+        return doc = ord < reader.docCount() ? reader.docId(ord) : NO_MORE_DOCS;
+    }
+
+    @Override
+    public int advance(int target) {
+        while (doc < target) nextDoc();
+        return doc;
+    }
+
+    @Override
+    public long cost() {
+        return reader.docCount();
+    }
+}
@@ -0,0 +1,33 @@
+package org.ulpgc.bd.search.query;
+
+/**
+ * Okapi BM25 over the term frequencies and doc lengths the indexer stores.
+ */
+public final class Bm25 {
+    public static final float K1 = 1.2f;
+    public static final float B = 0.75f;
+
+    private final long docCount;
+    private final float avgDocLength;
+
+    public Bm25(long docCount, long totalTokens) {
+        this.docCount = Math.max(1, docCount);
+        this.avgDocLength = docCount > 0 ? Math.max(1f, (float) totalTokens / docCount) : 1f;
+    }
+
+    /** {@code df} is summed over segments and may count shadowed copies of a doc, so it is capped at N. */
+    public float idf(long df) {
+        df = Math.min(df, docCount);
+        return (float) Math.log(1 + (docCount - df + 0.5) / (df + 0.5));
+    }
+
+    public float score(float idf, int tf, int docLength) {
+        float norm = K1 * (1 - B + B * docLength / avgDocLength);
+        return idf * tf * (K1 + 1) / (tf + norm);
+    }
+
+    /** Highest score any doc can reach for a term, given its largest tf and the shortest doc. */
+    public float upperBound(float idf, int maxTf, int minDocLength) {
+        return score(idf, maxTf, minDocLength);
+    }
+}
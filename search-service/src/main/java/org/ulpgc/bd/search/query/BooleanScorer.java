@@ -0,0 +1,162 @@
+package org.ulpgc.bd.search.query;
+
+import org.ulpgc.bd.search.index.IndexSnapshot;
+import org.ulpgc.bd.search.index.SegmentReader;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Evaluates AND/OR/NOT, phrase and NEAR trees segment by segment and ranks the matches with BM25
+ * over their positive terms. A segment indexed without positions answers phrase and NEAR clauses
+ * as a plain conjunction of their terms.
+ */
+public final class BooleanScorer {
+    private final IndexSnapshot snapshot;
+    private final CollectionStats stats;
+    private final Bm25 bm25;
+    private final Map<String, Float> idfs = new HashMap<>();
+
+    public BooleanScorer(IndexSnapshot snapshot) {
+        this(snapshot, null);
+    }
+
+    /** Scores with {@code stats} instead of the snapshot's own numbers, when not null. */
+    public BooleanScorer(IndexSnapshot snapshot, CollectionStats stats) {
+        this.snapshot = snapshot;
+        this.stats = stats;
+        this.bm25 = stats != null ? new Bm25(stats.docs, stats.tokens) : new Bm25(snapshot.liveDocs(), snapshot.liveTokens());
+    }
+
+    public void search(Query query, DocFilter filter, TopK top) {
+        search(query, filter, top, null);
+    }
+
+    /** Also marks every accepted match in {@code hits[leaf]}, when {@code hits} is not null. */
+    public void search(Query query, DocFilter filter, TopK top, BitSet[] hits) {
+        for (int l = snapshot.leaves().size() - 1; l >= 0; l--) {
+            IndexSnapshot.Leaf leaf = snapshot.leaves().get(l);
+            BitSet accepted = filter.docs(leaf);
+            if (hits != null) hits[l] = new BitSet();
+            if (accepted.isEmpty()) continue;
+            List<Clause> scorers = new ArrayList<>();
+            DocIterator it = build(query, leaf.reader, scorers, true);
+            if (it == null) continue;
+            SegmentReader r = leaf.reader;
+            int ordHint = 0;
+            for (int doc = it.nextDoc(); doc != DocIterator.NO_MORE_DOCS; doc = it.nextDoc()) {
+                int ord = r.docOrd(doc, ordHint);
+                ordHint = ord;
+                if (!accepted.get(ord)) continue;
+                if (hits != null) hits[l].set(ord);
+                int len = r.docLength(ord);
+                float score = 0;
+                for (Clause c : scorers) {
+                    if (c.owner.doc() == doc && c.term.doc() == doc) score += bm25.score(c.term.idf(), c.term.tf(), len);
+                }
+                top.offer(doc, score);
+            }
+        }
+    }
+
+    private float idf(String term) {
+        return idfs.computeIfAbsent(term, t -> {
+            long global = stats == null ? -1 : stats.df(t);
+            if (global >= 0) return bm25.idf(global);
+            long df = 0;
+            for (IndexSnapshot.Leaf leaf : snapshot.leaves()) {
+                SegmentReader.TermInfo ti = leaf.reader.seek(t);
+                if (ti != null) df += ti.df;
+            }
+            return bm25.idf(df);
+        });
+    }
+
+    private DocIterator build(Query q, SegmentReader r, List<Clause> scorers, boolean scoring) {
+        if (q instanceof Query.Term t) {
+            TermIterator it = term(t.term, r);
+            if (it != null && scoring) scorers.add(new Clause(it, it));
+            return it;
+        }
+        if (q instanceof Query.Phrase p) {
+            List<TermIterator> its = terms(p.terms, r);
+            if (its == null) return null;
+            return scored(r.hasPositions() ? new PhraseIterator(its, p.offsets) : new ConjunctionIterator(its), its, scorers, scoring);
+        }
+        if (q instanceof Query.Near n) {
+            List<TermIterator> its = terms(n.terms, r);
+            if (its == null) return null;
+            return scored(r.hasPositions() ? new NearIterator(its, n.slop) : new ConjunctionIterator(its), its, scorers, scoring);
+        }
+        if (q instanceof Query.And and) {
+            List<DocIterator> must = new ArrayList<>();
+            for (Query c : and.must) {
+                DocIterator it = build(c, r, scorers, scoring);
+                if (it == null) return null;
+                must.add(it);
+            }
+            DocIterator base = must.isEmpty() ? new AllDocsIterator(r) : must.size() == 1 ? must.get(0) : new ConjunctionIterator(must);
+            return exclude(base, and.mustNot, r);
+        }
+        if (q instanceof Query.Or or) {
+            DocIterator base;
+            if (or.should.isEmpty()) {
+                base = new AllDocsIterator(r);
+            } else {
+                List<DocIterator> should = new ArrayList<>();
+                for (Query c : or.should) {
+                    DocIterator it = build(c, r, scorers, scoring);
+                    if (it != null) should.add(it);
+                }
+                if (should.isEmpty()) return null;
+                base = should.size() == 1 ? should.get(0) : new DisjunctionIterator(should);
+            }
+            return exclude(base, or.mustNot, r);
+        }
+        throw new IllegalArgumentException("unsupported query node " + q.getClass().getSimpleName());
+    }
+
+    private DocIterator exclude(DocIterator base, List<Query> mustNot, SegmentReader r) {
+        List<DocIterator> out = new ArrayList<>();
+        for (Query c : mustNot) {
+            DocIterator it = build(c, r, null, false);
+            if (it != null) out.add(it);
+        }
+        if (out.isEmpty()) return base;
+        return new ExclusionIterator(base, out.size() == 1 ? out.get(0) : new DisjunctionIterator(out));
+    }
+
+    private static DocIterator scored(DocIterator owner, List<TermIterator> its, List<Clause> scorers, boolean scoring) {
+        if (scoring) for (TermIterator t : its) scorers.add(new Clause(owner, t));
+        return owner;
+    }
+
+    private List<TermIterator> terms(List<String> terms, SegmentReader r) {
+        List<TermIterator> its = new ArrayList<>();
+        for (String t : terms) {
+            TermIterator it = term(t, r);
+            if (it == null) return null;
+            its.add(it);
+        }
+        return its;
+    }
+
+    private TermIterator term(String term, SegmentReader r) {
+        SegmentReader.TermInfo ti = r.seek(term);
+        return ti == null ? null : new TermIterator(r.postings(ti), idf(term));
+    }
+
+    /** A term that contributes to the score when both it and the clause that owns it sit on the doc. */
+    private static final class Clause {
+        final DocIterator owner;
+        final TermIterator term;
+
+        Clause(DocIterator owner, TermIterator term) {
+            this.owner = owner;
+            this.term = term;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package org.ulpgc.bd.search.query;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Collection-wide numbers BM25 scores with: doc count, token count and the df of the query's
+ * terms. A single index takes them from its own snapshot. A sharded search sums every shard's and
+ * hands the sums back to each shard, so a doc scores the same whichever shard holds it.
+ */
+public final class CollectionStats {
+    public final long docs;
+    public final long tokens;
+    private final Map<String, Long> df;
+
+    public CollectionStats(long docs, long tokens, Map<String, Long> df) {
+        this.docs = docs;
+        this.tokens = tokens;
+        this.df = new TreeMap<>(df);
+    }
+
+    /** Df of {@code term}, or -1 if these stats do not cover it. */
+    public long df(String term) {
+        Long v = df.get(term);
+        return v == null ? -1 : v;
+    }
+
+    public Map<String, Long> dfs() {
+        return df;
+    }
+
+    /** Adds {@code other}'s counts to these; df is summed term by term. */
+    public CollectionStats plus(CollectionStats other) {
+        Map<String, Long> sum = new TreeMap<>(df);
+        other.df.forEach((t, n) -> sum.merge(t, n, Long::sum));
+        return new CollectionStats(docs + other.docs, tokens + other.tokens, sum);
+    }
+
+    /** Identifies these numbers in a cache key; pages scored with other stats rank differently. */
+    public String key() {
+        return docs + "/" + tokens + "/" + df;
+    }
+}
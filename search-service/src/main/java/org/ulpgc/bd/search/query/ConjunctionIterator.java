@@ -0,0 +1,65 @@
+package org.ulpgc.bd.search.query;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Leapfrog intersection: the cheapest iterator leads and the others {@link DocIterator#advance}
+ * to its doc, so long postings lists are skipped through rather than read.
+ */
+public class ConjunctionIterator implements DocIterator {
+    private final DocIterator[] its;
+    private int doc = -1;
+
+    public ConjunctionIterator(List<? extends DocIterator> iterators) {
+        its = iterators.toArray(new DocIterator[0]);
+        Arrays.sort(its, Comparator.comparingLong(DocIterator::cost));
+    }
+
+    @Override
+    public int doc() {
+        return doc;
+    }
+
+    @Override
+    public int nextDoc() {
+        return align(its[0].nextDoc());
+    }
+
+    @Override
+    public int advance(int target) {
+        return align(its[0].advance(target));
+    }
+
+    private int align(int target) {
+        while (target != NO_MORE_DOCS) {
+            int next = target;
+            for (int i = 1; i < its.length; i++) {
+                int d = its[i].advance(target);
+                if (d > target) {
+                    next = d;
+                    break;
+                }
+            }
+            if (next == target) {
+                doc = target;
+                if (matches()) return doc;
+                target = its[0].nextDoc();
+            } else {
+                target = its[0].advance(next);
+            }
+        }
+        return doc = NO_MORE_DOCS;
+    }
+
+    /** Extra per-doc check once every iterator sits on {@link #doc()}; positional subclasses override it. */
+    protected boolean matches() {
+        return true;
+    }
+
+    @Override
+    public long cost() {
+        return its[0].cost();
+    }
+}
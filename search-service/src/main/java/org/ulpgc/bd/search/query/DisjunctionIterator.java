@@ -0,0 +1,41 @@
+package org.ulpgc.bd.search.query;
+
+import java.util.List;
+
+public final class DisjunctionIterator implements DocIterator {
+    private final DocIterator[] its;
+    private final long cost;
+    private int doc = -1;
+
+    public DisjunctionIterator(List<? extends DocIterator> iterators) {
+        its = iterators.toArray(new DocIterator[0]);
+        long c = 0;
+        for (DocIterator it : its) c += it.cost();
+        cost = c;
+    }
+
+    @Override
+    public int doc() {
+        return doc;
+    }
+
+    @Override
+    public int nextDoc() {
+        return doc == NO_MORE_DOCS ? doc : advance(doc + 1);
+    }
+
+    @Override
+    public int advance(int target) {
+        int min = NO_MORE_DOCS;
+        for (DocIterator it : its) {
+            int d = it.doc() < target ? it.advance(target) : it.doc();
+            if (d < min) min = d;
+        }
+        return doc = min;
+    }
+
+    @Override
+    public long cost() {
+        return cost;
+    }
+}
@@ -0,0 +1,58 @@
+package org.ulpgc.bd.search.query;
+
+import org.ulpgc.bd.search.index.DocFields;
+import org.ulpgc.bd.search.index.IndexSnapshot;
+
+import java.util.BitSet;
+import java.util.Locale;
+
+/**
+ * Author/language/year restriction, resolved per segment into a bitset of accepted doc ords: the
+ * AND of the cached per-value bitsets of the segment's {@link DocFields} and its live docs.
+ */
+public final class DocFilter {
+    public static final DocFilter NONE = new DocFilter(null, null, null);
+
+    private final String author;
+    private final String language;
+    private final Integer year;
+    private final boolean impossible;
+
+    public DocFilter(String author, String language, String year) {
+        this.author = author;
+        this.language = language;
+        Integer y = null;
+        boolean bad = false;
+        if (year != null) {
+            try { y = Integer.parseInt(year.trim()); } catch (NumberFormatException e) { bad = true; }
+        }
+        this.year = y;
+        this.impossible = bad;
+    }
+
+    public boolean isEmpty() {
+        return author == null && language == null && year == null && !impossible;
+    }
+
+    /** Accepted, live doc ords of {@code leaf}; shared when the filter is empty, so never modify it. */
+    public BitSet docs(IndexSnapshot.Leaf leaf) {
+        if (isEmpty()) return leaf.liveBits();
+        DocFields fields = leaf.reader.fields();
+        BitSet out = new BitSet();
+        if (impossible || fields == null) return out;
+        out.or(leaf.liveBits());
+        if (author != null) out.and(fields.authorIs(author));
+        if (language != null) out.and(fields.languageIs(language));
+        if (year != null) out.and(fields.yearIs(year));
+        return out;
+    }
+
+    /** Normalized form for cache keys: case-folded values, "-" for no filter, "!" for a year that can never match. */
+    public String key() {
+        return part(author) + '\u0000' + part(language) + '\u0000' + (impossible ? "!" : year == null ? "-" : "=" + year);
+    }
+
+    private static String part(String s) {
+        return s == null ? "-" : "=" + s.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,19 @@
+package org.ulpgc.bd.search.query;
+
+import org.ulpgc.bd.search.index.SegmentReader;
+
+/**
+ * Ascending iterator over the doc ids of one segment that match a query node.
+ */
+public interface DocIterator {
+    int NO_MORE_DOCS = SegmentReader.NO_MORE_DOCS;
+
+    int doc();
+
+    int nextDoc();
+
+    /** Moves to the first doc {@code >= target}; never moves backwards. */
+    int advance(int target);
+
+    long cost();
+}
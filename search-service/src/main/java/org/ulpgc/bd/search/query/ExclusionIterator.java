@@ -0,0 +1,40 @@
+package org.ulpgc.bd.search.query;
+
+public final class ExclusionIterator implements DocIterator {
+    private final DocIterator include;
+    private final DocIterator exclude;
+
+    public ExclusionIterator(DocIterator include, DocIterator exclude) {
+        this.include = include;
+        this.exclude = exclude;
+    }
+
+    @Override
+    public int doc() {
+        return include.doc();
+    }
+
+    @Override
+    public int nextDoc() {
+        return skipExcluded(include.nextDoc());
+    }
+
+    @Override
+    public int advance(int target) {
+        return skipExcluded(include.advance(target));
+    }
+
+    private int skipExcluded(int d) {
+        while (d != NO_MORE_DOCS) {
+            int x = exclude.doc() < d ? exclude.advance(d) : exclude.doc();
+            if (x != d) return d;
+            d = include.nextDoc();
+        }
+        return d;
+    }
+
+    @Override
+    public long cost() {
+        return include.cost();
+    }
+}
@@ -0,0 +1,43 @@
+package org.ulpgc.bd.search.query;
+
+import java.util.List;
+
+/**
+ * Docs where one occurrence of each term fits in a window of {@code slop + 1} positions, in any
+ * order; {@code a NEAR/5 b} means |pos(a) - pos(b)| <= 5.
+ */
+public final class NearIterator extends ConjunctionIterator {
+    private final TermIterator[] terms;
+    private final int slop;
+    private final int[] cursor;
+
+    public NearIterator(List<TermIterator> terms, int slop) {
+        super(terms);
+        this.terms = terms.toArray(new TermIterator[0]);
+        this.slop = slop;
+        this.cursor = new int[this.terms.length];
+    }
+
+    @Override
+    protected boolean matches() {
+        int n = terms.length;
+        int[][] pos = new int[n][];
+        for (int t = 0; t < n; t++) {
+            pos[t] = terms[t].positions();
+            cursor[t] = 0;
+        }
+        while (true) {
+            int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE, argMin = 0;
+            for (int t = 0; t < n; t++) {
+                int p = pos[t][cursor[t]];
+                if (p < min) {
+                    min = p;
+                    argMin = t;
+                }
+                if (p > max) max = p;
+            }
+            if (max - min <= slop) return true;
+            if (++cursor[argMin] >= terms[argMin].tf()) return false;
+        }
+    }
+}
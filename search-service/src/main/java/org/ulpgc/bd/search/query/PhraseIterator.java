@@ -0,0 +1,33 @@
+package org.ulpgc.bd.search.query;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Docs where every term occurs at its offset from a common start position.
+ */
+public final class PhraseIterator extends ConjunctionIterator {
+    private final TermIterator[] terms;
+    private final int[] offsets;
+
+    public PhraseIterator(List<TermIterator> terms, int[] offsets) {
+        super(terms);
+        this.terms = terms.toArray(new TermIterator[0]);
+        this.offsets = offsets;
+    }
+
+    @Override
+    protected boolean matches() {
+        int[] first = terms[0].positions();
+        int n = terms[0].tf();
+        for (int i = 0; i < n; i++) {
+            int start = first[i] - offsets[0];
+            boolean all = true;
+            for (int t = 1; t < terms.length && all; t++) {
+                all = Arrays.binarySearch(terms[t].positions(), 0, terms[t].tf(), start + offsets[t]) >= 0;
+            }
+            if (all) return true;
+        }
+        return false;
+    }
+}
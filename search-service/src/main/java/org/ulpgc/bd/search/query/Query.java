@@ -0,0 +1,109 @@
+package org.ulpgc.bd.search.query;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parsed query tree. Terms are already normalized with the indexer's tokenizer.
+ */
+public abstract class Query {
+
+    public static final class Term extends Query {
+        public final String term;
+
+        public Term(String term) {
+            this.term = term;
+        }
+    }
+
+    /** Terms at fixed offsets from a common start; offsets keep gaps left by dropped stop words. */
+    public static final class Phrase extends Query {
+        public final List<String> terms;
+        public final int[] offsets;
+
+        public Phrase(List<String> terms, int[] offsets) {
+            this.terms = terms;
+            this.offsets = offsets;
+        }
+    }
+
+    public static final class Near extends Query {
+        public final List<String> terms;
+        public final int slop;
+
+        public Near(List<String> terms, int slop) {
+            this.terms = terms;
+            this.slop = slop;
+        }
+    }
+
+    /** A term pattern that is replaced by the dictionary terms it matches before the query runs. */
+    public static final class Expand extends Query {
+        public enum Kind { PREFIX, WILDCARD, FUZZY }
+
+        public final Kind kind;
+        public final String pattern;
+        public final int edits;
+
+        public Expand(Kind kind, String pattern, int edits) {
+            this.kind = kind;
+            this.pattern = pattern;
+            this.edits = edits;
+        }
+    }
+
+    public static final class And extends Query {
+        public final List<Query> must = new ArrayList<>();
+        public final List<Query> mustNot = new ArrayList<>();
+    }
+
+    /** Matches any {@code should} clause, or every doc when there are none, minus {@code mustNot}. */
+    public static final class Or extends Query {
+        public final List<Query> should = new ArrayList<>();
+        public final List<Query> mustNot = new ArrayList<>();
+    }
+
+    static final class Not extends Query {
+        final Query inner;
+
+        Not(Query inner) {
+            this.inner = inner;
+        }
+    }
+
+    /** Every term the query names, phrase and NEAR terms included; patterns count only once expanded. */
+    public List<String> terms() {
+        List<String> out = new ArrayList<>();
+        collect(this, out);
+        return out;
+    }
+
+    private static void collect(Query q, List<String> out) {
+        if (q instanceof Term t) add(out, t.term);
+        else if (q instanceof Phrase p) for (String t : p.terms) add(out, t);
+        else if (q instanceof Near n) for (String t : n.terms) add(out, t);
+        else if (q instanceof And and) {
+            for (Query c : and.must) collect(c, out);
+            for (Query c : and.mustNot) collect(c, out);
+        } else if (q instanceof Or or) {
+            for (Query c : or.should) collect(c, out);
+            for (Query c : or.mustNot) collect(c, out);
+        } else if (q instanceof Not not) collect(not.inner, out);
+    }
+
+    private static void add(List<String> out, String term) {
+        if (!out.contains(term)) out.add(term);
+    }
+
+    /** Terms of a plain disjunction of single terms, which can go through {@link WandScorer}; otherwise null. */
+    public List<String> plainTerms() {
+        if (this instanceof Term t) return List.of(t.term);
+        if (!(this instanceof Or or) || !or.mustNot.isEmpty() || or.should.isEmpty()) return null;
+        List<String> out = new ArrayList<>();
+        for (Query q : or.should) {
+            if (!(q instanceof Term t)) return null;
+            if (!out.contains(t.term)) out.add(t.term);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,247 @@
+package org.ulpgc.bd.search.query;
+
+import org.ulpgc.bd.search.util.Tokenizer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parses the /search query language, loosest binding first:
+ * <pre>
+ *   or   := and (["OR"] and)*          bare juxtaposition is OR, as in ranked search
+ *   and  := not ("AND" not)*
+ *   not  := "NOT" not | near
+ *   near := primary ("NEAR/" k primary)*
+ *   primary := word | "quoted phrase" | "(" or ")" | prefix* | wild?c*rd | fuzzy~[1|2]
+ * </pre>
+ * Operators are upper-case only. English stop words are dropped, but a phrase keeps their gaps.
+ * Wildcard patterns need {@link #MIN_PREFIX} literal characters before the first {@code *} or
+ * {@code ?} so expansion stays a range scan of the dictionary; shorter ones are read as plain words.
+ * A NEAR distance above {@link #MAX_SLOP} is read as {@link #MAX_SLOP}, an edit count above
+ * {@link #MAX_EDITS} as {@link #MAX_EDITS}.
+ */
+public final class QueryParser {
+    private static final Pattern NEAR = Pattern.compile("NEAR/(\\d+)");
+    private static final Pattern FUZZY = Pattern.compile("(.+)~([0-9]?)");
+    public static final int MIN_PREFIX = 2;
+    public static final int MAX_EDITS = 2;
+    public static final int MAX_SLOP = 1000;
+
+    private final List<String> tokens = new ArrayList<>();
+    private int pos;
+
+    private QueryParser(String q) {
+        int i = 0, n = q.length();
+        while (i < n) {
+            char c = q.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '(' || c == ')') {
+                tokens.add(String.valueOf(c));
+                i++;
+            } else if (c == '"') {
+                int end = q.indexOf('"', i + 1);
+                if (end < 0) end = n;
+                tokens.add(q.substring(i, end));
+                i = end + 1;
+            } else {
+                int start = i;
+                while (i < n && !Character.isWhitespace(q.charAt(i)) && "()\"".indexOf(q.charAt(i)) < 0) i++;
+                tokens.add(q.substring(start, i));
+            }
+        }
+    }
+
+    /** Returns the parsed query, or null if nothing searchable is left. */
+    public static Query parse(String q) {
+        if (q == null || q.isBlank()) return null;
+        QueryParser p = new QueryParser(q);
+        Query root = p.or();
+        while (p.pos < p.tokens.size()) {
+            p.pos++;
+            Query more = p.or();
+            if (more != null) root = root == null ? more : combineOr(root, more);
+        }
+        if (root instanceof Query.Not not) {
+            Query.Or all = new Query.Or();
+            all.mustNot.add(not.inner);
+            return all;
+        }
+        return root;
+    }
+
+    private String peek() {
+        return pos < tokens.size() ? tokens.get(pos) : null;
+    }
+
+    private Query or() {
+        Query.Or or = new Query.Or();
+        while (true) {
+            String t = peek();
+            if (t == null || t.equals(")")) break;
+            if (t.equals("OR") || t.equals("AND")) {
+                pos++;
+                continue;
+            }
+            Query q = and();
+            if (q instanceof Query.Not not) or.mustNot.add(not.inner);
+            else if (q != null) or.should.add(q);
+        }
+        if (or.mustNot.isEmpty()) {
+            if (or.should.isEmpty()) return null;
+            if (or.should.size() == 1) return or.should.get(0);
+        } else if (or.should.isEmpty() && or.mustNot.size() == 1) {
+            return new Query.Not(or.mustNot.get(0));
+        }
+        return or;
+    }
+
+    private Query and() {
+        Query.And and = new Query.And();
+        add(and, not());
+        while ("AND".equals(peek())) {
+            pos++;
+            add(and, not());
+        }
+        if (and.mustNot.isEmpty()) {
+            if (and.must.isEmpty()) return null;
+            if (and.must.size() == 1) return and.must.get(0);
+        } else if (and.must.isEmpty()) {
+            Query.Or any = new Query.Or();
+            any.should.addAll(and.mustNot);
+            return new Query.Not(any.should.size() == 1 ? any.should.get(0) : any);
+        }
+        return and;
+    }
+
+    private static void add(Query.And and, Query q) {
+        if (q instanceof Query.Not not) and.mustNot.add(not.inner);
+        else if (q != null) and.must.add(q);
+    }
+
+    private Query not() {
+        if ("NOT".equals(peek())) {
+            pos++;
+            Query inner = not();
+            if (inner == null) return null;
+            return inner instanceof Query.Not n ? n.inner : new Query.Not(inner);
+        }
+        return near();
+    }
+
+    private Query near() {
+        Query left = primary();
+        while (peek() != null && NEAR.matcher(peek()).matches()) {
+            Matcher m = NEAR.matcher(tokens.get(pos++));
+            m.matches();
+            int slop = bounded(m.group(1), MAX_SLOP);
+            Query right = primary();
+            if (left == null || right == null) {
+                left = left == null ? right : left;
+                continue;
+            }
+            List<String> terms = new ArrayList<>();
+            if (!collectTerms(left, terms) || !collectTerms(right, terms)) {
+                Query.And and = new Query.And();
+                and.must.add(left);
+                and.must.add(right);
+                left = and;
+                continue;
+            }
+            if (left instanceof Query.Near prev) slop = Math.max(slop, prev.slop);
+            left = new Query.Near(terms, slop);
+        }
+        return left;
+    }
+
+    /** {@code digits} as a number, at most {@code max}; too many digits for an int also give {@code max}. */
+    private static int bounded(String digits, int max) {
+        return digits.length() > 9 ? max : Math.min(max, Integer.parseInt(digits));
+    }
+
+    private static boolean collectTerms(Query q, List<String> out) {
+        if (q instanceof Query.Term t) out.add(t.term);
+        else if (q instanceof Query.Near n) out.addAll(n.terms);
+        else return false;
+        return true;
+    }
+
+    private Query primary() {
+        String t = peek();
+        if (t == null || t.equals(")")) return null;
+        pos++;
+        if (t.equals("(")) {
+            Query inner = or();
+            if (")".equals(peek())) pos++;
+            return inner;
+        }
+        if (t.startsWith("\"")) return phrase(t.substring(1));
+        Query pattern = pattern(t);
+        return pattern != null ? pattern : phrase(t);
+    }
+
+    private static Query pattern(String word) {
+        Matcher m = FUZZY.matcher(word);
+        if (m.matches()) {
+            String base = Tokenizer.normalize(m.group(1));
+            if (base.isEmpty() || base.indexOf(' ') >= 0) return null;
+            int edits = m.group(2).isEmpty() ? autoEdits(base) : bounded(m.group(2), MAX_EDITS);
+            return new Query.Expand(Query.Expand.Kind.FUZZY, base, edits);
+        }
+        int first = firstWildcard(word);
+        if (first < 0) return null;
+        StringBuilder sb = new StringBuilder(word.length());
+        int start = 0;
+        for (int i = first; i <= word.length(); i++) {
+            if (i < word.length() && word.charAt(i) != '*' && word.charAt(i) != '?') continue;
+            String literal = Tokenizer.normalize(word.substring(start, i));
+            if (literal.indexOf(' ') >= 0) return null;
+            sb.append(literal);
+            if (i < word.length()) sb.append(word.charAt(i));
+            start = i + 1;
+        }
+        String pattern = sb.toString();
+        if (firstWildcard(pattern) < MIN_PREFIX) return null;
+        boolean prefix = pattern.indexOf('*') == pattern.length() - 1 && pattern.indexOf('?') < 0;
+        return prefix ? new Query.Expand(Query.Expand.Kind.PREFIX, pattern.substring(0, pattern.length() - 1), 0)
+                : new Query.Expand(Query.Expand.Kind.WILDCARD, pattern, 0);
+    }
+
+    private static int firstWildcard(String s) {
+        for (int i = 0; i < s.length(); i++) if (s.charAt(i) == '*' || s.charAt(i) == '?') return i;
+        return -1;
+    }
+
+    /** Edit budget when none is given: exact up to two letters, one edit up to five, two beyond. */
+    private static int autoEdits(String term) {
+        return term.length() <= 2 ? 0 : term.length() <= 5 ? 1 : 2;
+    }
+
+    private static Query phrase(String text) {
+        List<Integer> positions = new ArrayList<>();
+        List<String> raw = Tokenizer.tokenize(text, positions);
+        List<String> terms = new ArrayList<>();
+        List<Integer> offsets = new ArrayList<>();
+        for (int i = 0; i < raw.size(); i++) {
+            if (Tokenizer.isStopWord(raw.get(i))) continue;
+            terms.add(raw.get(i));
+            offsets.add(positions.get(i));
+        }
+        if (terms.isEmpty()) return null;
+        if (terms.size() == 1) return new Query.Term(terms.get(0));
+        int[] off = new int[offsets.size()];
+        for (int i = 0; i < off.length; i++) off[i] = offsets.get(i) - offsets.get(0);
+        return new Query.Phrase(terms, off);
+    }
+
+    private static Query combineOr(Query a, Query b) {
+        Query.Or or = new Query.Or();
+        for (Query q : new Query[]{a, b}) {
+            if (q instanceof Query.Not n) or.mustNot.add(n.inner);
+            else or.should.add(q);
+        }
+        return or;
+    }
+}
@@ -0,0 +1,205 @@
+package org.ulpgc.bd.search.query;
+
+import org.ulpgc.bd.search.index.IndexSnapshot;
+import org.ulpgc.bd.search.index.SegmentReader;
+
+import java.util.*;
+
+/**
+ * Rewrites {@link Query.Expand} nodes into the dictionary terms they match. Prefix and wildcard
+ * patterns only walk the dictionary range that shares their literal prefix. Fuzzy terms intersect
+ * the sorted dictionary with a Levenshtein automaton: as soon as a term's prefix can no longer end
+ * within the edit budget, the enum seeks past every term sharing that prefix.
+ *
+ * Each pattern keeps at most {@link #MAX_EXPANSIONS} terms, closest edit distance first and then
+ * highest document frequency, so a short prefix cannot turn into thousands of postings lists.
+ */
+public final class TermExpander {
+    public static final int MAX_EXPANSIONS = 64;
+
+    private final IndexSnapshot snapshot;
+
+    public TermExpander(IndexSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    /** Returns {@code q} with every pattern replaced, or {@code q} itself if it has none. */
+    public Query rewrite(Query q) {
+        if (q instanceof Query.Expand e) {
+            List<String> terms = expand(e);
+            // a pattern that matches nothing becomes a term no segment contains
+            if (terms.isEmpty()) return new Query.Term(e.pattern + (e.kind == Query.Expand.Kind.PREFIX ? "*" : ""));
+            if (terms.size() == 1) return new Query.Term(terms.get(0));
+            Query.Or or = new Query.Or();
+            for (String t : terms) or.should.add(new Query.Term(t));
+            return or;
+        }
+        if (q instanceof Query.And and) {
+            Query.And out = new Query.And();
+            for (Query c : and.must) out.must.add(rewrite(c));
+            for (Query c : and.mustNot) out.mustNot.add(rewrite(c));
+            return out;
+        }
+        if (q instanceof Query.Or or) {
+            if (or.should.size() == 1 && or.mustNot.isEmpty()) return rewrite(or.should.get(0));
+            Query.Or out = new Query.Or();
+            for (Query c : or.should) {
+                Query r = rewrite(c);
+                // flatten so an expanded term list can still go through WAND
+                if (r instanceof Query.Or inner && inner.mustNot.isEmpty() && c instanceof Query.Expand) out.should.addAll(inner.should);
+                else out.should.add(r);
+            }
+            for (Query c : or.mustNot) out.mustNot.add(rewrite(c));
+            return out;
+        }
+        if (q instanceof Query.Not not) return new Query.Not(rewrite(not.inner));
+        return q;
+    }
+
+    public static boolean hasPatterns(Query q) {
+        if (q instanceof Query.Expand) return true;
+        if (q instanceof Query.And and) return any(and.must) || any(and.mustNot);
+        if (q instanceof Query.Or or) return any(or.should) || any(or.mustNot);
+        if (q instanceof Query.Not not) return hasPatterns(not.inner);
+        return false;
+    }
+
+    private static boolean any(List<Query> qs) {
+        for (Query q : qs) if (hasPatterns(q)) return true;
+        return false;
+    }
+
+    /** Matching terms across all segments, best first. */
+    public List<String> expand(Query.Expand e) {
+        Map<String, long[]> found = new HashMap<>();
+        for (IndexSnapshot.Leaf leaf : snapshot.leaves()) {
+            switch (e.kind) {
+                case PREFIX -> prefix(leaf.reader, e.pattern, found);
+                case WILDCARD -> wildcard(leaf.reader, e.pattern, found);
+                case FUZZY -> fuzzy(leaf.reader, e.pattern, e.edits, found);
+            }
+        }
+        List<Map.Entry<String, long[]>> ranked = new ArrayList<>(found.entrySet());
+        ranked.sort((a, b) -> {
+            int c = Long.compare(a.getValue()[1], b.getValue()[1]);
+            if (c != 0) return c;
+            c = Long.compare(b.getValue()[0], a.getValue()[0]);
+            return c != 0 ? c : a.getKey().compareTo(b.getKey());
+        });
+        List<String> out = new ArrayList<>();
+        for (int i = 0; i < ranked.size() && i < MAX_EXPANSIONS; i++) out.add(ranked.get(i).getKey());
+        return out;
+    }
+
+    /** Accumulates {df, edit distance} per term. */
+    private static void add(Map<String, long[]> found, String term, int df, int distance) {
+        long[] v = found.computeIfAbsent(term, t -> new long[]{0, distance});
+        v[0] += df;
+    }
+
+    private static void prefix(SegmentReader r, String prefix, Map<String, long[]> found) {
+        SegmentReader.TermsEnum e = r.terms(prefix);
+        for (String t = e.next(); t != null && t.startsWith(prefix); t = e.next()) add(found, t, e.df(), 0);
+    }
+
+    private static void wildcard(SegmentReader r, String pattern, Map<String, long[]> found) {
+        int i = 0;
+        while (pattern.charAt(i) != '*' && pattern.charAt(i) != '?') i++;
+        String prefix = pattern.substring(0, i);
+        SegmentReader.TermsEnum e = r.terms(prefix);
+        for (String t = e.next(); t != null && t.startsWith(prefix); t = e.next()) {
+            if (globMatches(pattern, i, t, i)) add(found, t, e.df(), 0);
+        }
+    }
+
+    static boolean globMatches(String p, int pi, String s, int si) {
+        int star = -1, mark = 0;
+        while (si < s.length()) {
+            if (pi < p.length() && (p.charAt(pi) == '?' || p.charAt(pi) == s.charAt(si))) {
+                pi++;
+                si++;
+            } else if (pi < p.length() && p.charAt(pi) == '*') {
+                star = pi++;
+                mark = si;
+            } else if (star >= 0) {
+                pi = star + 1;
+                si = ++mark;
+            } else {
+                return false;
+            }
+        }
+        while (pi < p.length() && p.charAt(pi) == '*') pi++;
+        return pi == p.length();
+    }
+
+    private static void fuzzy(SegmentReader r, String target, int maxEdits, Map<String, long[]> found) {
+        int m = target.length();
+        // rows[i] is the edit-distance row after reading the first i chars of the current term
+        int[][] rows = new int[16][];
+        rows[0] = new int[m + 1];
+        for (int j = 0; j <= m; j++) rows[0][j] = j;
+        SegmentReader.TermsEnum e = r.terms("");
+        String prev = "";
+        int valid = 0;
+        String t = e.next();
+        while (t != null) {
+            int depth = Math.min(valid, commonPrefix(prev, t));
+            int dead = -1;
+            for (int i = depth; i < t.length(); i++) {
+                if (rows.length <= i + 1) rows = Arrays.copyOf(rows, rows.length * 2);
+                if (!step(rows, i, t.charAt(i), target, maxEdits)) {
+                    dead = i;
+                    break;
+                }
+            }
+            prev = t;
+            if (dead < 0) {
+                int distance = rows[t.length()][m];
+                if (distance <= maxEdits) add(found, t, e.df(), distance);
+                valid = t.length();
+                t = e.next();
+            } else {
+                String next = successor(t.substring(0, dead + 1));
+                if (next == null) return;
+                valid = dead;
+                e.seekCeil(next);
+                t = e.next();
+            }
+        }
+    }
+
+    /** Fills rows[i + 1] from rows[i] for char {@code c}; false if no completion can stay within budget. */
+    private static boolean step(int[][] rows, int i, char c, String target, int maxEdits) {
+        int[] prev = rows[i];
+        int[] row = rows[i + 1];
+        if (row == null || row.length != prev.length) row = rows[i + 1] = new int[prev.length];
+        row[0] = i + 1;
+        int min = row[0];
+        for (int j = 1; j < row.length; j++) {
+            int cost = target.charAt(j - 1) == c ? 0 : 1;
+            row[j] = Math.min(Math.min(row[j - 1] + 1, prev[j] + 1), prev[j - 1] + cost);
+            min = Math.min(min, row[j]);
+        }
+        return min <= maxEdits;
+    }
+
+    private static int commonPrefix(String a, String b) {
+        int n = Math.min(a.length(), b.length()), i = 0;
+        while (i < n && a.charAt(i) == b.charAt(i)) i++;
+        return i;
+    }
+
+    /** Smallest string greater than every string starting with {@code prefix}, or null if there is none. */
+    private static String successor(String prefix) {
+        StringBuilder sb = new StringBuilder(prefix);
+        while (sb.length() > 0) {
+            char last = sb.charAt(sb.length() - 1);
+            if (last != Character.MAX_VALUE) {
+                sb.setCharAt(sb.length() - 1, (char) (last + 1));
+                return sb.toString();
+            }
+            sb.setLength(sb.length() - 1);
+        }
+        return null;
+    }
+}
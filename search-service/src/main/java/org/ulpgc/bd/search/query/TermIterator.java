@@ -0,0 +1,52 @@
+package org.ulpgc.bd.search.query;
+
+import org.ulpgc.bd.search.index.SegmentReader;
+
+public final class TermIterator implements DocIterator {
+    private final SegmentReader.PostingsEnum postings;
+    private final float idf;
+    private int[] positions = new int[16];
+    private int positionsDoc = -1;
+
+    public TermIterator(SegmentReader.PostingsEnum postings, float idf) {
+        this.postings = postings;
+        this.idf = idf;
+    }
+
+    @Override
+    public int doc() {
+        return postings.doc();
+    }
+
+    @Override
+    public int nextDoc() {
+        return postings.nextDoc();
+    }
+
+    @Override
+    public int advance(int target) {
+        return postings.advance(target);
+    }
+
+    @Override
+    public long cost() {
+        return postings.cost();
+    }
+
+    public int tf() {
+        return postings.tf();
+    }
+
+    public float idf() {
+        return idf;
+    }
+
+    /** Positions of the current doc, valid up to {@link #tf()}. */
+    public int[] positions() {
+        if (positionsDoc != postings.doc()) {
+            positions = postings.positions(positions);
+            positionsDoc = postings.doc();
+        }
+        return positions;
+    }
+}
@@ -0,0 +1,88 @@
+package org.ulpgc.bd.search.query;
+
+/**
+ * Fixed-size min-heap of (score, doc). Once full, {@link #threshold} is the score a new doc has to
+ * beat; ties go to the lower doc id.
+ */
+public final class TopK {
+    private final int capacity;
+    private final float[] scores;
+    private final int[] docs;
+    private int size;
+
+    public TopK(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.scores = new float[this.capacity];
+        this.docs = new int[this.capacity];
+    }
+
+    public boolean isFull() {
+        return size == capacity;
+    }
+
+    public float threshold() {
+        return isFull() ? scores[0] : Float.NEGATIVE_INFINITY;
+    }
+
+    public boolean offer(int doc, float score) {
+        if (size < capacity) {
+            scores[size] = score;
+            docs[size] = doc;
+            up(size++);
+            return true;
+        }
+        if (!less(scores[0], docs[0], score, doc)) return false;
+        scores[0] = score;
+        docs[0] = doc;
+        down(0);
+        return true;
+    }
+
+    /** Drains the heap, best first. */
+    public int[] docsDescending(float[] scoresOut) {
+        int n = size;
+        int[] out = new int[n];
+        for (int i = n - 1; i >= 0; i--) {
+            out[i] = docs[0];
+            if (scoresOut != null) scoresOut[i] = scores[0];
+            size--;
+            scores[0] = scores[size];
+            docs[0] = docs[size];
+            down(0);
+        }
+        return out;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private static boolean less(float sa, int da, float sb, int db) {
+        return sa < sb || (sa == sb && da > db);
+    }
+
+    private void up(int i) {
+        while (i > 0) {
+            int p = (i - 1) >>> 1;
+            if (!less(scores[i], docs[i], scores[p], docs[p])) break;
+            swap(i, p);
+            i = p;
+        }
+    }
+
+    private void down(int i) {
+        while (true) {
+            int l = 2 * i + 1;
+            if (l >= size) break;
+            int m = l + 1 < size && less(scores[l + 1], docs[l + 1], scores[l], docs[l]) ? l + 1 : l;
+            if (!less(scores[m], docs[m], scores[i], docs[i])) break;
+            swap(i, m);
+            i = m;
+        }
+    }
+
+    private void swap(int a, int b) {
+        float s = scores[a]; scores[a] = scores[b]; scores[b] = s;
+        int d = docs[a]; docs[a] = docs[b]; docs[b] = d;
+    }
+}
@@ -0,0 +1,143 @@
+package org.ulpgc.bd.search.query;
+
+import org.ulpgc.bd.search.index.IndexSnapshot;
+import org.ulpgc.bd.search.index.SegmentReader;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Disjunctive BM25 top-k with WAND: cursors are kept sorted by doc, and a doc is only scored once
+ * the summed upper bounds of the terms that can still reach it beat the heap threshold. Postings
+ * that cannot make the top k are skipped instead of scored.
+ */
+public final class WandScorer {
+    private final IndexSnapshot snapshot;
+    private final CollectionStats stats;
+    private final Bm25 bm25;
+
+    public WandScorer(IndexSnapshot snapshot) {
+        this(snapshot, null);
+    }
+
+    /** Scores with {@code stats} instead of the snapshot's own numbers, when not null. */
+    public WandScorer(IndexSnapshot snapshot, CollectionStats stats) {
+        this.snapshot = snapshot;
+        this.stats = stats;
+        this.bm25 = stats != null ? new Bm25(stats.docs, stats.tokens) : new Bm25(snapshot.liveDocs(), snapshot.liveTokens());
+    }
+
+    public Bm25 bm25() {
+        return bm25;
+    }
+
+    public void search(List<String> terms, DocFilter filter, TopK top) {
+        List<IndexSnapshot.Leaf> leaves = snapshot.leaves();
+        SegmentReader.TermInfo[][] infos = new SegmentReader.TermInfo[leaves.size()][terms.size()];
+        float[] idf = new float[terms.size()];
+        for (int t = 0; t < terms.size(); t++) {
+            long df = 0;
+            for (int l = 0; l < leaves.size(); l++) {
+                infos[l][t] = leaves.get(l).reader.seek(terms.get(t));
+                if (infos[l][t] != null) df += infos[l][t].df;
+            }
+            long global = stats == null ? -1 : stats.df(terms.get(t));
+            idf[t] = bm25.idf(global >= 0 ? global : df);
+        }
+        for (int l = leaves.size() - 1; l >= 0; l--) {
+            BitSet accepted = filter.docs(leaves.get(l));
+            if (!accepted.isEmpty()) searchLeaf(leaves.get(l), infos[l], idf, accepted, top);
+        }
+    }
+
+    /**
+     * Per leaf, the accepted docs containing any of {@code terms}. WAND never visits most of them,
+     * so this walks every postings list once.
+     */
+    public BitSet[] matches(List<String> terms, DocFilter filter) {
+        List<IndexSnapshot.Leaf> leaves = snapshot.leaves();
+        BitSet[] hits = new BitSet[leaves.size()];
+        for (int l = 0; l < leaves.size(); l++) {
+            hits[l] = new BitSet();
+            BitSet accepted = filter.docs(leaves.get(l));
+            if (accepted.isEmpty()) continue;
+            SegmentReader r = leaves.get(l).reader;
+            for (String term : terms) {
+                SegmentReader.TermInfo info = r.seek(term);
+                if (info == null) continue;
+                SegmentReader.PostingsEnum pe = r.postings(info);
+                int ordHint = 0;
+                for (int doc = pe.nextDoc(); doc != SegmentReader.NO_MORE_DOCS; doc = pe.nextDoc()) {
+                    ordHint = r.docOrd(doc, ordHint);
+                    hits[l].set(ordHint);
+                }
+            }
+            hits[l].and(accepted);
+        }
+        return hits;
+    }
+
+    private void searchLeaf(IndexSnapshot.Leaf leaf, SegmentReader.TermInfo[] infos, float[] idf,
+                            BitSet accepted, TopK top) {
+        SegmentReader r = leaf.reader;
+        Cursor[] cursors = new Cursor[infos.length];
+        int n = 0;
+        for (int t = 0; t < infos.length; t++) {
+            if (infos[t] == null) continue;
+            Cursor c = new Cursor(r.postings(infos[t]), idf[t], bm25.upperBound(idf[t], r.maxTf(infos[t]), r.minDocLength()));
+            c.postings.nextDoc();
+            cursors[n++] = c;
+        }
+        if (n == 0) return;
+        cursors = Arrays.copyOf(cursors, n);
+        Comparator<Cursor> byDoc = Comparator.comparingInt(c -> c.postings.doc());
+        int ordHint = 0;
+
+        while (true) {
+            Arrays.sort(cursors, byDoc);
+            float threshold = top.threshold();
+            float bound = 0;
+            int pivot = -1;
+            for (int i = 0; i < n; i++) {
+                if (cursors[i].postings.doc() == SegmentReader.NO_MORE_DOCS) break;
+                bound += cursors[i].upperBound;
+                if (bound >= threshold) {
+                    pivot = i;
+                    break;
+                }
+            }
+            if (pivot < 0) return;
+            int pivotDoc = cursors[pivot].postings.doc();
+
+            if (cursors[0].postings.doc() == pivotDoc) {
+                int ord = r.docOrd(pivotDoc, ordHint);
+                ordHint = ord;
+                if (accepted.get(ord)) {
+                    int len = r.docLength(ord);
+                    float score = 0;
+                    for (int i = 0; i < n && cursors[i].postings.doc() == pivotDoc; i++) {
+                        score += bm25.score(cursors[i].idf, cursors[i].postings.tf(), len);
+                    }
+                    top.offer(pivotDoc, score);
+                }
+                for (int i = 0; i < n && cursors[i].postings.doc() == pivotDoc; i++) cursors[i].postings.nextDoc();
+            } else {
+                for (int i = 0; i < pivot && cursors[i].postings.doc() < pivotDoc; i++) cursors[i].postings.advance(pivotDoc);
+            }
+        }
+    }
+
+    private static final class Cursor {
+        final SegmentReader.PostingsEnum postings;
+        final float idf;
+        final float upperBound;
+
+        Cursor(SegmentReader.PostingsEnum postings, float idf, float upperBound) {
+            this.postings = postings;
+            this.idf = idf;
+            this.upperBound = upperBound;
+        }
+    }
+}
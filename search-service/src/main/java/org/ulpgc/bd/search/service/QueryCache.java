@@ -0,0 +1,111 @@
+package org.ulpgc.bd.search.service;
+
+import org.ulpgc.bd.search.model.FacetCount;
+import org.ulpgc.bd.search.model.SearchPage;
+import org.ulpgc.bd.search.model.SearchResult;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Size-bounded LRU of finished result pages, tagged with the index generation they were computed
+ * against. The first lookup under a different generation drops everything, so a commit or merge on
+ * the indexer side is never answered from stale entries.
+ */
+final class QueryCache {
+    private static final int ENTRY_OVERHEAD = 96;
+    private static final int RESULT_OVERHEAD = 48;
+
+    private final long maxBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long generation = -1;
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    QueryCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    private static final class Entry {
+        final SearchPage page;
+        final long weight;
+
+        Entry(SearchPage page, long weight) {
+            this.page = page;
+            this.weight = weight;
+        }
+    }
+
+    synchronized SearchPage get(String key, long generation) {
+        sync(generation);
+        Entry e = entries.get(key);
+        if (e == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return e.page;
+    }
+
+    synchronized void put(String key, long generation, SearchPage page) {
+        if (maxBytes <= 0) return;
+        sync(generation);
+        long weight = weigh(key, page);
+        if (weight > maxBytes / 8) return;
+        Entry old = entries.put(key, new Entry(new SearchPage(List.copyOf(page.results), page.facets), weight));
+        if (old != null) bytes -= old.weight;
+        bytes += weight;
+        Iterator<Entry> it = entries.values().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            bytes -= it.next().weight;
+            it.remove();
+            evictions++;
+        }
+    }
+
+    /** Any change, not just an increase: a wiped and rebuilt index starts counting again from zero. */
+    private void sync(long generation) {
+        if (generation == this.generation) return;
+        if (!entries.isEmpty()) invalidations++;
+        entries.clear();
+        bytes = 0;
+        this.generation = generation;
+    }
+
+    private static long weigh(String key, SearchPage page) {
+        long w = ENTRY_OVERHEAD + 2L * key.length();
+        for (SearchResult r : page.results) {
+            w += RESULT_OVERHEAD + 2L * (len(r.title) + len(r.author) + len(r.language));
+        }
+        if (page.facets != null) {
+            for (List<FacetCount> counts : page.facets.values()) {
+                for (FacetCount c : counts) w += RESULT_OVERHEAD + 2L * len(c.value);
+            }
+        }
+        return w;
+    }
+
+    private static int len(String s) {
+        return s == null ? 0 : s.length();
+    }
+
+    synchronized Map<String, Object> stats() {
+        long lookups = hits + misses;
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("generation", generation);
+        m.put("entries", entries.size());
+        m.put("bytes", bytes);
+        m.put("max_bytes", maxBytes);
+        m.put("hits", hits);
+        m.put("misses", misses);
+        m.put("hit_ratio", lookups == 0 ? 0.0 : (double) hits / lookups);
+        m.put("evictions", evictions);
+        m.put("invalidations", invalidations);
+        return m;
+    }
+}
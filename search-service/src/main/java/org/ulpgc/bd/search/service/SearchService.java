@@ -1,54 +1,259 @@
 package org.ulpgc.bd.search.service;
 
-import com.google.gson.*;
+import org.ulpgc.bd.search.index.DocFields;
+import org.ulpgc.bd.search.index.IndexSnapshot;
+import org.ulpgc.bd.search.index.SegmentReader;
+import org.ulpgc.bd.search.model.FacetCount;
+import org.ulpgc.bd.search.model.SearchPage;
+import org.ulpgc.bd.search.model.SearchResult;
+import org.ulpgc.bd.search.query.BooleanScorer;
+import org.ulpgc.bd.search.query.CollectionStats;
+import org.ulpgc.bd.search.query.DocFilter;
+import org.ulpgc.bd.search.query.Query;
+import org.ulpgc.bd.search.query.QueryParser;
+import org.ulpgc.bd.search.query.TermExpander;
+import org.ulpgc.bd.search.query.TopK;
+import org.ulpgc.bd.search.query.WandScorer;
+import org.ulpgc.bd.search.util.Tokenizer;
+
 import java.io.IOException;
-import java.net.URI;
-import java.net.http.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
-import java.util.stream.Collectors;
 
+/**
+ * Evaluates queries directly against the indexer's segments in {@code datamarts/inverted}. The
+ * snapshot is reopened only when {@code segments.json} names another generation, so a query costs a
+ * stat call plus the postings it actually reads: the manifest itself is read only when its file
+ * key, size or mtime moved, or while its mtime is too recent to tell two saves apart. Plain term lists go through WAND; anything with operators,
+ * phrases or NEAR goes through the boolean scorer. Prefix, wildcard and fuzzy patterns are expanded
+ * against the term dictionaries first. Author/language/year filters are bitsets over each
+ * segment's doc metadata columns. Facet counts, when asked for, cover every match rather than
+ * just the page. Finished pages are cached per index generation.
+ *
+ * On a sharded index this serves one shard: {@link #termStats} answers the coordinator's first
+ * round, and {@link #page} with the summed stats scores against the whole collection.
+ */
 public class SearchService {
+    public static final long DEFAULT_CACHE_BYTES = 32L << 20;
+    public static final List<String> FACETS = List.of("author", "language", "year");
+    public static final int FACET_SIZE = 10;
+    private static final long SETTLE_MILLIS = 2000L;
+
+    private final Path indexDir;
+    private final QueryCache cache;
+    private volatile State state = new State(null, false, IndexSnapshot.empty());
+
+    public SearchService(Path datamarts) {
+        this(datamarts, DEFAULT_CACHE_BYTES);
+    }
+
+    public SearchService(Path datamarts, long cacheBytes) {
+        this.indexDir = datamarts.resolve("inverted");
+        this.cache = new QueryCache(cacheBytes);
+    }
 
-    private static final String INDEX_STATUS_URL = "http://localhost:7002/index/status";
-    private static final Gson gson = new Gson();
+    private static final class State {
+        /** The manifest as stat'ed before {@code snapshot} was checked against it; null if there was none. */
+        final BasicFileAttributes manifest;
+        /** The manifest's mtime was old enough that a later save would show as a different mtime. */
+        final boolean settled;
+        final IndexSnapshot snapshot;
+
+        State(BasicFileAttributes manifest, boolean settled, IndexSnapshot snapshot) {
+            this.manifest = manifest;
+            this.settled = settled;
+            this.snapshot = snapshot;
+        }
+
+        boolean unchanged(BasicFileAttributes now) {
+            if (!settled) return false;
+            if (now == null || manifest == null) return now == manifest;
+            return now.size() == manifest.size() && now.lastModifiedTime().equals(manifest.lastModifiedTime())
+                    && Objects.equals(now.fileKey(), manifest.fileKey());
+        }
+    }
 
-    public static List<Map<String, Object>> search(String q, String author, String language, String year) {
+    private State current() throws IOException {
+        BasicFileAttributes a = manifestAttributes();
+        State s = state;
+        if (s.unchanged(a)) return s;
+        synchronized (this) {
+            s = state;
+            if (s.unchanged(a)) return s;
+            IndexSnapshot snapshot = s.snapshot.isCurrent(indexDir) ? s.snapshot : IndexSnapshot.openWithRetry(indexDir, s.snapshot);
+            boolean settled = a == null || System.currentTimeMillis() - a.lastModifiedTime().toMillis() > SETTLE_MILLIS;
+            state = s = new State(a, settled, snapshot);
+            return s;
+        }
+    }
+
+    private BasicFileAttributes manifestAttributes() throws IOException {
         try {
+            return Files.readAttributes(indexDir.resolve(IndexSnapshot.MANIFEST), BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
 
-            HttpClient client = HttpClient.newHttpClient();
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(INDEX_STATUS_URL))
-                    .GET()
-                    .build();
+    public List<SearchResult> search(String q, String author, String language, String year, int k, int offset) {
+        return page(q, author, language, year, k, offset, List.of()).results;
+    }
+
+    /** {@code facets} names the {@link #FACETS} to count over all matches; empty for none. */
+    public SearchPage page(String q, String author, String language, String year, int k, int offset, List<String> facets) {
+        return page(q, author, language, year, k, offset, facets, null, FACET_SIZE);
+    }
 
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-            if (response.statusCode() != 200) {
-                System.err.println("SearchService: Index service unavailable (" + response.statusCode() + ")");
-                return List.of();
+    /**
+     * Scores with {@code stats} instead of this index's own numbers when it is not null, and keeps
+     * the {@code facetSize} most frequent values of each facet.
+     */
+    public SearchPage page(String q, String author, String language, String year, int k, int offset, List<String> facets,
+                           CollectionStats stats, int facetSize) {
+        try {
+            State s = current();
+            DocFilter filter = new DocFilter(author, language, year);
+            boolean blank = q == null || q.isBlank();
+            Query query = blank ? null : QueryParser.parse(q);
+            List<String> terms = blank ? null : query == null ? queryTerms(q) : query.plainTerms();
+            String normalized = blank ? "" : terms != null ? termsKey(terms) : "q:" + q.trim().replaceAll("\\s+", " ");
+            String key = cacheKey(normalized, filter, k, offset, facets) + '\u0000' + facetSize + (stats == null ? "" : '\u0000' + stats.key());
+            long generation = s.snapshot.generation();
+            SearchPage cached = cache.get(key, generation);
+            if (cached != null) return cached;
+            if (query != null && terms == null && TermExpander.hasPatterns(query)) {
+                query = new TermExpander(s.snapshot).rewrite(query);
+                terms = query.plainTerms();
             }
+            BitSet[] hits = facets.isEmpty() ? null : new BitSet[s.snapshot.leaves().size()];
+            List<SearchResult> results = blank ? browse(s, filter, k, offset, hits) : rank(s, query, terms, stats, filter, k, offset, hits);
+            SearchPage page = new SearchPage(results, hits == null ? null : facetCounts(s.snapshot, hits, facets, facetSize));
+            cache.put(key, generation, page);
+            return page;
+        } catch (IOException e) {
+            System.err.println("SearchService: cannot read index - " + e.getMessage());
+            return new SearchPage(List.of(), facets.isEmpty() ? null : Map.of());
+        }
+    }
+
+    /**
+     * Doc and token counts of this index plus the df of every term {@code q} names, patterns
+     * expanded against this index's dictionary.
+     */
+    public CollectionStats termStats(String q) throws IOException {
+        State s = current();
+        Map<String, Long> df = new HashMap<>();
+        if (q != null && !q.isBlank()) {
+            Query query = QueryParser.parse(q);
+            if (query != null && TermExpander.hasPatterns(query)) query = new TermExpander(s.snapshot).rewrite(query);
+            for (String t : query == null ? queryTerms(q) : query.terms()) {
+                long n = 0;
+                for (IndexSnapshot.Leaf leaf : s.snapshot.leaves()) {
+                    SegmentReader.TermInfo ti = leaf.reader.seek(t);
+                    if (ti != null) n += ti.df;
+                }
+                df.put(t, n);
+            }
+        }
+        return new CollectionStats(s.snapshot.liveDocs(), s.snapshot.liveTokens(), df);
+    }
+
+    public Map<String, Object> cacheStats() {
+        return cache.stats();
+    }
+
+    /** Fills {@code hits}, if given, with each leaf's matches. */
+    private static List<SearchResult> rank(State s, Query query, List<String> terms, CollectionStats stats, DocFilter filter,
+                                           int k, int offset, BitSet[] hits) {
+        if (terms != null && terms.isEmpty()) return List.of();
+        TopK top = new TopK(offset + k);
+        if (terms != null) {
+            WandScorer wand = new WandScorer(s.snapshot, stats);
+            wand.search(terms, filter, top);
+            if (hits != null) System.arraycopy(wand.matches(terms, filter), 0, hits, 0, hits.length);
+        } else {
+            new BooleanScorer(s.snapshot, stats).search(query, filter, top, hits);
+        }
+        float[] scores = new float[top.size()];
+        int[] docs = top.docsDescending(scores);
+        List<SearchResult> results = new ArrayList<>();
+        for (int i = offset; i < docs.length; i++) {
+            SearchResult r = result(docs[i], s.snapshot);
+            r.score = scores[i];
+            results.add(r);
+        }
+        return results;
+    }
 
-            Map<String, Object> status = gson.fromJson(response.body(), Map.class);
+    private static List<SearchResult> browse(State s, DocFilter filter, int k, int offset, BitSet[] hits) {
+        int[] ids = new int[16];
+        int n = 0;
+        List<IndexSnapshot.Leaf> leaves = s.snapshot.leaves();
+        for (int l = 0; l < leaves.size(); l++) {
+            IndexSnapshot.Leaf leaf = leaves.get(l);
+            BitSet accepted = filter.docs(leaf);
+            if (hits != null) hits[l] = accepted;
+            for (int ord = accepted.nextSetBit(0); ord >= 0; ord = accepted.nextSetBit(ord + 1)) {
+                if (n == ids.length) ids = Arrays.copyOf(ids, n * 2);
+                ids[n++] = leaf.reader.docId(ord);
+            }
+        }
+        Arrays.sort(ids, 0, n);
+        List<SearchResult> results = new ArrayList<>();
+        for (int i = offset; i < n && i < offset + k; i++) results.add(result(ids[i], s.snapshot));
+        return results;
+    }
 
-            if (!status.containsKey("books")) {
-                System.err.println("SearchService: No 'books' field found in index/status response");
-                return List.of();
+    /** Top {@code size} values per facet, most frequent first, summed across segments. */
+    private static Map<String, List<FacetCount>> facetCounts(IndexSnapshot snapshot, BitSet[] hits, List<String> facets, int size) {
+        Map<String, List<FacetCount>> out = new LinkedHashMap<>();
+        for (String facet : facets) {
+            Map<String, Integer> counts = new HashMap<>();
+            for (int l = 0; l < hits.length; l++) {
+                DocFields f = snapshot.leaves().get(l).reader.fields();
+                if (hits[l] != null && f != null) f.count(facet, hits[l], counts);
             }
+            List<Map.Entry<String, Integer>> ranked = new ArrayList<>(counts.entrySet());
+            ranked.sort((a, b) -> a.getValue().equals(b.getValue()) ? a.getKey().compareTo(b.getKey()) : b.getValue() - a.getValue());
+            List<FacetCount> top = new ArrayList<>();
+            for (int i = 0; i < ranked.size() && i < size; i++) top.add(new FacetCount(ranked.get(i).getKey(), ranked.get(i).getValue()));
+            out.put(facet, top);
+        }
+        return out;
+    }
 
-            List<Map<String, Object>> indexedBooks = (List<Map<String, Object>>) status.get("books");
+    /** Ranked OR is order-insensitive, so plain term lists share one entry however they were typed. */
+    private static String termsKey(List<String> terms) {
+        List<String> sorted = new ArrayList<>(terms);
+        Collections.sort(sorted);
+        return "t:" + String.join(" ", sorted);
+    }
 
-            return indexedBooks.stream()
-                    .filter(b -> q == null || b.get("title").toString().toLowerCase().contains(q.toLowerCase()))
-                    .filter(b -> author == null || author.equalsIgnoreCase((String) b.get("author")))
-                    .filter(b -> language == null || language.equalsIgnoreCase((String) b.get("language")))
-                    .filter(b -> year == null || year.equals(String.valueOf(b.get("year"))))
-                    .collect(Collectors.toList());
+    private static String cacheKey(String query, DocFilter f, int k, int offset, List<String> facets) {
+        return query + '\u0000' + f.key() + '\u0000' + k + '\u0000' + offset + '\u0000' + String.join(",", facets);
+    }
+
+    static List<String> queryTerms(String q) {
+        List<String> all = new ArrayList<>(new LinkedHashSet<>(Tokenizer.tokenize(q)));
+        List<String> kept = new ArrayList<>();
+        for (String t : all) if (!Tokenizer.isStopWord(t)) kept.add(t);
+        return kept.isEmpty() ? all : kept;
+    }
 
-        } catch (IOException | InterruptedException e) {
-            System.err.println("SearchService: Error communicating with Index Service - " + e.getMessage());
-            return List.of();
-        } catch (Exception e) {
-            System.err.println("SearchService: Unexpected error - " + e);
-            return List.of();
+    /** Metadata of the live copy of {@code bookId}, found in the newest segment that holds it. */
+    private static SearchResult result(int bookId, IndexSnapshot snapshot) {
+        List<IndexSnapshot.Leaf> leaves = snapshot.leaves();
+        for (int l = leaves.size() - 1; l >= 0; l--) {
+            IndexSnapshot.Leaf leaf = leaves.get(l);
+            int ord = leaf.reader.docOrd(bookId);
+            if (ord < 0 || !leaf.isLive(ord)) continue;
+            DocFields f = leaf.reader.fields();
+            if (f == null) break;
+            return new SearchResult(bookId, f.title(ord), f.author(ord), f.language(ord), f.year(ord));
         }
+        return new SearchResult(bookId, "", "", "", 0);
     }
 }
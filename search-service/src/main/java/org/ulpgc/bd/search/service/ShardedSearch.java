@@ -0,0 +1,158 @@
+package org.ulpgc.bd.search.service;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import org.ulpgc.bd.search.model.FacetCount;
+import org.ulpgc.bd.search.model.SearchPage;
+import org.ulpgc.bd.search.model.SearchResult;
+import org.ulpgc.bd.search.model.ShardQuery;
+import org.ulpgc.bd.search.query.CollectionStats;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Answers queries over an index split by book across several search nodes, each serving the
+ * datamarts of one index node. A ranked query takes two parallel rounds: every shard first reports
+ * its doc and token counts and the df of the query's terms, then scores with the sums, so BM25
+ * ranks as if the whole collection were one index. Each shard returns its own top
+ * {@code offset + k}, which together always contain the global top {@code offset + k}.
+ *
+ * Facets are counted per shard over its {@link #SHARD_FACET_SIZE} most frequent values and summed,
+ * so a value that is rare on every shard but common overall can be missed. A shard that fails
+ * or times out is left out of the answer and listed under {@code shards.failed}.
+ */
+public class ShardedSearch {
+    public static final int SHARD_FACET_SIZE = 100;
+    private static final Gson GSON = new Gson();
+
+    private final List<String> shards;
+    private final HttpClient client;
+    private final Duration timeout;
+
+    public ShardedSearch(List<String> shardUrls, Duration timeout) {
+        if (shardUrls.isEmpty()) throw new IllegalArgumentException("no shards given");
+        this.shards = List.copyOf(shardUrls);
+        this.timeout = timeout;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(2))
+                .build();
+    }
+
+    public List<String> shards() {
+        return shards;
+    }
+
+    public SearchPage page(String q, String author, String language, String year, int k, int offset, List<String> facets) {
+        boolean blank = q == null || q.isBlank();
+        Set<String> failed = new LinkedHashSet<>();
+        List<String> live = new ArrayList<>(shards);
+
+        CollectionStats stats = null;
+        if (!blank) {
+            ShardQuery ask = new ShardQuery();
+            ask.q = q;
+            List<CollectionStats> answers = fanOut(live, "/search/shard/stats", ask, CollectionStats.class, failed);
+            live.removeAll(failed);
+            for (CollectionStats a : answers) if (a != null) stats = stats == null ? a : stats.plus(a);
+            if (stats == null) return result(List.of(), facets.isEmpty() ? null : Map.of(), failed);
+        }
+
+        ShardQuery run = new ShardQuery();
+        run.q = q;
+        run.author = author;
+        run.language = language;
+        run.year = year;
+        run.k = offset + k;
+        run.facets = facets;
+        run.facet_size = SHARD_FACET_SIZE;
+        run.stats = stats;
+        List<SearchPage> pages = fanOut(live, "/search/shard", run, SearchPage.class, failed);
+
+        Map<Integer, SearchResult> byBook = new HashMap<>();
+        for (SearchPage p : pages) {
+            if (p == null || p.results == null) continue;
+            // while a book moves to a new node both may hold it; keep one copy
+            for (SearchResult r : p.results) byBook.merge(r.book_id, r, (a, b) -> a.score >= b.score ? a : b);
+        }
+        List<SearchResult> merged = new ArrayList<>(byBook.values());
+        if (blank) merged.sort(Comparator.comparingInt(r -> r.book_id));
+        else merged.sort((a, b) -> a.score != b.score ? Float.compare(b.score, a.score) : Integer.compare(a.book_id, b.book_id));
+        List<SearchResult> window = offset >= merged.size() ? List.of() : merged.subList(offset, Math.min(merged.size(), offset + k));
+        return result(new ArrayList<>(window), facets.isEmpty() ? null : mergeFacets(pages, facets), failed);
+    }
+
+    private SearchPage result(List<SearchResult> results, Map<String, List<FacetCount>> facets, Set<String> failed) {
+        SearchPage page = new SearchPage(results, facets);
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("total", shards.size());
+        m.put("failed", new ArrayList<>(failed));
+        page.shards = m;
+        return page;
+    }
+
+    /** POSTs {@code body} to every shard at once; answers come back in shard order, null where one failed. */
+    private <T> List<T> fanOut(List<String> urls, String path, ShardQuery body, Class<T> type, Set<String> failed) {
+        String json = GSON.toJson(body);
+        List<CompletableFuture<T>> calls = new ArrayList<>();
+        for (String url : urls) calls.add(post(url + path, json, type));
+        List<T> out = new ArrayList<>();
+        for (int i = 0; i < calls.size(); i++) {
+            try {
+                out.add(calls.get(i).join());
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                System.err.println("ShardedSearch: shard " + urls.get(i) + " failed - "
+                        + cause.getClass().getSimpleName() + ": " + cause.getMessage());
+                failed.add(urls.get(i));
+                out.add(null);
+            }
+        }
+        return out;
+    }
+
+    private <T> CompletableFuture<T> post(String url, String json, Class<T> type) {
+        HttpRequest req = HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .timeout(timeout)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+        return client.sendAsync(req, HttpResponse.BodyHandlers.ofString()).thenApply(res -> {
+            if (res.statusCode() / 100 != 2) {
+                throw new CompletionException(new IOException("HTTP " + res.statusCode() + " from " + url));
+            }
+            try {
+                return GSON.fromJson(res.body(), type);
+            } catch (JsonParseException e) {
+                throw new CompletionException(new IOException("bad JSON from " + url, e));
+            }
+        });
+    }
+
+    /** Sums each facet value's count over the shards and keeps the {@link SearchService#FACET_SIZE} most frequent. */
+    private static Map<String, List<FacetCount>> mergeFacets(List<SearchPage> pages, List<String> facets) {
+        Map<String, List<FacetCount>> out = new LinkedHashMap<>();
+        for (String facet : facets) {
+            Map<String, Integer> counts = new HashMap<>();
+            for (SearchPage p : pages) {
+                if (p == null || p.facets == null || p.facets.get(facet) == null) continue;
+                for (FacetCount c : p.facets.get(facet)) counts.merge(c.value, c.count, Integer::sum);
+            }
+            List<Map.Entry<String, Integer>> ranked = new ArrayList<>(counts.entrySet());
+            ranked.sort((a, b) -> a.getValue().equals(b.getValue()) ? a.getKey().compareTo(b.getKey()) : b.getValue() - a.getValue());
+            List<FacetCount> top = new ArrayList<>();
+            for (int i = 0; i < ranked.size() && i < SearchService.FACET_SIZE; i++) top.add(new FacetCount(ranked.get(i).getKey(), ranked.get(i).getValue()));
+            out.put(facet, top);
+        }
+        return out;
+    }
+}
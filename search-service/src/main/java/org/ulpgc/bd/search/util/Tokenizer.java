@@ -0,0 +1,123 @@
+package org.ulpgc.bd.search.util;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Query-side copy of the indexer's tokenizer: NFD + mark stripping + lower-casing + splitting on
+ * anything that is not a letter or digit, through the same per-char fold table. It must produce
+ * exactly the terms the indexing service writes, or lookups silently miss.
+ */
+public final class Tokenizer {
+    private static final char SEPARATOR = 0;
+    private static final char SKIP = 1;
+    private static final char EXPAND = 2;
+    private static final char[] FOLD = new char[65536];
+    private static final Map<Character, String> EXPANSIONS = new HashMap<>();
+    private static final Map<Integer, String> SUPPLEMENTARY = new ConcurrentHashMap<>();
+    private static final Set<String> STOP_EN = Set.of(
+            "the","and","of","to","in","a","is","it","that","for","on","as","with","was","were","be","by","at","an","or","from","this","which","but","not","are","his","her","their","its","have","has","had","you","i","he","she","we","they","them","me","my","our","your"
+    );
+
+    static {
+        for (int c = 0; c < 65536; c++) {
+            char ch = (char) c;
+            if (Character.isSurrogate(ch)) {
+                FOLD[c] = SEPARATOR;
+                continue;
+            }
+            String folded = fold(String.valueOf(ch));
+            if (folded.isEmpty()) FOLD[c] = SKIP;
+            else if (folded.length() == 1) FOLD[c] = folded.charAt(0) == ' ' ? SEPARATOR : folded.charAt(0);
+            else {
+                FOLD[c] = EXPAND;
+                EXPANSIONS.put(ch, folded);
+            }
+        }
+    }
+
+    private Tokenizer() {}
+
+    private static String fold(String s) {
+        String t = Normalizer.normalize(s, Normalizer.Form.NFD).replaceAll("\\p{M}+", "");
+        t = t.toLowerCase(Locale.ROOT);
+        StringBuilder sb = new StringBuilder(t.length());
+        t.codePoints().forEach(cp -> {
+            if (Character.isAlphabetic(cp) || Character.isDigit(cp)) sb.appendCodePoint(cp);
+            else sb.append(' ');
+        });
+        return sb.toString();
+    }
+
+    public static boolean isStopWord(String term) {
+        return STOP_EN.contains(term);
+    }
+
+    public static List<String> tokenize(String text) {
+        return tokenize(text, null);
+    }
+
+    /**
+     * Folds {@code text} the way tokens are folded but keeps everything, one-letter pieces included;
+     * separators come out as a space. Used for the literal parts of wildcard and fuzzy patterns.
+     */
+    public static String normalize(String text) {
+        StringBuilder sb = new StringBuilder(text.length());
+        int n = text.length();
+        for (int i = 0; i < n; i++) {
+            char c = text.charAt(i);
+            if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, text.charAt(++i));
+                sb.append(SUPPLEMENTARY.computeIfAbsent(cp, k -> fold(new String(Character.toChars(k)))));
+                continue;
+            }
+            char f = FOLD[c];
+            if (f > EXPAND) sb.append(f);
+            else if (f == SEPARATOR) sb.append(' ');
+            else if (f == EXPAND) sb.append(EXPANSIONS.get(c));
+        }
+        return sb.toString();
+    }
+
+    /** Tokenizes {@code text}; if {@code positions} is given it receives each kept token's position, counting dropped ones. */
+    public static List<String> tokenize(String text, List<Integer> positions) {
+        List<String> out = new ArrayList<>();
+        if (text == null) return out;
+        int[] position = {0};
+        StringBuilder token = new StringBuilder();
+        int n = text.length();
+        for (int i = 0; i < n; i++) {
+            char c = text.charAt(i);
+            if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, text.charAt(++i));
+                expand(SUPPLEMENTARY.computeIfAbsent(cp, k -> fold(new String(Character.toChars(k)))), token, out, positions, position);
+                continue;
+            }
+            char f = FOLD[c];
+            if (f > EXPAND) token.append(f);
+            else if (f == SEPARATOR) flush(token, out, positions, position);
+            else if (f == EXPAND) expand(EXPANSIONS.get(c), token, out, positions, position);
+        }
+        flush(token, out, positions, position);
+        return out;
+    }
+
+    private static void expand(String folded, StringBuilder token, List<String> out, List<Integer> positions, int[] position) {
+        for (int i = 0; i < folded.length(); i++) {
+            char x = folded.charAt(i);
+            if (x == ' ') flush(token, out, positions, position);
+            else token.append(x);
+        }
+    }
+
+    private static void flush(StringBuilder token, List<String> out, List<Integer> positions, int[] position) {
+        if (token.length() == 0) return;
+        int p = position[0]++;
+        if (token.length() > 1 || Character.isDigit(token.charAt(0))) {
+            out.add(token.toString());
+            if (positions != null) positions.add(p);
+        }
+        token.setLength(0);
+    }
+}